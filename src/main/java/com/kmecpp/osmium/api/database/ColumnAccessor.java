@@ -0,0 +1,476 @@
+package com.kmecpp.osmium.api.database;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import com.kmecpp.osmium.api.database.api.DatabaseType;
+
+/**
+ * Reads and writes the value of a single column directly between a JDBC
+ * statement or result set and the field of a table object. Accessors are
+ * created once per column when the table is registered so the type dispatch
+ * and field lookups are not repeated for every row. Primitive fields are
+ * accessed through typed method handles and are never boxed, other types are
+ * converted by a {@link ColumnCodec}.
+ */
+public abstract class ColumnAccessor {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	protected final ColumnData column;
+
+	protected ColumnAccessor(ColumnData column) {
+		this.column = column;
+	}
+
+	public ColumnData getColumn() {
+		return column;
+	}
+
+	/**
+	 * Reads the column at the given index of the current row into the field of
+	 * the given object
+	 */
+	public abstract void read(ResultSet rs, int index, Object obj) throws SQLException;
+
+	/**
+	 * Binds the field value of the given object to the parameter at the given
+	 * index
+	 */
+	public abstract void bind(PreparedStatement ps, int index, Object obj) throws SQLException;
+
+	/**
+	 * Gets the field value of the given object. Primitive values are boxed.
+	 */
+	public abstract Object get(Object obj);
+
+	/**
+	 * Gets whether the values of this column are immutable, meaning a value
+	 * that was read earlier can be compared with the current value to detect
+	 * changes. Primitive columns are always immutable.
+	 */
+	public boolean isImmutable() {
+		return true;
+	}
+
+	public static ColumnAccessor create(ColumnData column, DatabaseType databaseType) {
+		Field field = column.getField();
+		Class<?> type = field.getType();
+		try {
+			field.setAccessible(true);
+			MethodHandle getter = LOOKUP.unreflectGetter(field);
+			MethodHandle setter = LOOKUP.unreflectSetter(field);
+
+			if (type == boolean.class) {
+				return new BooleanAccessor(column, getter, setter);
+			} else if (type == byte.class) {
+				return new ByteAccessor(column, getter, setter);
+			} else if (type == short.class) {
+				return new ShortAccessor(column, getter, setter);
+			} else if (type == int.class) {
+				return new IntAccessor(column, getter, setter);
+			} else if (type == long.class) {
+				return new LongAccessor(column, getter, setter);
+			} else if (type == float.class) {
+				return new FloatAccessor(column, getter, setter);
+			} else if (type == double.class) {
+				return new DoubleAccessor(column, getter, setter);
+			} else {
+				return new ObjectAccessor(column, getter, setter, databaseType);
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("Unable to access database column field: " + field, e);
+		}
+	}
+
+	private static boolean isImmutableType(Class<?> type) {
+		return type.isEnum() || type == String.class || type == UUID.class || type == Boolean.class || type == Character.class
+				|| type == Byte.class || type == Short.class || type == Integer.class || type == Long.class
+				|| type == Float.class || type == Double.class || type == BigInteger.class || type == BigDecimal.class;
+	}
+
+	private static RuntimeException rethrow(Throwable t) throws SQLException {
+		if (t instanceof SQLException) {
+			throw (SQLException) t;
+		} else if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		} else if (t instanceof Error) {
+			throw (Error) t;
+		}
+		throw new RuntimeException(t);
+	}
+
+	private static RuntimeException unchecked(Throwable t) {
+		if (t instanceof RuntimeException) {
+			return (RuntimeException) t;
+		} else if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return new RuntimeException(t);
+	}
+
+	private static final class BooleanAccessor extends ColumnAccessor {
+
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		public BooleanAccessor(ColumnData column, MethodHandle getter, MethodHandle setter) {
+			super(column);
+			this.getter = getter.asType(MethodType.methodType(boolean.class, Object.class));
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object obj) throws SQLException {
+			try {
+				setter.invokeExact(obj, rs.getBoolean(index));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, Object obj) throws SQLException {
+			try {
+				ps.setBoolean(index, (boolean) getter.invokeExact(obj));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public Object get(Object obj) {
+			try {
+				return (boolean) getter.invokeExact(obj);
+			} catch (Throwable t) {
+				throw unchecked(t);
+			}
+		}
+
+	}
+
+	private static final class ByteAccessor extends ColumnAccessor {
+
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		public ByteAccessor(ColumnData column, MethodHandle getter, MethodHandle setter) {
+			super(column);
+			this.getter = getter.asType(MethodType.methodType(byte.class, Object.class));
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, byte.class));
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object obj) throws SQLException {
+			try {
+				setter.invokeExact(obj, rs.getByte(index));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, Object obj) throws SQLException {
+			try {
+				ps.setByte(index, (byte) getter.invokeExact(obj));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public Object get(Object obj) {
+			try {
+				return (byte) getter.invokeExact(obj);
+			} catch (Throwable t) {
+				throw unchecked(t);
+			}
+		}
+
+	}
+
+	private static final class ShortAccessor extends ColumnAccessor {
+
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		public ShortAccessor(ColumnData column, MethodHandle getter, MethodHandle setter) {
+			super(column);
+			this.getter = getter.asType(MethodType.methodType(short.class, Object.class));
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, short.class));
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object obj) throws SQLException {
+			try {
+				setter.invokeExact(obj, rs.getShort(index));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, Object obj) throws SQLException {
+			try {
+				ps.setShort(index, (short) getter.invokeExact(obj));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public Object get(Object obj) {
+			try {
+				return (short) getter.invokeExact(obj);
+			} catch (Throwable t) {
+				throw unchecked(t);
+			}
+		}
+
+	}
+
+	private static final class IntAccessor extends ColumnAccessor {
+
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		public IntAccessor(ColumnData column, MethodHandle getter, MethodHandle setter) {
+			super(column);
+			this.getter = getter.asType(MethodType.methodType(int.class, Object.class));
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, int.class));
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object obj) throws SQLException {
+			try {
+				setter.invokeExact(obj, rs.getInt(index));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, Object obj) throws SQLException {
+			try {
+				ps.setInt(index, (int) getter.invokeExact(obj));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public Object get(Object obj) {
+			try {
+				return (int) getter.invokeExact(obj);
+			} catch (Throwable t) {
+				throw unchecked(t);
+			}
+		}
+
+	}
+
+	private static final class LongAccessor extends ColumnAccessor {
+
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		public LongAccessor(ColumnData column, MethodHandle getter, MethodHandle setter) {
+			super(column);
+			this.getter = getter.asType(MethodType.methodType(long.class, Object.class));
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, long.class));
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object obj) throws SQLException {
+			try {
+				setter.invokeExact(obj, rs.getLong(index));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, Object obj) throws SQLException {
+			try {
+				ps.setLong(index, (long) getter.invokeExact(obj));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public Object get(Object obj) {
+			try {
+				return (long) getter.invokeExact(obj);
+			} catch (Throwable t) {
+				throw unchecked(t);
+			}
+		}
+
+	}
+
+	private static final class FloatAccessor extends ColumnAccessor {
+
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		public FloatAccessor(ColumnData column, MethodHandle getter, MethodHandle setter) {
+			super(column);
+			this.getter = getter.asType(MethodType.methodType(float.class, Object.class));
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, float.class));
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object obj) throws SQLException {
+			try {
+				setter.invokeExact(obj, rs.getFloat(index));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, Object obj) throws SQLException {
+			try {
+				ps.setFloat(index, (float) getter.invokeExact(obj));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public Object get(Object obj) {
+			try {
+				return (float) getter.invokeExact(obj);
+			} catch (Throwable t) {
+				throw unchecked(t);
+			}
+		}
+
+	}
+
+	private static final class DoubleAccessor extends ColumnAccessor {
+
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		public DoubleAccessor(ColumnData column, MethodHandle getter, MethodHandle setter) {
+			super(column);
+			this.getter = getter.asType(MethodType.methodType(double.class, Object.class));
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, double.class));
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object obj) throws SQLException {
+			try {
+				setter.invokeExact(obj, rs.getDouble(index));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, Object obj) throws SQLException {
+			try {
+				ps.setDouble(index, (double) getter.invokeExact(obj));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public Object get(Object obj) {
+			try {
+				return (double) getter.invokeExact(obj);
+			} catch (Throwable t) {
+				throw unchecked(t);
+			}
+		}
+
+	}
+
+	/**
+	 * Accessor for reference types, which are converted by the
+	 * {@link ColumnCodec} resolved for the column type
+	 */
+	private static final class ObjectAccessor extends ColumnAccessor {
+
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+		private final ColumnCodec<Object> codec;
+		private final boolean immutable;
+
+		public ObjectAccessor(ColumnData column, MethodHandle getter, MethodHandle setter, DatabaseType databaseType) {
+			super(column);
+			this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+			ColumnCodec<Object> codec = ColumnCodecs.get(databaseType, column);
+			this.codec = codec != null ? codec : new UnsupportedCodec(column.getType());
+			this.immutable = isImmutableType(column.getType());
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object obj) throws SQLException {
+			try {
+				setter.invokeExact(obj, codec.read(rs, index));
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, Object obj) throws SQLException {
+			Object value = get(obj);
+			if (value == null) {
+				ps.setObject(index, null);
+			} else {
+				codec.bind(ps, index, value);
+			}
+		}
+
+		@Override
+		public Object get(Object obj) {
+			try {
+				return (Object) getter.invokeExact(obj);
+			} catch (Throwable t) {
+				throw unchecked(t);
+			}
+		}
+
+		@Override
+		public boolean isImmutable() {
+			return immutable;
+		}
+
+	}
+
+	private static final class UnsupportedCodec implements ColumnCodec<Object> {
+
+		private final Class<?> type;
+
+		public UnsupportedCodec(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+			throw new UnsupportedOperationException("SQL serialization of " + type.getSimpleName() + " is not supported yet!");
+		}
+
+		@Override
+		public Object read(ResultSet rs, int index) throws SQLException {
+			throw new UnsupportedOperationException("SQL deserialization of " + type.getSimpleName() + " is not supported yet!");
+		}
+
+	}
+
+}
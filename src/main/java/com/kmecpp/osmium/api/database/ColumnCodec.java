@@ -0,0 +1,40 @@
+package com.kmecpp.osmium.api.database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Converts values of a single Java type to and from a database column. Codecs
+ * are resolved once per column when a table is registered, see
+ * {@link ColumnCodecs#register(Class, ColumnCodec)} for adding support for
+ * custom column types. Primitive fields are bound and read directly and do
+ * not go through a codec.
+ *
+ * @param <T>
+ *            the Java type of the column
+ */
+public interface ColumnCodec<T> {
+
+	/**
+	 * Binds the given value to the parameter at the given index. The value is
+	 * never null, null values are bound as SQL NULL by the caller.
+	 */
+	void bind(PreparedStatement ps, int index, T value) throws SQLException;
+
+	/**
+	 * Reads the column at the given index of the current row, returning null
+	 * if the column is SQL NULL
+	 */
+	T read(ResultSet rs, int index) throws SQLException;
+
+	/**
+	 * Gets the SQL type used when creating a table with a column of this type,
+	 * for example "VARCHAR(64)". Returning null uses the built in type mapping
+	 * of the database.
+	 */
+	default String getSQLType(ColumnData column) {
+		return null;
+	}
+
+}
@@ -0,0 +1,278 @@
+package com.kmecpp.osmium.api.database;
+
+import java.lang.invoke.MethodType;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.EnumMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.kmecpp.osmium.api.database.api.DatabaseType;
+import com.kmecpp.osmium.api.persistence.Serialization;
+import com.kmecpp.osmium.api.util.Reflection;
+
+/**
+ * Registry of the {@link ColumnCodec}s used to bind and read column values
+ * for each database type. Plugins can register codecs for their own types,
+ * which must happen before any table using the type is registered.
+ */
+public final class ColumnCodecs {
+
+	private static final EnumMap<DatabaseType, ConcurrentHashMap<Class<?>, ColumnCodec<?>>> codecs = new EnumMap<>(DatabaseType.class);
+
+	static {
+		for (DatabaseType databaseType : DatabaseType.values()) {
+			codecs.put(databaseType, new ConcurrentHashMap<>());
+		}
+
+		register(Boolean.class, codec(PreparedStatement::setBoolean, (rs, i) -> nullable(rs, rs.getBoolean(i))));
+		register(Byte.class, codec(PreparedStatement::setByte, (rs, i) -> nullable(rs, rs.getByte(i))));
+		register(Short.class, codec(PreparedStatement::setShort, (rs, i) -> nullable(rs, rs.getShort(i))));
+		register(Integer.class, codec(PreparedStatement::setInt, (rs, i) -> nullable(rs, rs.getInt(i))));
+		register(Long.class, codec(PreparedStatement::setLong, (rs, i) -> nullable(rs, rs.getLong(i))));
+		register(Float.class, codec(PreparedStatement::setFloat, (rs, i) -> nullable(rs, rs.getFloat(i))));
+		register(Double.class, codec(PreparedStatement::setDouble, (rs, i) -> nullable(rs, rs.getDouble(i))));
+		register(Time.class, codec(PreparedStatement::setTime, ResultSet::getTime));
+		register(Timestamp.class, codec(PreparedStatement::setTimestamp, ResultSet::getTimestamp));
+		register(String.class, codec(PreparedStatement::setString, ResultSet::getString));
+		register(UUID.class, codec((ps, i, uuid) -> ps.setString(i, uuid.toString()), (rs, i) -> {
+			String uuidString = rs.getString(i);
+			return uuidString == null ? null : UUID.fromString(uuidString);
+		}));
+
+		register(DatabaseType.MYSQL, Date.class, codec(PreparedStatement::setDate, ResultSet::getDate));
+		register(DatabaseType.SQLITE, Date.class, new SerializedCodec<>(Date.class));
+	}
+
+	/**
+	 * Stores UUIDs as their 16 bytes, most significant first, so that binary
+	 * columns sort in the same order as the UUID's string representation
+	 */
+	public static final ColumnCodec<UUID> BINARY_UUID = new ColumnCodec<UUID>() {
+
+		@Override
+		public void bind(PreparedStatement ps, int index, UUID value) throws SQLException {
+			ps.setBytes(index, toBytes(value));
+		}
+
+		@Override
+		public UUID read(ResultSet rs, int index) throws SQLException {
+			byte[] bytes = rs.getBytes(index);
+			return bytes == null ? null : fromBytes(bytes);
+		}
+
+		@Override
+		public String getSQLType(ColumnData column) {
+			return "BINARY(16)";
+		}
+
+	};
+
+	private ColumnCodecs() {
+	}
+
+	public static byte[] toBytes(UUID uuid) {
+		byte[] bytes = new byte[16];
+		long msb = uuid.getMostSignificantBits();
+		long lsb = uuid.getLeastSignificantBits();
+		for (int i = 0; i < 8; i++) {
+			bytes[i] = (byte) (msb >>> (56 - 8 * i));
+			bytes[i + 8] = (byte) (lsb >>> (56 - 8 * i));
+		}
+		return bytes;
+	}
+
+	public static UUID fromBytes(byte[] bytes) {
+		if (bytes.length != 16) {
+			throw new IllegalArgumentException("Binary UUID must be 16 bytes but was " + bytes.length);
+		}
+		long msb = 0;
+		long lsb = 0;
+		for (int i = 0; i < 8; i++) {
+			msb = (msb << 8) | (bytes[i] & 0xFF);
+			lsb = (lsb << 8) | (bytes[i + 8] & 0xFF);
+		}
+		return new UUID(msb, lsb);
+	}
+
+	/**
+	 * Gets the codec for the values of the given column. Primitive columns use
+	 * the codec of their wrapper type.
+	 */
+	public static <T> ColumnCodec<T> get(DatabaseType databaseType, ColumnData column) {
+		return column.isBinaryUUID() ? Reflection.cast(BINARY_UUID) : get(databaseType, MethodType.methodType(column.getType()).wrap().returnType());
+	}
+
+	/**
+	 * Registers a codec for the given type for every database type, replacing
+	 * any existing codec
+	 */
+	public static <T> void register(Class<T> type, ColumnCodec<T> codec) {
+		for (DatabaseType databaseType : DatabaseType.values()) {
+			register(databaseType, type, codec);
+		}
+	}
+
+	/**
+	 * Registers a codec for the given type which is only used by the given
+	 * database type
+	 */
+	public static <T> void register(DatabaseType databaseType, Class<T> type, ColumnCodec<T> codec) {
+		codecs.get(databaseType).put(type, codec);
+	}
+
+	/**
+	 * Gets the codec for the given type or null if the type is not supported.
+	 * Enums are stored by name, and SQLite falls back to
+	 * {@link Serialization} for types registered there.
+	 */
+	public static <T> ColumnCodec<T> get(DatabaseType databaseType, Class<?> type) {
+		ConcurrentHashMap<Class<?>, ColumnCodec<?>> map = codecs.get(databaseType);
+		ColumnCodec<?> codec = map.get(type);
+		if (codec == null) {
+			codec = resolve(databaseType, type);
+			if (codec != null) {
+				ColumnCodec<?> existing = map.putIfAbsent(type, codec);
+				if (existing != null) {
+					codec = existing;
+				}
+			}
+		}
+		return Reflection.cast(codec);
+	}
+
+	/**
+	 * Binds an arbitrary value to a statement, resolving its codec from the
+	 * runtime class of the value
+	 */
+	public static void bind(DatabaseType databaseType, PreparedStatement ps, int index, Object value) throws SQLException {
+		if (value == null) {
+			ps.setObject(index, null);
+			return;
+		}
+
+		ColumnCodec<Object> codec = get(databaseType, value.getClass());
+		if (codec == null) {
+			throw new UnsupportedOperationException(databaseType.getName() + " serialization of " + value.getClass().getSimpleName() + " (" + value + ") is not supported yet!");
+		}
+		codec.bind(ps, index, value);
+	}
+
+	/**
+	 * Binds a value that is compared to the given column. If the column is
+	 * unknown, the codec is resolved from the runtime class of the value.
+	 */
+	public static void bind(DatabaseType databaseType, PreparedStatement ps, int index, ColumnData column, Object value) throws SQLException {
+		if (value instanceof UUID && column != null && column.isBinaryUUID()) {
+			BINARY_UUID.bind(ps, index, (UUID) value);
+		} else {
+			bind(databaseType, ps, index, value);
+		}
+	}
+
+	private static ColumnCodec<?> resolve(DatabaseType databaseType, Class<?> type) {
+		if (Enum.class.isAssignableFrom(type)) {
+			Class<?> enumType = type;
+			while (!enumType.isEnum()) {
+				enumType = enumType.getSuperclass(); //Enum constants with a body are subclasses
+			}
+			return new EnumCodec<>(Reflection.cast(enumType));
+		}
+
+		ConcurrentHashMap<Class<?>, ColumnCodec<?>> map = codecs.get(databaseType);
+		for (Class<?> superclass = type.getSuperclass(); superclass != null && superclass != Object.class; superclass = superclass.getSuperclass()) {
+			ColumnCodec<?> codec = map.get(superclass);
+			if (codec != null) {
+				return codec;
+			}
+		}
+
+		if (databaseType == DatabaseType.SQLITE && Serialization.isSerializable(type)) {
+			return new SerializedCodec<>(type);
+		}
+		return null;
+	}
+
+	private static <T> T nullable(ResultSet rs, T value) throws SQLException {
+		return rs.wasNull() ? null : value;
+	}
+
+	private static <T> ColumnCodec<T> codec(Binder<T> binder, Reader<T> reader) {
+		return new ColumnCodec<T>() {
+
+			@Override
+			public void bind(PreparedStatement ps, int index, T value) throws SQLException {
+				binder.bind(ps, index, value);
+			}
+
+			@Override
+			public T read(ResultSet rs, int index) throws SQLException {
+				return reader.read(rs, index);
+			}
+
+		};
+	}
+
+	@FunctionalInterface
+	private static interface Binder<T> {
+
+		void bind(PreparedStatement ps, int index, T value) throws SQLException;
+
+	}
+
+	@FunctionalInterface
+	private static interface Reader<T> {
+
+		T read(ResultSet rs, int index) throws SQLException;
+
+	}
+
+	private static final class EnumCodec<E extends Enum<E>> implements ColumnCodec<E> {
+
+		private final Class<E> type;
+
+		public EnumCodec(Class<E> type) {
+			this.type = type;
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, E value) throws SQLException {
+			ps.setString(index, value.name());
+		}
+
+		@Override
+		public E read(ResultSet rs, int index) throws SQLException {
+			String name = rs.getString(index);
+			return name == null ? null : Enum.valueOf(type, name);
+		}
+
+	}
+
+	/**
+	 * Stores values as strings using {@link Serialization}
+	 */
+	private static final class SerializedCodec<T> implements ColumnCodec<T> {
+
+		private final Class<T> type;
+
+		public SerializedCodec(Class<T> type) {
+			this.type = type;
+		}
+
+		@Override
+		public void bind(PreparedStatement ps, int index, T value) throws SQLException {
+			ps.setString(index, Serialization.serialize(value));
+		}
+
+		@Override
+		public T read(ResultSet rs, int index) throws SQLException {
+			return Serialization.deserialize(type, rs.getString(index));
+		}
+
+	}
+
+}
@@ -1,8 +1,10 @@
 package com.kmecpp.osmium.api.database;
 
 import java.lang.reflect.Field;
+import java.util.UUID;
 
 import com.kmecpp.osmium.api.database.api.DBColumn;
+import com.kmecpp.osmium.api.database.api.UUIDStorage;
 import com.kmecpp.osmium.api.util.Require;
 
 public class ColumnData {
@@ -16,8 +18,10 @@ public class ColumnData {
 	private final boolean autoIncrement;
 	//	private final MDBTableData foreignKey;
 	private final int maxLength;
+	private final UUIDStorage uuidStorage;
 
 	private String defaultValue;
+	private boolean binaryUUID;
 
 	private static final DBColumn DEFAULT_META = DBUtil.createDefaultColumnAnnotation();
 	//	private static final MDBColumn FOREIGN_KEY_META = MDBUtil.createForeignKeyMeta();
@@ -50,6 +54,17 @@ public class ColumnData {
 		this.maxLength = meta.maxLength();
 		this.autoIncrement = meta.autoIncrement();
 		this.defaultValue = meta.defaultValue();
+		this.uuidStorage = meta.uuidStorage();
+	}
+
+	/**
+	 * Decides whether this column is stored as a binary UUID, using the given
+	 * storage if the column does not specify one. Must be called before the
+	 * column's accessor is created.
+	 */
+	public void resolveUUIDStorage(UUIDStorage defaultStorage) {
+		UUIDStorage storage = uuidStorage == UUIDStorage.DEFAULT ? defaultStorage : uuidStorage;
+		this.binaryUUID = type == UUID.class && storage == UUIDStorage.BINARY;
 	}
 
 	//	public static MDBColumnData createForeignKeyData(MDB manager, Class<?> target) {
@@ -88,6 +103,10 @@ public class ColumnData {
 		return autoIncrement;
 	}
 
+	public boolean isBinaryUUID() {
+		return binaryUUID;
+	}
+
 	public void setDefaultValue(String defaultValue) {
 		this.defaultValue = defaultValue;
 	}
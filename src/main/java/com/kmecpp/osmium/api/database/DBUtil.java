@@ -1,24 +1,23 @@
 package com.kmecpp.osmium.api.database;
 
-import java.lang.reflect.Field;
 import java.sql.Date;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 import com.kmecpp.osmium.api.database.api.DBColumn;
+import com.kmecpp.osmium.api.database.api.DatabaseType;
 import com.kmecpp.osmium.api.database.api.Filter;
 import com.kmecpp.osmium.api.database.api.PreparedStatementBuilder;
 import com.kmecpp.osmium.api.database.api.SQL;
 import com.kmecpp.osmium.api.util.Pagination;
-import com.kmecpp.osmium.api.util.Reflection;
 import com.kmecpp.osmium.api.util.StringUtil;
 
 public class DBUtil {
@@ -57,6 +56,9 @@ public class DBUtil {
 		//		System.out.println(data.getType());
 
 		Class<?> type = data.getType();
+		if (data.isBinaryUUID()) {
+			return "BINARY(16)";
+		}
 
 		String typeString = types.get(type);
 		if (typeString != null) {
@@ -86,82 +88,29 @@ public class DBUtil {
 		} else if (Enum.class.isAssignableFrom(type)) {
 			Enum<?>[] enumConstants = (Enum[]) type.getEnumConstants();
 			return "ENUM(" + Arrays.stream(enumConstants).map(e -> "'" + e.name() + "'").collect(Collectors.joining(", ")) + ")";
-		} else {
-			throw new RuntimeException("Database type: " + type.getName() + " does not support maxLength!");
 		}
-	}
 
-	public static void updatePreparedStatement(PreparedStatement s, int index, Object value) throws SQLException {
-		if (value == null) {
-			s.setObject(index, null);
-		} else if (value instanceof Boolean) {
-			s.setBoolean(index, (boolean) value);
-		} else if (value instanceof Byte) {
-			s.setByte(index, (byte) value);
-		} else if (value instanceof Short) {
-			s.setShort(index, (short) value);
-		} else if (value instanceof Integer) {
-			s.setInt(index, (int) value);
-		} else if (value instanceof Long) {
-			s.setLong(index, (long) value);
-		} else if (value instanceof Float) {
-			s.setFloat(index, (float) value);
-		} else if (value instanceof Double) {
-			s.setDouble(index, (double) value);
-		} else if (value instanceof Date) {
-			s.setDate(index, (Date) value);
-		} else if (value instanceof Time) {
-			s.setTime(index, (Time) value);
-		} else if (value instanceof Timestamp) {
-			s.setTimestamp(index, (Timestamp) value);
-		} else if (value instanceof String) {
-			s.setString(index, (String) value);
-		} else if (value instanceof UUID) {
-			s.setString(index, String.valueOf(value));
-		} else if (value instanceof Enum) {
-			s.setString(index, ((Enum<?>) value).name());
+		ColumnCodec<?> codec = ColumnCodecs.get(DatabaseType.MYSQL, type);
+		String codecType = codec != null ? codec.getSQLType(data) : null;
+		if (codecType != null) {
+			return codecType;
 		} else {
-			throw new UnsupportedOperationException("SQL serialization of " + value.getClass().getSimpleName() + " (" + value + ") is not supported yet!");
+			throw new RuntimeException("Database type: " + type.getName() + " does not support maxLength!");
 		}
 	}
 
-	public static void processResultSet(Object instance, ResultSet rs, int index, ColumnData column) throws Exception {
-		Field field = column.getField();
-		Class<?> type = field.getType();
-		if (type == boolean.class || type == Boolean.class) {
-			field.setBoolean(instance, rs.getBoolean(index));
-		} else if (type == byte.class || type == Byte.class) {
-			field.setByte(instance, rs.getByte(index));
-		} else if (type == short.class || type == Short.class) {
-			field.setShort(instance, rs.getShort(index));
-		} else if (type == int.class || type == Integer.class) {
-			field.setInt(instance, rs.getInt(index));
-		} else if (type == long.class || type == Long.class) {
-			field.setLong(instance, rs.getLong(index));
-		} else if (type == float.class || type == Float.class) {
-			field.setFloat(instance, rs.getFloat(index));
-		} else if (type == double.class || type == Double.class) {
-			field.setDouble(instance, rs.getDouble(index));
-		} else if (type == Date.class) {
-			field.set(instance, rs.getDate(index));
-		} else if (type == Time.class) {
-			field.set(instance, rs.getTime(index));
-		} else if (type == Timestamp.class) {
-			field.set(instance, rs.getTimestamp(index));
-		} else if (type == String.class) {
-			field.set(instance, rs.getString(index));
-		} else if (type == UUID.class) {
-			String uuidString = rs.getString(index);
-			field.set(instance, uuidString == null ? null : UUID.fromString(uuidString));
-		} else if (Enum.class.isAssignableFrom(type)) {
-			field.set(instance, Enum.valueOf(Reflection.cast(type), rs.getString(index)));
-		}
+	public static void updatePreparedStatement(PreparedStatement s, int index, Object value) throws SQLException {
+		ColumnCodecs.bind(DatabaseType.MYSQL, s, index, value);
 	}
 
 	public static PreparedStatementBuilder filterLinker(Filter filter) {
 		return ps -> filter.link(ps);
 	}
 
+	public static PreparedStatementBuilder filterLinker(Filter filter, TableData table) {
+		return ps -> filter.link(ps, table);
+	}
+
 	public static String getColumnAttributeString(TableData tableData, ColumnData data) {
 		StringBuilder sb = new StringBuilder();
 		StringUtil.add(sb, getDBType(tableData, data));
@@ -171,7 +120,9 @@ public class DBUtil {
 		if (data.getDefaultValue() != null && !data.getDefaultValue().equals(SQL.NULL)) {
 			Object value = data.getDefaultValue();
 
-			if (data.getType() == String.class || data.getType() == UUID.class) {
+			if (data.isBinaryUUID() && !value.toString().isEmpty()) {
+				StringUtil.add(sb, "default X'" + value.toString().replace("-", "") + "'"); //Hex literal with the same byte order as the codec
+			} else if (data.getType() == String.class || data.getType() == UUID.class) {
 				StringUtil.add(sb, "default '" + value + "'");
 			} else {
 				StringUtil.add(sb, "default " + value);
@@ -186,7 +137,11 @@ public class DBUtil {
 	}
 
 	public static String getCreateTableUpdate(TableData data) {
-		StringBuilder sb = new StringBuilder("create table if not exists " + data.getName() + "(");
+		return getCreateTableUpdate(data, data.getName());
+	}
+
+	public static String getCreateTableUpdate(TableData data, String name) {
+		StringBuilder sb = new StringBuilder("create table if not exists " + name + "(");
 		ArrayList<String> primaryKeys = new ArrayList<>();
 		//		LinkedHashMap<Class<?>, ArrayList<String>> foreignKeys = new LinkedHashMap<>();
 
@@ -259,6 +214,23 @@ public class DBUtil {
 				+ "VALUES(" + StringUtil.join('?', ",", table.getColumnCount()) + ");";
 	}
 
+	/**
+	 * Creates an insert with a parameter for every column, which only updates
+	 * the given columns if the row already exists. If no columns are given, an
+	 * existing row is left unchanged.
+	 */
+	public static final String createUpsert(TableData table, BitSet columns) {
+		String[] names = table.getEscapedColumnNames();
+		ArrayList<String> updates = new ArrayList<>();
+		for (int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+			updates.add(names[i] + "=VALUES(" + names[i] + ")");
+		}
+		return (updates.isEmpty() ? "INSERT IGNORE INTO " : "INSERT INTO ") + table.getName()
+				+ "(" + StringUtil.join(names, ", ") + ") "
+				+ "VALUES(" + StringUtil.join('?', ",", table.getColumnCount()) + ")"
+				+ (updates.isEmpty() ? ";" : " ON DUPLICATE KEY UPDATE " + String.join(", ", updates) + ";");
+	}
+
 	public static String pageLimit(int page, int pageSize) {
 		return "LIMIT " + Pagination.getStartIndex(page, pageSize) + ", " + pageSize;
 	}
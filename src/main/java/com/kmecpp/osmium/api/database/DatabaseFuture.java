@@ -0,0 +1,46 @@
+package com.kmecpp.osmium.api.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.kmecpp.osmium.api.plugin.OsmiumPlugin;
+
+/**
+ * The result of an asynchronous database read. In addition to the usual
+ * {@link CompletableFuture} methods, the result can be handed back to the
+ * server's main thread with {@link #thenSync(Consumer)}.
+ */
+public class DatabaseFuture<T> extends CompletableFuture<T> {
+
+	private final OsmiumPlugin plugin;
+
+	public DatabaseFuture(OsmiumPlugin plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Performs the given action with the result on the main thread once the
+	 * read completes successfully
+	 */
+	public CompletableFuture<Void> thenSync(Consumer<? super T> action) {
+		return thenAcceptAsync(action, getSyncExecutor());
+	}
+
+	/**
+	 * Performs the given action on the main thread once the read completes,
+	 * with either the result or the exception that caused it to fail
+	 */
+	public CompletableFuture<T> whenCompleteSync(BiConsumer<? super T, ? super Throwable> action) {
+		return whenCompleteAsync(action, getSyncExecutor());
+	}
+
+	/**
+	 * Gets an executor that runs tasks on the main thread during the next tick
+	 */
+	public Executor getSyncExecutor() {
+		return runnable -> plugin.getTask().setExecutor(t -> runnable.run()).start();
+	}
+
+}
@@ -1,45 +1,434 @@
 package com.kmecpp.osmium.api.database;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.kmecpp.osmium.Osmium;
+import com.kmecpp.osmium.api.database.api.DatabaseType;
+import com.kmecpp.osmium.api.database.api.SQLConfig;
+import com.kmecpp.osmium.api.database.api.SQLConfig.ContextCapture;
+import com.kmecpp.osmium.api.database.api.SQLConfig.OverflowPolicy;
 import com.kmecpp.osmium.api.logging.OsmiumLogger;
 
+/**
+ * Executes database tasks asynchronously on one or more worker lanes. Tasks
+ * that belong to a row are assigned to a lane by their primary key, so writes
+ * to the same row are always executed in the order they were submitted while
+ * writes to unrelated rows can be executed in parallel.
+ * <p>
+ * Tasks without a key, such as table wide updates and deletes, are a barrier
+ * across all lanes. They are executed after every task that was queued before
+ * them on any lane and before every task that is queued after them. Tasks
+ * that are submitted concurrently by different threads have no defined order.
+ */
 public class DatabaseQueue {
 
-	private final LinkedBlockingQueue<ContextRunnable> queue = new LinkedBlockingQueue<>();
-	private final QueueExecutor executor = new QueueExecutor();
+	private final SQLDatabase database;
+	private QueueExecutor[] lanes = { new QueueExecutor(0, Integer.MAX_VALUE) };
 	private boolean started;
 
+	private final ConcurrentHashMap<PrimaryKey, ReplaceIntoRunnable> pendingWrites = new ConcurrentHashMap<>();
+	private final AtomicLong coalescedWrites = new AtomicLong();
+	private final AtomicLong generation = new AtomicLong(); //Incremented by every unkeyed task, which seals all pending writes
+	private final Object barrierLock = new Object(); //Barriers are queued on every lane in the same order
+
+	private volatile int batchSize = 1;
+	private volatile long batchLingerNanos;
+	private volatile boolean writeCoalescing = true;
+	private volatile ContextCapture contextCapture = ContextCapture.LAZY;
+	private volatile int contextSampleRate = 100;
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final LongAdder enqueued = new LongAdder();
+	private final LongAdder executed = new LongAdder();
+	private final LongAdder totalLatency = new LongAdder();
+	private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+	private volatile long statsStartTime = System.nanoTime();
+
+	public DatabaseQueue(SQLDatabase database) {
+		this.database = database;
+	}
+
 	public synchronized void start() {
 		if (!started) {
 			started = true;
-			executor.start();
+			for (QueueExecutor lane : lanes) {
+				lane.start();
+			}
 		}
 	}
 
+	/**
+	 * Applies the queue settings from the given configuration. A batch size of
+	 * 1 or less disables batching. The number of lanes can only be changed
+	 * before the queue is started.
+	 */
+	public synchronized void configure(SQLConfig config) {
+		this.batchSize = config.getBatchSize();
+		this.batchLingerNanos = TimeUnit.MILLISECONDS.toNanos(config.getBatchLingerMillis());
+		this.writeCoalescing = config.isWriteCoalescing();
+		this.contextCapture = config.getContextCapture();
+		this.contextSampleRate = config.getContextSampleRate();
+		this.overflowPolicy = config.getOverflowPolicy();
+
+		int laneCount = config.getQueueLanes() > 0 ? config.getQueueLanes()
+				: database.type == DatabaseType.SQLITE ? 1 : config.getMaximumPoolSize(); //SQLite only allows a single writer
+		int capacity = config.getQueueCapacity() > 0 ? config.getQueueCapacity() : Integer.MAX_VALUE;
+		if (!started && (laneCount != lanes.length || capacity != lanes[0].capacity)) {
+			QueueExecutor[] previous = lanes;
+			QueueExecutor[] lanes = new QueueExecutor[Math.max(1, laneCount)];
+			for (int i = 0; i < lanes.length; i++) {
+				lanes[i] = new QueueExecutor(i, capacity);
+			}
+			this.lanes = lanes;
+
+			//Move any tasks that were submitted before the database was started
+			Set<Barrier> barriers = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (QueueExecutor lane : previous) {
+				for (ContextRunnable contextRunnable : lane.queue) {
+					if (!(contextRunnable instanceof Barrier)) {
+						getLane(contextRunnable.getKey()).queue.add(contextRunnable);
+					} else if (barriers.add((Barrier) contextRunnable)) {
+						((Barrier) contextRunnable).remaining.set(lanes.length);
+						for (QueueExecutor newLane : lanes) {
+							newLane.queue.add(contextRunnable);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public boolean isBatching() {
+		return batchSize > 1;
+	}
+
+	/**
+	 * Executes the queued tasks on the calling thread. The lanes are drained
+	 * in turn, and a lane that reaches a barrier only continues once every
+	 * lane has reached it.
+	 */
 	public void flush() {
-		while (!queue.isEmpty()) {
-			try {
-				queue.take().runnable.run();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		QueueExecutor[] lanes = this.lanes;
+		Barrier[] waiting = new Barrier[lanes.length];
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			for (int i = 0; i < lanes.length; i++) {
+				if (waiting[i] != null && !waiting[i].isDone()) {
+					continue;
+				}
+				waiting[i] = null;
+
+				ContextRunnable contextRunnable;
+				while ((contextRunnable = lanes[i].queue.poll()) != null) {
+					progress = true;
+					if (!(contextRunnable instanceof Barrier)) {
+						execute(contextRunnable);
+					} else if (!((Barrier) contextRunnable).arrive()) {
+						waiting[i] = (Barrier) contextRunnable;
+						break;
+					}
+				}
 			}
 		}
 	}
 
 	public void submit(Runnable runnable) {
+		submit(null, runnable);
+	}
+
+	/**
+	 * Queues a task that affects the row with the given key. Tasks with the
+	 * same key are executed in order. If the key is null the task is a barrier
+	 * that is ordered against the tasks on every lane.
+	 */
+	public void submit(PrimaryKey key, Runnable runnable) {
 		if (Osmium.isShuttingDown()) {
 			runnable.run();
 		} else {
-			queue.add(new ContextRunnable(runnable));
+			if (key == null && lanes.length > 1) {
+				enqueueBarrier(new Barrier(runnable, captureContext()));
+			} else {
+				enqueue(new ContextRunnable(key, runnable, captureContext()));
+			}
+			sealPendingWrites(key);
+		}
+	}
+
+	/**
+	 * Queues a REPLACE INTO for the given object. If a write for the same row
+	 * is still waiting in the queue, the pending write is updated to the new
+	 * object instead and no additional statement is queued.
+	 */
+	public void submitReplaceInto(TableData table, Object obj) {
+		if (Osmium.isShuttingDown()) {
+			database.replaceInto(table.getTableClass(), obj);
+			return;
+		}
+
+		PrimaryKey key = table.getPrimaryKey(obj);
+		if (key == null || !writeCoalescing) {
+			enqueue(new ReplaceIntoRunnable(table, key, obj, false));
+			return;
+		}
+
+		while (true) {
+			ReplaceIntoRunnable pending = pendingWrites.get(key);
+			if (pending != null && pending.replace(obj)) {
+				coalescedWrites.incrementAndGet();
+				return;
+			}
+
+			ReplaceIntoRunnable write = new ReplaceIntoRunnable(table, key, obj, true);
+			boolean added = pending == null
+					? pendingWrites.putIfAbsent(key, write) == null
+					: pendingWrites.replace(key, pending, write);
+			if (added) {
+				enqueue(write);
+				return;
+			}
+		}
+	}
+
+	private void enqueue(ContextRunnable contextRunnable) {
+		QueueExecutor lane = getLane(contextRunnable.key);
+		contextRunnable.enqueueTime = System.nanoTime();
+
+		if (!lane.queue.offer(contextRunnable)) {
+			try {
+				switch (overflowPolicy) {
+				case BLOCK:
+					try {
+						lane.queue.put(contextRunnable);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RejectedExecutionException("Interrupted while waiting for space in the database queue", e);
+					}
+					break;
+				case REJECT:
+					throw new RejectedExecutionException("Database queue lane is full! Capacity: " + lane.capacity);
+				}
+			} catch (RejectedExecutionException e) {
+				if (contextRunnable instanceof ReplaceIntoRunnable) {
+					((ReplaceIntoRunnable) contextRunnable).claim(); //Later writes must not be merged into a write that was never queued
+				}
+				throw e;
+			}
+		}
+		enqueued.increment();
+	}
+
+	/**
+	 * Queues the given barrier on every lane. If a lane rejects it, the copies
+	 * that were already queued are cancelled, so the other lanes do not wait
+	 * for it.
+	 */
+	private void enqueueBarrier(Barrier barrier) {
+		synchronized (barrierLock) {
+			QueueExecutor[] lanes = this.lanes;
+			barrier.remaining.set(lanes.length);
+			((ContextRunnable) barrier).enqueueTime = System.nanoTime();
+			for (QueueExecutor lane : lanes) {
+				if (lane.queue.offer(barrier)) {
+					continue;
+				}
+				try {
+					if (overflowPolicy != OverflowPolicy.BLOCK) {
+						throw new RejectedExecutionException("Database queue lane is full! Capacity: " + lane.capacity);
+					}
+					try {
+						lane.queue.put(barrier);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RejectedExecutionException("Interrupted while waiting for space in the database queue", e);
+					}
+				} catch (RejectedExecutionException e) {
+					barrier.cancel();
+					throw e;
+				}
+			}
+		}
+		enqueued.increment();
+	}
+
+	/**
+	 * Records where a task was submitted from according to the context capture
+	 * mode. Creating a Throwable only records the native stack, which is much
+	 * cheaper than {@link Thread#getStackTrace()}. The stack trace elements
+	 * are only resolved if the task fails.
+	 */
+	private Throwable captureContext() {
+		switch (contextCapture) {
+		case LAZY:
+			return new Throwable("Database task submitted");
+		case SAMPLED:
+			return submitted.getAndIncrement() % contextSampleRate == 0 ? new Throwable("Database task submitted") : null;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Prevents writes that are already queued from absorbing newer writes.
+	 * This is called after any other task is queued, because moving a write
+	 * in front of an arbitrary statement, such as a DELETE, could change the
+	 * result. Sealing after the task is queued ensures that a write created
+	 * concurrently cannot end up in front of the task and absorb writes that
+	 * were submitted after it. A task for a single row only seals the pending write of that
+	 * row. An unkeyed task can affect any row, so it starts a new generation
+	 * and writes from earlier generations no longer accept replacements.
+	 */
+	private void sealPendingWrites(PrimaryKey key) {
+		if (key == null) {
+			generation.incrementAndGet();
+			return;
+		}
+		ReplaceIntoRunnable pending = pendingWrites.get(key);
+		if (pending != null) {
+			pending.claim();
+		}
+	}
+
+	private QueueExecutor getLane(PrimaryKey key) {
+		QueueExecutor[] lanes = this.lanes;
+		return key == null ? lanes[0] : lanes[(key.hashCode() & Integer.MAX_VALUE) % lanes.length];
+	}
+
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	/**
+	 * @return the number of tasks waiting on each lane
+	 */
+	public int[] getLaneDepths() {
+		QueueExecutor[] lanes = this.lanes;
+		int[] depths = new int[lanes.length];
+		for (int i = 0; i < lanes.length; i++) {
+			depths[i] = lanes[i].queue.size();
+		}
+		return depths;
+	}
+
+	/**
+	 * @return the total number of tasks waiting on all lanes
+	 */
+	public int getDepth() {
+		int depth = 0;
+		for (QueueExecutor lane : lanes) {
+			depth += lane.queue.size();
+		}
+		return depth;
+	}
+
+	/**
+	 * @return the number of asynchronous writes that were merged into a write
+	 *         that was already queued
+	 */
+	public long getCoalescedWrites() {
+		return coalescedWrites.get();
+	}
+
+	/**
+	 * @return the number of tasks added to the queue since the statistics
+	 *         were last reset
+	 */
+	public long getEnqueuedCount() {
+		return enqueued.sum();
+	}
+
+	/**
+	 * @return the number of tasks executed by the queue since the statistics
+	 *         were last reset
+	 */
+	public long getExecutedCount() {
+		return executed.sum();
+	}
+
+	/**
+	 * @return the average number of tasks added to the queue per second since
+	 *         the statistics were last reset
+	 */
+	public double getEnqueueRate() {
+		double seconds = (System.nanoTime() - statsStartTime) / 1E9;
+		return seconds > 0 ? enqueued.sum() / seconds : 0;
+	}
+
+	/**
+	 * @return the average time in milliseconds that tasks waited in the queue
+	 *         before they were executed
+	 */
+	public double getAverageLatencyMillis() {
+		long count = executed.sum();
+		return count > 0 ? totalLatency.sum() / 1E6 / count : 0;
+	}
+
+	/**
+	 * @return the longest time in milliseconds that a task waited in the queue
+	 *         before it was executed
+	 */
+	public double getMaxLatencyMillis() {
+		return maxLatency.get() / 1E6;
+	}
+
+	public void resetStats() {
+		enqueued.reset();
+		executed.reset();
+		totalLatency.reset();
+		maxLatency.reset();
+		statsStartTime = System.nanoTime();
+	}
+
+	/**
+	 * Records that a task was taken from a lane. Barriers are taken from
+	 * every lane but were only enqueued once, so they are recorded by the lane
+	 * that releases them instead.
+	 */
+	private void recordLatency(ContextRunnable contextRunnable) {
+		if (!(contextRunnable instanceof Barrier)) {
+			recordExecution(contextRunnable);
+		}
+	}
+
+	private void recordExecution(ContextRunnable contextRunnable) {
+		long latency = System.nanoTime() - contextRunnable.enqueueTime;
+		executed.increment();
+		totalLatency.add(latency);
+		maxLatency.accumulate(latency);
+	}
+
+	private void execute(ContextRunnable contextRunnable) {
+		try {
+			contextRunnable.run();
+		} catch (Throwable t) {
+			t.printStackTrace();
+			contextRunnable.printContext();
 		}
 	}
 
 	public class QueueExecutor extends Thread {
 
-		public QueueExecutor() {
-			setName("Database Queue Executor");
+		private final LinkedBlockingQueue<ContextRunnable> queue;
+		private final int capacity;
+
+		public QueueExecutor(int index, int capacity) {
+			this.capacity = capacity;
+			this.queue = new LinkedBlockingQueue<>(capacity);
+			setName("Database Queue Executor" + (index > 0 ? " #" + index : ""));
 			setDaemon(true);
 		}
 
@@ -48,15 +437,14 @@ public class DatabaseQueue {
 			while (true) {
 				try {
 					ContextRunnable contextRunnable = queue.take();
+					recordLatency(contextRunnable);
 
-					try {
-						contextRunnable.runnable.run();
-					} catch (Throwable t) {
-						t.printStackTrace();
-						OsmiumLogger.warn("Caused By:"); //Display stack trace of where the ContextRunnable was added to the queue
-						for (StackTraceElement element : contextRunnable.stack) {
-							System.err.println(element);
-						}
+					if (contextRunnable instanceof ReplaceIntoRunnable && isBatching()) {
+						contextRunnable = executeBatch((ReplaceIntoRunnable) contextRunnable);
+					}
+
+					if (contextRunnable != null) {
+						execute(contextRunnable);
 					}
 				} catch (InterruptedException ex) {
 					ex.printStackTrace();
@@ -64,16 +452,205 @@ public class DatabaseQueue {
 			}
 		}
 
+		/**
+		 * Collects queued REPLACE INTO writes until either the batch size or
+		 * the linger time is reached and then sends them to the database in a
+		 * single transaction. Any other task that is encountered while
+		 * collecting ends the batch early so that the queue order is
+		 * preserved.
+		 *
+		 * @return the task that ended the batch or null if there was none
+		 */
+		private ContextRunnable executeBatch(ReplaceIntoRunnable first) throws InterruptedException {
+			LinkedHashMap<TableData, ArrayList<ReplaceIntoRunnable>> batches = new LinkedHashMap<>();
+			batches.computeIfAbsent(first.table, k -> new ArrayList<>()).add(first);
+
+			ContextRunnable next = null;
+			long deadline = System.nanoTime() + batchLingerNanos;
+			for (int count = 1; count < batchSize; count++) {
+				long remaining = deadline - System.nanoTime();
+				ContextRunnable contextRunnable = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+				if (contextRunnable == null) {
+					break;
+				}
+				recordLatency(contextRunnable);
+				if (!(contextRunnable instanceof ReplaceIntoRunnable)) {
+					next = contextRunnable;
+					break;
+				}
+				ReplaceIntoRunnable write = (ReplaceIntoRunnable) contextRunnable;
+				batches.computeIfAbsent(write.table, k -> new ArrayList<>()).add(write);
+			}
+
+			LinkedHashMap<TableData, ArrayList<Object>> rows = new LinkedHashMap<>();
+			batches.forEach((table, writes) -> {
+				ArrayList<Object> objects = new ArrayList<>(writes.size());
+				for (ReplaceIntoRunnable write : writes) {
+					objects.add(write.claim());
+				}
+				rows.put(table, objects);
+			});
+
+			try {
+				database.replaceIntoBatch(rows);
+			} catch (Throwable t) {
+				//Retry individually so that a single bad row does not discard the rest of the batch
+				OsmiumLogger.warn("Database batch write failed! Retrying " + rows.values().stream().mapToInt(ArrayList::size).sum() + " writes individually");
+				t.printStackTrace();
+				for (ArrayList<ReplaceIntoRunnable> writes : batches.values()) {
+					for (ReplaceIntoRunnable write : writes) {
+						execute(write);
+					}
+				}
+			}
+			return next;
+		}
+
 	}
 
 	private static class ContextRunnable {
 
-		private Runnable runnable;
-		private StackTraceElement[] stack;
+		private final PrimaryKey key;
+		private final Runnable runnable;
+		private final Throwable context;
+		private long enqueueTime;
 
-		public ContextRunnable(Runnable runnable) {
+		public ContextRunnable(PrimaryKey key, Runnable runnable, Throwable context) {
+			this.key = key;
 			this.runnable = runnable;
-			this.stack = Thread.currentThread().getStackTrace();
+			this.context = context;
+		}
+
+		public PrimaryKey getKey() {
+			return key;
+		}
+
+		public void run() {
+			runnable.run();
+		}
+
+		public void printContext() {
+			if (context == null) {
+				OsmiumLogger.warn("Caused By: <unknown> (database queue context capture is disabled for this task)");
+				return;
+			}
+
+			OsmiumLogger.warn("Caused By:"); //Display stack trace of where the ContextRunnable was added to the queue
+			for (StackTraceElement element : context.getStackTrace()) {
+				OsmiumLogger.warn("    at " + element);
+			}
+		}
+
+	}
+
+	/**
+	 * A task without a key, which is queued on every lane. Each lane waits at
+	 * the barrier until all lanes have reached it, and the last lane to reach
+	 * it executes the task.
+	 */
+	private class Barrier extends ContextRunnable {
+
+		private final AtomicInteger remaining = new AtomicInteger();
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile boolean cancelled;
+
+		public Barrier(Runnable runnable, Throwable context) {
+			super(null, runnable, context);
+		}
+
+		@Override
+		public void run() {
+			if (!arrive()) {
+				try {
+					done.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		/**
+		 * Records that a lane has executed every task that was queued before
+		 * this barrier, and executes the task if it was the last lane
+		 *
+		 * @return whether the lane can continue
+		 */
+		public boolean arrive() {
+			if (remaining.decrementAndGet() == 0 && !cancelled) {
+				recordExecution(this);
+				try {
+					super.run();
+				} catch (Throwable t) {
+					t.printStackTrace();
+					printContext();
+				} finally {
+					done.countDown();
+				}
+			}
+			return isDone();
+		}
+
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		public void cancel() {
+			cancelled = true;
+			done.countDown();
+		}
+
+	}
+
+	private class ReplaceIntoRunnable extends ContextRunnable {
+
+		private final TableData table;
+		private final boolean coalesced;
+		private final long generation;
+		private Object obj;
+		private boolean claimed;
+
+		public ReplaceIntoRunnable(TableData table, PrimaryKey key, Object obj, boolean coalesced) {
+			super(key, null, captureContext());
+			this.table = table;
+			this.obj = obj;
+			this.coalesced = coalesced;
+			this.generation = DatabaseQueue.this.generation.get();
+		}
+
+		@Override
+		public void run() {
+			try {
+				database.replaceInto(table.getTableClass(), claim());
+			} catch (RuntimeException e) {
+				database.onWriteFailed(table, getKey()); //The row was cached when it was queued
+				throw e;
+			}
+		}
+
+		/**
+		 * Replaces the object to be written if this write has not been claimed
+		 * for execution yet and no unkeyed task was queued after it
+		 */
+		public synchronized boolean replace(Object obj) {
+			if (claimed || generation != DatabaseQueue.this.generation.get()) {
+				return false;
+			}
+			this.obj = obj;
+			return true;
+		}
+
+		/**
+		 * Marks this write as no longer accepting replacements and returns the
+		 * object that should be written
+		 */
+		public synchronized Object claim() {
+			if (!claimed) {
+				claimed = true;
+				if (coalesced) {
+					pendingWrites.remove(getKey(), this);
+				}
+			}
+			return obj;
 		}
 
 	}
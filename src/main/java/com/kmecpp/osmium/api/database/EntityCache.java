@@ -0,0 +1,158 @@
+package com.kmecpp.osmium.api.database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size bounded, least recently used cache of table rows keyed by primary
+ * key. Entries can optionally expire a fixed time after they were cached.
+ * <p>
+ * The cache stores the row objects themselves, so every caller receives the
+ * same instance for a given key.
+ */
+public class EntityCache<K> {
+
+	private final int maxSize;
+	private final long expireNanos;
+
+	private final LinkedHashMap<K, CacheEntry> entries;
+	private long version; //Incremented on every write so stale reads are not cached
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxSize
+	 *            the maximum number of cached rows
+	 * @param expireMillis
+	 *            how long rows stay cached or 0 if they never expire
+	 */
+	public EntityCache(int maxSize, long expireMillis) {
+		this.maxSize = maxSize;
+		this.expireNanos = expireMillis * 1_000_000L;
+		this.entries = new LinkedHashMap<K, CacheEntry>(16, 0.75F, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, CacheEntry> eldest) {
+				if (size() > EntityCache.this.maxSize) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+
+		};
+	}
+
+	/**
+	 * Gets the cached row for the given key or null if it is not cached
+	 */
+	public synchronized Object get(K key) {
+		CacheEntry entry = entries.get(key);
+		if (entry != null && expireNanos > 0 && System.nanoTime() - entry.time > expireNanos) {
+			entries.remove(key);
+			entry = null;
+		}
+
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry.value;
+	}
+
+	/**
+	 * Gets a version number that can be passed to
+	 * {@link #putIfUnchanged(Object, Object, long)} after reading a row from
+	 * the database
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Caches a row that was read from the database, unless a write happened
+	 * since the given version was retrieved. This prevents a slow read from
+	 * replacing a newer row that was written in the meantime.
+	 */
+	public synchronized void putIfUnchanged(K key, Object value, long version) {
+		if (this.version == version) {
+			entries.put(key, new CacheEntry(value));
+		}
+	}
+
+	/**
+	 * Caches a row that was just written
+	 */
+	public synchronized void put(K key, Object value) {
+		version++;
+		entries.put(key, new CacheEntry(value));
+	}
+
+	public synchronized void invalidate(K key) {
+		version++;
+		entries.remove(key);
+	}
+
+	public synchronized void invalidateAll() {
+		version++;
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the fraction of lookups that were served from the cache
+	 */
+	public double getHitRate() {
+		long hits = this.hits.sum();
+		long total = hits + misses.sum();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	public void resetStats() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "EntityCache[size: " + size() + "/" + maxSize + ", hits: " + getHits() + ", misses: " + getMisses() + "]";
+	}
+
+	private static final class CacheEntry {
+
+		private final Object value;
+		private final long time = System.nanoTime();
+
+		public CacheEntry(Object value) {
+			this.value = value;
+		}
+
+	}
+
+}
@@ -0,0 +1,459 @@
+package com.kmecpp.osmium.api.database;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import com.kmecpp.osmium.api.logging.OsmiumLogger;
+
+/**
+ * Sums increments to counter columns in memory and writes them to the
+ * database periodically, so that frequent increments to the same row cost a
+ * single UPDATE per flush instead of one per call. Pending increments are
+ * added to rows when they are read back, so they are visible to this process
+ * immediately.
+ * <p>
+ * Writing a row with a REPLACE INTO or upsert overwrites its counters with the
+ * object's values. The increments that were pending when those values were
+ * captured are subtracted once the write succeeds, so increments made while
+ * the object was being written remain pending. Increments made between
+ * reading and writing the object are overwritten, as immediate increments
+ * would have been.
+ * <p>
+ * A flush cannot run while a row is read or written through {@link #hold(Supplier)},
+ * so every row sees a flushed increment either in the database or in the
+ * pending increments, never in both or in neither. Rows read by streams or
+ * by the caller's own queries are not covered.
+ */
+public class IncrementAccumulator {
+
+	private final SQLDatabase database;
+	private final int flushThreshold;
+	private final ConcurrentHashMap<PrimaryKey, Counters> pending = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<TableData, ConcurrentHashMap<BitSet, String>> statements = new ConcurrentHashMap<>();
+	private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock(); //Shared by reads and writes, exclusive to flushes
+
+	private final ScheduledExecutorService executor;
+	private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+	private static final long FLUSH_LOCK_TIMEOUT_MILLIS = 1000;
+
+	public IncrementAccumulator(SQLDatabase database, long flushIntervalMillis, int flushThreshold) {
+		this.database = database;
+		this.flushThreshold = Math.max(1, flushThreshold);
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, database.getPlugin().getName() + " " + database.getType().getName() + " Increment Flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Adds the given amount to a counter column of a row. The row must already
+	 * exist when the increment is flushed.
+	 */
+	public void add(PrimaryKey key, String column, long delta) {
+		TableData table = key.getTable();
+		int index = getColumnIndex(table, column);
+		while (true) {
+			Counters counters = pending.computeIfAbsent(key, k -> new Counters(table.getColumnCount()));
+			counters.adders[index].add(delta);
+			if (!counters.retired) {
+				break;
+			}
+
+			//The counters were removed while this increment was added, so move anything left behind to the new counters
+			long stranded = counters.adders[index].sum();
+			counters.adders[index].add(-stranded);
+			if (stranded == 0) {
+				break;
+			}
+			delta = stranded;
+		}
+
+		EntityCache<PrimaryKey> cache = table.getCache();
+		if (cache != null) {
+			cache.invalidate(key); //Cached objects do not include the increment
+		}
+		if (pending.size() >= flushThreshold && flushQueued.compareAndSet(false, true)) {
+			executor.execute(this::flushSafely);
+		}
+	}
+
+	/**
+	 * Gets the sum of the increments to a column that have not been written yet
+	 */
+	public long getPending(PrimaryKey key, String column) {
+		Counters counters = pending.get(key);
+		return counters != null ? counters.sum(getColumnIndex(key.getTable(), column)) : 0;
+	}
+
+	/**
+	 * Adds the pending increments of the given object's row to its fields
+	 */
+	public void apply(TableData table, Object obj) {
+		if (pending.isEmpty()) {
+			return;
+		}
+		PrimaryKey key = table.getPrimaryKey(obj);
+		Counters counters = key != null ? pending.get(key) : null;
+		if (counters == null) {
+			return;
+		}
+
+		ColumnData[] columns = table.getColumns();
+		try {
+			for (int i = 0; i < columns.length; i++) {
+				long delta = counters.sum(i);
+				if (delta != 0) {
+					addToField(columns[i].getField(), obj, delta);
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Gets the increments to the given columns of a row that are pending while
+	 * the row is being written. They must be passed to
+	 * {@link #subtract(PrimaryKey, long[])} once the write succeeds, and both
+	 * calls must be made while a flush is held off by {@link #hold()}.
+	 *
+	 * @param columns
+	 *            the written columns, or null if every column is written
+	 * @return the pending increment of each column, or null if there are none
+	 */
+	public long[] capture(PrimaryKey key, BitSet columns) {
+		Counters counters = pending.get(key);
+		if (counters == null) {
+			return null;
+		}
+		long[] amounts = new long[counters.adders.length];
+		for (int i = 0; i < amounts.length; i++) {
+			if (columns == null || columns.get(i)) {
+				amounts[i] = counters.adders[i].sum();
+			}
+		}
+		return amounts;
+	}
+
+	/**
+	 * Stops counting the given increments as pending after the row they were
+	 * captured from was overwritten with values that already include them.
+	 * Increments added since they were captured remain pending.
+	 */
+	public void subtract(PrimaryKey key, long[] amounts) {
+		Counters counters = amounts != null ? pending.get(key) : null;
+		if (counters == null) {
+			return;
+		}
+		for (int i = 0; i < amounts.length; i++) {
+			if (amounts[i] != 0) {
+				counters.adders[i].add(-amounts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Prevents flushes until {@link #release()} is called. Any number of
+	 * threads may hold this at once. It must be acquired before the
+	 * connection that is used while holding it, since a flush acquires its
+	 * connection after it has prevented new holders.
+	 */
+	public void hold() {
+		flushLock.readLock().lock();
+	}
+
+	public void release() {
+		flushLock.readLock().unlock();
+	}
+
+	/**
+	 * Runs the given read or write while preventing flushes, so rows it reads
+	 * have the right increments applied and rows it writes subtract the right
+	 * increments
+	 */
+	public <T> T hold(Supplier<T> action) {
+		hold();
+		try {
+			return action.get();
+		} finally {
+			release();
+		}
+	}
+
+	public int getPendingRows() {
+		return pending.size();
+	}
+
+	/**
+	 * Writes every pending increment to the database. Rows with increments to
+	 * the same columns are written with a single batched statement. If rows
+	 * are read or written for too long to start the flush, the increments are
+	 * written by the next one instead.
+	 */
+	public synchronized void flush() {
+		flushQueued.set(false);
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		try {
+			if (!flushLock.writeLock().tryLock(FLUSH_LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				OsmiumLogger.debug("Postponing increment flush for " + database.getPlugin().getName() + " because rows are being read or written");
+				return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		long start = System.nanoTime();
+		try (Connection connection = database.getWriteConnection()) {
+			flush(connection, start, System.nanoTime() - start);
+		} catch (Exception e) {
+			OsmiumLogger.warn("Failed to flush pending increments for " + database.getPlugin().getName() + ". They will be retried with the next flush");
+			e.printStackTrace();
+		} finally {
+			flushLock.writeLock().unlock();
+		}
+	}
+
+	private void flush(Connection connection, long start, long poolWait) throws SQLException {
+		HashMap<TableData, LinkedHashMap<BitSet, ArrayList<Flush>>> batches = new HashMap<>();
+		for (Entry<PrimaryKey, Counters> entry : pending.entrySet()) {
+			Counters counters = entry.getValue();
+			BitSet columns = new BitSet();
+			long[] deltas = new long[counters.adders.length];
+			for (int i = 0; i < deltas.length; i++) {
+				LongAdder adder = counters.adders[i];
+				if ((deltas[i] = adder.sum()) != 0) {
+					adder.add(-deltas[i]); //Unlike sumThenReset this cannot lose concurrent increments
+					columns.set(i);
+				}
+			}
+
+			if (columns.isEmpty()) {
+				retire(entry.getKey(), counters);
+			} else {
+				batches.computeIfAbsent(entry.getKey().getTable(), k -> new LinkedHashMap<>())
+						.computeIfAbsent(columns, k -> new ArrayList<>())
+						.add(new Flush(entry.getKey(), counters, deltas));
+			}
+		}
+		if (batches.isEmpty()) {
+			return;
+		}
+
+		int count = 0;
+		connection.setAutoCommit(false);
+		try {
+			for (Entry<TableData, LinkedHashMap<BitSet, ArrayList<Flush>>> tableEntry : batches.entrySet()) {
+				TableData table = tableEntry.getKey();
+				for (Entry<BitSet, ArrayList<Flush>> entry : tableEntry.getValue().entrySet()) {
+					BitSet columns = entry.getKey();
+					String update = getStatement(table, columns);
+					long batchStart = System.nanoTime();
+					try (PreparedStatement statement = connection.prepareStatement(update)) {
+						for (Flush flush : entry.getValue()) {
+							int index = 1;
+							for (int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+								statement.setLong(index++, flush.deltas[i]);
+							}
+							Object[] values = flush.key.getValues();
+							for (int i = 0; i < values.length; i++) {
+								ColumnCodecs.bind(database.getType(), statement, index++, table.getPrimaryColumns()[i], values[i]);
+							}
+							statement.addBatch();
+						}
+						statement.executeBatch();
+					}
+					count += entry.getValue().size();
+					database.getQueryStats().record(update, batchStart, 0, entry.getValue().size(), null);
+				}
+			}
+			connection.commit();
+			database.getQueryStats().record("<increments>", start, poolWait, count, null);
+		} catch (SQLException | RuntimeException e) {
+			connection.rollback();
+			for (LinkedHashMap<BitSet, ArrayList<Flush>> tableBatches : batches.values()) {
+				for (ArrayList<Flush> flushes : tableBatches.values()) {
+					flushes.forEach(Flush::restore);
+				}
+			}
+			throw e;
+		} finally {
+			connection.setAutoCommit(true);
+		}
+
+		for (Entry<TableData, LinkedHashMap<BitSet, ArrayList<Flush>>> tableEntry : batches.entrySet()) {
+			database.invalidateQueries(tableEntry.getKey());
+			for (ArrayList<Flush> flushes : tableEntry.getValue().values()) {
+				for (Flush flush : flushes) {
+					EntityCache<PrimaryKey> cache = flush.key.getTable().getCache();
+					if (cache != null) {
+						cache.invalidate(flush.key);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops flushing periodically and writes the remaining increments
+	 */
+	public void close() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		if (!pending.isEmpty() && pending.values().stream().anyMatch(Counters::hasPending)) {
+			OsmiumLogger.error("Failed to write pending increments for " + database.getPlugin().getName() + " before shutting down!");
+		}
+	}
+
+	private void flushSafely() {
+		try {
+			flush();
+		} catch (Throwable t) {
+			OsmiumLogger.warn("An error occurred while flushing pending increments");
+			t.printStackTrace();
+		}
+	}
+
+	/**
+	 * Removes counters that have no pending increments, unless an increment is
+	 * being added at the same time
+	 */
+	private void retire(PrimaryKey key, Counters counters) {
+		counters.retired = true; //Set before checking, so a concurrent add either sees it or is seen here
+		if (counters.hasPending()) {
+			counters.retired = false;
+		} else {
+			pending.remove(key, counters);
+		}
+	}
+
+	/**
+	 * @return "UPDATE table SET a = a + ?, b = b + ? WHERE id=?"
+	 */
+	private String getStatement(TableData table, BitSet columns) {
+		return statements.computeIfAbsent(table, k -> new ConcurrentHashMap<>()).computeIfAbsent(columns, k -> {
+			String[] names = table.getColumnNames();
+			StringBuilder sb = new StringBuilder("UPDATE " + table.getName() + " SET ");
+			for (int i = k.nextSetBit(0); i >= 0; i = k.nextSetBit(i + 1)) {
+				sb.append(i > k.nextSetBit(0) ? ", " : "").append(names[i]).append(" = ").append(names[i]).append(" + ?");
+			}
+			return sb.append(" WHERE ").append(DBUtil.createWhere(table.getPrimaryColumnNames())).toString();
+		});
+	}
+
+	private static int getColumnIndex(TableData table, String column) {
+		ColumnData[] columns = table.getColumns();
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].getName().equals(column)) {
+				if (columns[i].isPrimary() || !isNumeric(columns[i].getType())) {
+					throw new IllegalArgumentException("Column " + column + " of " + table.getName() + " is not a numeric counter column");
+				}
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Table " + table.getName() + " does not have a column named " + column);
+	}
+
+	private static boolean isNumeric(Class<?> type) {
+		return type == long.class || type == int.class || type == short.class || type == byte.class || type == double.class || type == float.class
+				|| type == Long.class || type == Integer.class || type == Short.class || type == Byte.class || type == Double.class || type == Float.class;
+	}
+
+	private static void addToField(Field field, Object obj, long delta) throws IllegalAccessException {
+		Class<?> type = field.getType();
+		Number value = (Number) field.get(obj);
+		long current = value != null ? value.longValue() : 0;
+		if (type == long.class || type == Long.class) {
+			field.set(obj, current + delta);
+		} else if (type == int.class || type == Integer.class) {
+			field.set(obj, (int) (current + delta));
+		} else if (type == short.class || type == Short.class) {
+			field.set(obj, (short) (current + delta));
+		} else if (type == byte.class || type == Byte.class) {
+			field.set(obj, (byte) (current + delta));
+		} else if (type == double.class || type == Double.class) {
+			field.set(obj, (value != null ? value.doubleValue() : 0) + delta);
+		} else if (type == float.class || type == Float.class) {
+			field.set(obj, (float) ((value != null ? value.doubleValue() : 0) + delta));
+		}
+	}
+
+	private static class Counters {
+
+		private final LongAdder[] adders;
+		private volatile boolean retired;
+
+		public Counters(int columns) {
+			this.adders = new LongAdder[columns];
+			for (int i = 0; i < columns; i++) {
+				adders[i] = new LongAdder();
+			}
+		}
+
+		public long sum(int index) {
+			return adders[index].sum();
+		}
+
+		public boolean hasPending() {
+			for (LongAdder adder : adders) {
+				if (adder.sum() != 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
+	private static class Flush {
+
+		private final PrimaryKey key;
+		private final Counters counters;
+		private final long[] deltas;
+
+		public Flush(PrimaryKey key, Counters counters, long[] deltas) {
+			this.key = key;
+			this.counters = counters;
+			this.deltas = deltas;
+		}
+
+		/**
+		 * Adds the increments back after the flush failed
+		 */
+		public void restore() {
+			for (int i = 0; i < deltas.length; i++) {
+				if (deltas[i] != 0) {
+					counters.adders[i].add(deltas[i]);
+				}
+			}
+		}
+
+	}
+
+}
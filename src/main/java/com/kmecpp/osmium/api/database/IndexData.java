@@ -0,0 +1,266 @@
+package com.kmecpp.osmium.api.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.kmecpp.osmium.api.database.api.DBIndex;
+import com.kmecpp.osmium.api.database.api.DatabaseType;
+import com.kmecpp.osmium.api.logging.OsmiumLogger;
+import com.kmecpp.osmium.api.util.StringUtil;
+
+/**
+ * A secondary index of a table, declared by {@link DBIndex}
+ */
+public class IndexData {
+
+	private static final String DEFAULT_PREFIX = "idx_";
+	private static final int MAX_NAME_LENGTH = 64; //MySQL's identifier limit
+
+	private final String table;
+	private final String name;
+	private final String[] columns;
+	private final int[] prefixLengths;
+	private final boolean unique;
+
+	/**
+	 * @param table
+	 *            the name of the table
+	 * @param name
+	 *            the name of the index, or null to use the default name
+	 * @param columns
+	 *            the column names
+	 * @param prefixLengths
+	 *            the number of indexed characters of each column, where 0
+	 *            indexes the whole value
+	 * @param unique
+	 *            whether the index is unique
+	 */
+	public IndexData(String table, String name, String[] columns, int[] prefixLengths, boolean unique) {
+		if (columns.length == 0) {
+			throw new IllegalArgumentException("Index on " + table + " must have at least one column!");
+		} else if (prefixLengths.length != columns.length) {
+			throw new IllegalArgumentException("Index on " + table + " must have one prefix length per column!");
+		}
+		this.table = table;
+		this.name = StringUtil.isNullOrEmpty(name) ? getDefaultName(table, columns) : name;
+		this.columns = columns;
+		this.prefixLengths = prefixLengths;
+		this.unique = unique;
+	}
+
+	/**
+	 * Resolves the columns of the given annotation, which may be specified by
+	 * their column or field names
+	 */
+	static IndexData create(TableData table, DBIndex meta) {
+		String[] columns = new String[meta.columns().length];
+		int[] prefixLengths = new int[columns.length];
+		if (meta.prefixLengths().length != 0 && meta.prefixLengths().length != columns.length) {
+			throw new IllegalArgumentException("Index on " + table.getName() + " must have one prefix length per column!");
+		}
+
+		for (int i = 0; i < columns.length; i++) {
+			ColumnData column = table.getColumnMeta(meta.columns()[i]);
+			if (column == null) {
+				throw new IllegalArgumentException("Index on " + table.getName() + " refers to unknown column " + meta.columns()[i]);
+			}
+			columns[i] = column.getName();
+
+			int prefixLength = meta.prefixLengths().length != 0 ? meta.prefixLengths()[i] : 0;
+			boolean string = column.getType() == String.class;
+			if (prefixLength < 0 || prefixLength > 0 && !string) {
+				throw new IllegalArgumentException("Invalid prefix length for index column " + table.getName() + "." + column.getName() + ": " + prefixLength);
+			} else if (string && prefixLength == 0 && table.isMySQL() && column.getMaxLength() > 1000) {
+				throw new IllegalArgumentException("Index column " + table.getName() + "." + column.getName() + " requires a prefix length because it is a MySQL TEXT column!");
+			}
+			prefixLengths[i] = prefixLength < column.getMaxLength() ? prefixLength : 0; //MySQL does not store prefixes that cover the whole VARCHAR
+		}
+		return new IndexData(table.getName(), meta.name(), columns, prefixLengths, meta.unique());
+	}
+
+	/**
+	 * Gets the name of an index without an explicit name. Names that are too
+	 * long for MySQL are shortened and made unique with a hash.
+	 */
+	public static String getDefaultName(String table, String[] columns) {
+		String name = DEFAULT_PREFIX + table + "_" + String.join("_", columns);
+		if (name.length() > MAX_NAME_LENGTH) {
+			name = name.substring(0, MAX_NAME_LENGTH - 9) + "_" + String.format("%08x", name.hashCode());
+		}
+		return name;
+	}
+
+	/**
+	 * Checks whether the given index of the given table has a default name,
+	 * in which case it was created from an annotation and may be dropped once
+	 * the annotation is removed
+	 */
+	public static boolean isDefaultName(String table, String name) {
+		return name.toLowerCase(Locale.ROOT).startsWith((DEFAULT_PREFIX + table + "_").toLowerCase(Locale.ROOT));
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String[] getColumns() {
+		return columns;
+	}
+
+	public int[] getPrefixLengths() {
+		return prefixLengths;
+	}
+
+	public boolean isUnique() {
+		return unique;
+	}
+
+	public String getCreate(DatabaseType type) {
+		return getCreate(type, table);
+	}
+
+	/**
+	 * Gets the statement that creates this index on the given table, which can
+	 * differ from the index's own table while the table is being rebuilt
+	 */
+	public String getCreate(DatabaseType type, String table) {
+		StringBuilder sb = new StringBuilder(unique ? "CREATE UNIQUE INDEX " : "CREATE INDEX ");
+		if (type == DatabaseType.SQLITE) {
+			sb.append("IF NOT EXISTS ");
+		}
+		sb.append(name).append(" ON ").append(table).append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			sb.append(i > 0 ? ", `" : "`").append(columns[i]).append('`');
+			if (type == DatabaseType.MYSQL && prefixLengths[i] > 0) {
+				sb.append('(').append(prefixLengths[i]).append(')');
+			}
+		}
+		return sb.append(')').toString();
+	}
+
+	public String getDrop(DatabaseType type) {
+		return getDrop(type, table, name);
+	}
+
+	public static String getDrop(DatabaseType type, String table, String name) {
+		return type == DatabaseType.MYSQL ? "DROP INDEX " + name + " ON " + table : "DROP INDEX IF EXISTS " + name;
+	}
+
+	/**
+	 * Gets a description of this index's definition that matches the one
+	 * read from the database by {@link #getExisting(Connection, DatabaseType, String)}
+	 */
+	public String getSignature(DatabaseType type) {
+		ArrayList<String> parts = new ArrayList<>(columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			parts.add(getPart(columns[i], type == DatabaseType.MYSQL ? prefixLengths[i] : 0));
+		}
+		return getSignature(unique, parts);
+	}
+
+	private static String getSignature(boolean unique, List<String> parts) {
+		return (unique ? "unique " : "") + String.join(", ", parts);
+	}
+
+	private static String getPart(String column, int prefixLength) {
+		return column.toLowerCase(Locale.ROOT) + (prefixLength > 0 ? "(" + prefixLength + ")" : "");
+	}
+
+	/**
+	 * Reads the signatures of the secondary indexes of the given table.
+	 * Primary keys and the indexes SQLite creates for UNIQUE constraints are
+	 * not included.
+	 *
+	 * @return the signature of each index by its name
+	 */
+	public static LinkedHashMap<String, String> getExisting(Connection connection, DatabaseType type, String table) throws SQLException {
+		String query = type == DatabaseType.MYSQL
+				? "SELECT INDEX_NAME, NON_UNIQUE = 0, COLUMN_NAME, SUB_PART FROM information_schema.STATISTICS "
+						+ "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME <> 'PRIMARY' ORDER BY INDEX_NAME, SEQ_IN_INDEX"
+				: "SELECT list.name, list.\"unique\", info.name, 0 FROM pragma_index_list(?) AS list, pragma_index_info(list.name) AS info "
+						+ "WHERE list.origin = 'c' ORDER BY list.name, info.seqno";
+
+		LinkedHashMap<String, Boolean> uniques = new LinkedHashMap<>();
+		LinkedHashMap<String, ArrayList<String>> parts = new LinkedHashMap<>();
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, table);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next()) {
+					String name = resultSet.getString(1);
+					String column = resultSet.getString(3);
+					uniques.put(name, resultSet.getBoolean(2));
+					parts.computeIfAbsent(name, k -> new ArrayList<>()).add(column != null ? getPart(column, resultSet.getInt(4)) : "<expression>");
+				}
+			}
+		}
+
+		LinkedHashMap<String, String> existing = new LinkedHashMap<>();
+		for (Entry<String, ArrayList<String>> entry : parts.entrySet()) {
+			existing.put(entry.getKey(), getSignature(uniques.get(entry.getKey()), entry.getValue()));
+		}
+		return existing;
+	}
+
+	/**
+	 * Brings the indexes of the given table in line with the given
+	 * declarations. Missing indexes are created, indexes whose definition
+	 * changed are recreated, and indexes with default names that are no
+	 * longer declared are dropped. Indexes that cannot be changed, for example
+	 * a unique index on duplicate values, are logged and skipped.
+	 *
+	 * @return the statements that were executed
+	 */
+	public static List<String> reconcile(Connection connection, DatabaseType type, String table, Collection<IndexData> indexes) throws SQLException {
+		Map<String, String> existing = getExisting(connection, type, table);
+		ArrayList<String> executed = new ArrayList<>();
+		for (IndexData index : indexes) {
+			String current = existing.remove(index.getName());
+			if (index.getSignature(type).equals(current)) {
+				continue;
+			}
+
+			if (current != null) {
+				OsmiumLogger.info("Recreating changed index " + index.getName() + " on " + table + ": (" + current + ") -> (" + index.getSignature(type) + ")");
+				execute(connection, index.getDrop(type), executed);
+			}
+			execute(connection, index.getCreate(type), executed);
+		}
+
+		for (String name : existing.keySet()) {
+			if (isDefaultName(table, name)) {
+				OsmiumLogger.info("Dropping index " + name + " on " + table + " because it is no longer declared");
+				execute(connection, getDrop(type, table, name), executed);
+			}
+		}
+		return executed;
+	}
+
+	private static void execute(Connection connection, String update, List<String> executed) {
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate(update);
+			executed.add(update);
+		} catch (SQLException e) {
+			OsmiumLogger.warn("Failed to update index: " + update + ": " + e.getMessage());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name + "(" + getSignature(DatabaseType.MYSQL) + ")";
+	}
+
+}
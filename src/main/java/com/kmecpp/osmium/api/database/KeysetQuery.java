@@ -0,0 +1,266 @@
+package com.kmecpp.osmium.api.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.UUID;
+
+import com.kmecpp.osmium.api.database.api.DatabaseType;
+import com.kmecpp.osmium.api.database.api.OrderBy;
+
+/**
+ * Builds the statements for keyset (seek) pagination over a table. Instead of
+ * skipping rows with an offset, each page starts after the sort key of the
+ * last row of the previous page, so the database can seek directly to it
+ * using an index. The primary key is appended to the sort order as a
+ * tiebreaker so that rows with equal sort values are neither skipped nor
+ * repeated.
+ * <p>
+ * The position of a page is handed to callers as an opaque continuation
+ * token, see {@link #createToken(Object)}.
+ */
+public class KeysetQuery {
+
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	private final DatabaseType databaseType;
+	private final ColumnData[] columns;
+	private final String[] columnNames;
+	private final boolean descending;
+	private final String signature;
+
+	public KeysetQuery(TableData table, DatabaseType databaseType, OrderBy orderBy) {
+		ColumnData sortColumn = table.getColumnMeta(orderBy.getColumn());
+		if (sortColumn == null) {
+			throw new IllegalArgumentException("Unknown sort column for " + table.getName() + ": " + orderBy.getColumn());
+		} else if (table.getPrimaryColumns().length == 0) {
+			throw new IllegalArgumentException("Keyset pagination requires a primary key: " + table.getName());
+		}
+
+		ArrayList<ColumnData> columns = new ArrayList<>();
+		columns.add(sortColumn);
+		for (ColumnData column : table.getPrimaryColumns()) {
+			if (column != sortColumn) {
+				columns.add(column);
+			}
+		}
+
+		this.databaseType = databaseType;
+		this.columns = columns.toArray(new ColumnData[columns.size()]);
+		this.columnNames = columns.stream().map(column -> table.getName() + "." + column.getName()).toArray(String[]::new); //Qualified in case of joins
+		this.descending = "DESC".equals(orderBy.getDirection());
+		this.signature = getOrderBy();
+	}
+
+	/**
+	 * @return " ORDER BY sort DESC, id DESC"
+	 */
+	public String getOrderBy() {
+		StringBuilder sb = new StringBuilder(" ORDER BY ");
+		for (int i = 0; i < columns.length; i++) {
+			sb.append(i > 0 ? ", " : "").append(columnNames[i]).append(descending ? " DESC" : " ASC");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the condition that selects the rows after a continuation token. The
+	 * comparison is expanded instead of using a row constructor, so that it
+	 * can use an index on every database version.
+	 *
+	 * @return "(sort < ? OR (sort = ? AND id < ?))"
+	 */
+	public String getCondition() {
+		String operator = descending ? " < ?" : " > ?";
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < columns.length; i++) {
+			sb.append(i > 0 ? " OR " : "").append(i > 0 ? "(" : "");
+			for (int j = 0; j < i; j++) {
+				sb.append(columnNames[j]).append(" = ? AND ");
+			}
+			sb.append(columnNames[i]).append(operator).append(i > 0 ? ")" : "");
+		}
+		return sb.append(")").toString();
+	}
+
+	/**
+	 * Binds the values of the given token to the parameters of
+	 * {@link #getCondition()}, starting at the given index
+	 *
+	 * @return the index of the next parameter
+	 */
+	public int bind(PreparedStatement ps, int index, Object[] values) throws SQLException {
+		for (int i = 0; i < columns.length; i++) {
+			for (int j = 0; j <= i; j++) {
+				ColumnCodecs.bind(databaseType, ps, index++, columns[j], values[j]);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Creates a continuation token for the page that follows the given row
+	 */
+	public String createToken(Object row) {
+		Object[] values = new Object[columns.length];
+		try {
+			for (int i = 0; i < columns.length; i++) {
+				values[i] = columns[i].getField().get(row);
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return encode(signature, values);
+	}
+
+	/**
+	 * Reads the sort key values from a continuation token
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the token is malformed or was created for a different
+	 *             table or sort order
+	 */
+	public Object[] readToken(String token) {
+		Object[] values = decode(signature, token);
+		if (values.length != columns.length) {
+			throw new IllegalArgumentException("Invalid continuation token: " + token);
+		}
+		return values;
+	}
+
+	/**
+	 * Encodes the given values as a URL safe string. The signature identifies
+	 * the query the values belong to and is checked when decoding.
+	 */
+	public static String encode(String signature, Object[] values) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(signature.hashCode());
+			out.writeByte(values.length);
+			for (Object value : values) {
+				writeValue(out, value);
+			}
+			return ENCODER.encodeToString(bytes.toByteArray());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static Object[] decode(String signature, String token) {
+		int hash;
+		Object[] values;
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(DECODER.decode(token)));
+			hash = in.readInt();
+			values = new Object[in.readUnsignedByte()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = readValue(in);
+			}
+			if (in.available() > 0) {
+				throw new IOException("Unexpected trailing data");
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid continuation token: " + token, e);
+		}
+
+		if (hash != signature.hashCode()) {
+			throw new IllegalArgumentException("Continuation token belongs to a different query: " + token);
+		}
+		return values;
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			throw new IllegalArgumentException("Keyset pagination does not support null sort values");
+		} else if (value instanceof Boolean) {
+			out.writeByte('Z');
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Byte) {
+			out.writeByte('B');
+			out.writeByte((Byte) value);
+		} else if (value instanceof Short) {
+			out.writeByte('S');
+			out.writeShort((Short) value);
+		} else if (value instanceof Integer) {
+			out.writeByte('I');
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte('J');
+			out.writeLong((Long) value);
+		} else if (value instanceof Float) {
+			out.writeByte('F');
+			out.writeFloat((Float) value);
+		} else if (value instanceof Double) {
+			out.writeByte('D');
+			out.writeDouble((Double) value);
+		} else if (value instanceof String) {
+			out.writeByte('T');
+			out.writeUTF((String) value);
+		} else if (value instanceof Enum) {
+			out.writeByte('T'); //Enums are stored by name
+			out.writeUTF(((Enum<?>) value).name());
+		} else if (value instanceof UUID) {
+			out.writeByte('U');
+			out.writeLong(((UUID) value).getMostSignificantBits());
+			out.writeLong(((UUID) value).getLeastSignificantBits());
+		} else if (value instanceof Timestamp) {
+			out.writeByte('P');
+			out.writeLong(((Timestamp) value).getTime());
+			out.writeInt(((Timestamp) value).getNanos());
+		} else if (value instanceof Date) {
+			out.writeByte('E');
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof Time) {
+			out.writeByte('M');
+			out.writeLong(((Time) value).getTime());
+		} else {
+			throw new IllegalArgumentException("Keyset pagination does not support sort values of type " + value.getClass().getName());
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case 'Z':
+			return in.readBoolean();
+		case 'B':
+			return in.readByte();
+		case 'S':
+			return in.readShort();
+		case 'I':
+			return in.readInt();
+		case 'J':
+			return in.readLong();
+		case 'F':
+			return in.readFloat();
+		case 'D':
+			return in.readDouble();
+		case 'T':
+			return in.readUTF();
+		case 'U':
+			return new UUID(in.readLong(), in.readLong());
+		case 'P':
+			Timestamp timestamp = new Timestamp(in.readLong());
+			timestamp.setNanos(in.readInt());
+			return timestamp;
+		case 'E':
+			return new Date(in.readLong());
+		case 'M':
+			return new Time(in.readLong());
+		default:
+			throw new IOException("Unknown value type: " + (char) type);
+		}
+	}
+
+}
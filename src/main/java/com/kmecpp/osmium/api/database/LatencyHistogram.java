@@ -0,0 +1,87 @@
+package com.kmecpp.osmium.api.database;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of latencies with exponentially sized buckets. Bucket
+ * i counts latencies below 2^i microseconds, so percentiles are accurate to
+ * within a factor of two, which is enough to tell fast statements from slow
+ * ones while keeping recording cheap.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 32; //The last bucket holds everything above ~18 minutes
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getTotalMillis() {
+		return totalNanos.sum() / 1E6;
+	}
+
+	public double getAverageMillis() {
+		long count = this.count.sum();
+		return count > 0 ? totalNanos.sum() / 1E6 / count : 0;
+	}
+
+	public double getMaxMillis() {
+		return maxNanos.get() / 1E6;
+	}
+
+	/**
+	 * Gets an upper bound for the given percentile of the recorded latencies
+	 *
+	 * @param percentile
+	 *            the percentile between 0 and 1, for example 0.99
+	 * @return the upper bound of the bucket containing the percentile, in
+	 *         milliseconds
+	 */
+	public double getPercentileMillis(double percentile) {
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = (long) Math.ceil(total * percentile);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target && counts[i] > 0) {
+				return Math.min((1L << i) / 1E3, getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		totalNanos.reset();
+		maxNanos.reset();
+	}
+
+}
@@ -0,0 +1,482 @@
+package com.kmecpp.osmium.api.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.kmecpp.osmium.api.logging.OsmiumLogger;
+
+/**
+ * Keeps the rows of a table ranked by a numeric column in memory, so that
+ * top lists and the rank of a row can be read without querying the database.
+ * The leaderboard is loaded once and then updated whenever a row is written
+ * or incremented through the same {@link SQLDatabase}. Changes made by other
+ * processes or by bulk updates are picked up by reloading the table
+ * periodically.
+ * <p>
+ * Rows are kept in a treap where every node stores the size of its subtree,
+ * so looking up a rank or the row at a rank takes O(log n). Rows with equal
+ * scores are ranked by the order in which they reached the score.
+ */
+public class Leaderboard {
+
+	private static final ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Osmium Leaderboard Reconciler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final SQLDatabase database;
+	private final TableData table;
+	private final ColumnAccessor scoreAccessor;
+	private final boolean descending;
+	private final String loadQuery;
+	private final int[] loadColumns;
+
+	private final HashMap<PrimaryKey, Node> nodes = new HashMap<>();
+	private Node root;
+	private long sequence;
+
+	private HashSet<PrimaryKey> changedDuringReload; //Non null while the table is being reloaded
+	private boolean reloadAgain; //Set when a reload is requested while one is running
+	private final AtomicBoolean reloadQueued = new AtomicBoolean();
+	private ScheduledFuture<?> reconcileTask;
+
+	public Leaderboard(SQLDatabase database, TableData table, String column, boolean descending) {
+		this.database = database;
+		this.table = table;
+		this.descending = descending;
+
+		ColumnData[] columns = table.getColumns();
+		ColumnData[] primaryColumns = table.getPrimaryColumns();
+		if (primaryColumns.length == 0) {
+			throw new IllegalArgumentException("Table " + table.getName() + " does not have a primary key!");
+		}
+
+		this.loadColumns = new int[primaryColumns.length + 1];
+		ColumnAccessor scoreAccessor = null;
+		int index = 0;
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].isPrimary()) {
+				loadColumns[index++] = i;
+			}
+			if (columns[i].getName().equals(column)) {
+				loadColumns[primaryColumns.length] = i;
+				scoreAccessor = table.getRowMapper().getAccessors()[i];
+			}
+		}
+		if (scoreAccessor == null || columns[loadColumns[primaryColumns.length]].isPrimary()) {
+			throw new IllegalArgumentException("Table " + table.getName() + " does not have a score column named " + column);
+		}
+		this.scoreAccessor = scoreAccessor;
+
+		StringBuilder sb = new StringBuilder("SELECT ");
+		for (int i = 0; i < loadColumns.length; i++) {
+			sb.append(i > 0 ? ", " : "").append(columns[loadColumns[i]].getName());
+		}
+		this.loadQuery = sb.append(" FROM ").append(table.getName()).toString();
+	}
+
+	/**
+	 * Reloads the table every reconcileMillis to pick up changes that were not
+	 * made through this database. 0 disables periodic reloading.
+	 */
+	public synchronized void setReconcileInterval(long reconcileMillis) {
+		if (reconcileTask != null) {
+			reconcileTask.cancel(false);
+			reconcileTask = null;
+		}
+		if (reconcileMillis > 0) {
+			reconcileTask = reconciler.scheduleWithFixedDelay(this::reconcileSafely, reconcileMillis, reconcileMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public TableData getTable() {
+		return table;
+	}
+
+	public synchronized int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Gets the rank of the row with the given primary key
+	 *
+	 * @return the rank starting at 1, or -1 if the row is not ranked
+	 */
+	public synchronized int getRank(Object... primaryKey) {
+		Node node = nodes.get(createKey(primaryKey));
+		return node != null ? rank(node) : -1;
+	}
+
+	public synchronized RankedEntry get(Object... primaryKey) {
+		Node node = nodes.get(createKey(primaryKey));
+		return node != null ? new RankedEntry(node, rank(node)) : null;
+	}
+
+	/**
+	 * Gets the highest ranked rows
+	 */
+	public List<RankedEntry> getTop(int count) {
+		return getRange(1, count);
+	}
+
+	/**
+	 * Gets the rows ranked within the given distance of a row, including the
+	 * row itself
+	 *
+	 * @return the surrounding rows, or an empty list if the row is not ranked
+	 */
+	public synchronized List<RankedEntry> getAround(int distance, Object... primaryKey) {
+		Node node = nodes.get(createKey(primaryKey));
+		if (node == null) {
+			return new ArrayList<>();
+		}
+		int rank = rank(node);
+		int from = Math.max(1, rank - distance);
+		return getRange(from, rank + distance - from + 1);
+	}
+
+	/**
+	 * Gets up to count rows starting at the given rank
+	 */
+	public synchronized List<RankedEntry> getRange(int fromRank, int count) {
+		ArrayList<RankedEntry> result = new ArrayList<>(Math.max(0, Math.min(count, nodes.size())));
+		if (count > 0 && fromRank >= 1) {
+			collect(root, fromRank - 1, fromRank - 1 + count, 0, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Updates the score of a row that was written. Called by the database.
+	 */
+	public synchronized void update(Object obj) {
+		PrimaryKey key = table.getPrimaryKey(obj);
+		Object value = key != null ? scoreAccessor.get(obj) : null;
+		if (value == null) {
+			return;
+		}
+		setScore(key, ((Number) value).doubleValue());
+		if (changedDuringReload != null) {
+			changedDuringReload.add(key);
+		}
+	}
+
+	/**
+	 * Adds to the score of a row that was incremented. Rows that are not
+	 * ranked yet are added by the next reload. Called by the database.
+	 */
+	public synchronized void increment(PrimaryKey key, String column, long delta) {
+		if (!scoreAccessor.getColumn().getName().equals(column)) {
+			return;
+		}
+		Node node = nodes.get(key);
+		if (node != null) {
+			setScore(key, node.score + delta);
+			if (changedDuringReload != null) {
+				changedDuringReload.add(key);
+			}
+		}
+	}
+
+	/**
+	 * Reloads the table in the background, unless a reload is already queued
+	 */
+	public void reconcileLater() {
+		if (reloadQueued.compareAndSet(false, true)) {
+			reconciler.execute(this::reconcileSafely);
+		}
+	}
+
+	/**
+	 * Reloads every score from the database. Rows that are written while the
+	 * table is loading keep the score they were written with. If a reload is
+	 * already running, it is run once more after it finishes, since it may
+	 * have read the table before the changes the caller wants picked up.
+	 */
+	public void reconcile() {
+		synchronized (this) {
+			if (changedDuringReload != null) {
+				reloadAgain = true;
+				return;
+			}
+			changedDuringReload = new HashSet<>();
+		}
+
+		boolean again;
+		do {
+			reloadQueued.set(false);
+			boolean loaded = false;
+			try {
+				reload();
+				loaded = true;
+			} finally {
+				synchronized (this) {
+					again = loaded && reloadAgain;
+					reloadAgain = false;
+					changedDuringReload = again ? new HashSet<>() : null;
+				}
+			}
+		} while (again);
+	}
+
+	private void reload() {
+		HashMap<PrimaryKey, Double> scores = database.holdFlushes(() -> database.readQuery(table, null, loadQuery, ps -> {}, rs -> {
+			HashMap<PrimaryKey, Double> result = new HashMap<>();
+			RowMapper mapper = table.getRowMapper();
+			while (rs.next()) {
+				Object obj = mapper.mapColumns(rs, loadColumns);
+				PrimaryKey key = table.getPrimaryKey(obj);
+				Object value = scoreAccessor.get(obj);
+				if (key != null && value != null) {
+					result.put(key, ((Number) value).doubleValue());
+				}
+			}
+			return result;
+		}));
+
+		synchronized (this) {
+			for (PrimaryKey key : changedDuringReload) {
+				Node node = nodes.get(key);
+				if (node != null) {
+					scores.put(key, node.score);
+				}
+			}
+			for (Node node : new ArrayList<>(nodes.values())) {
+				if (!scores.containsKey(node.key)) {
+					remove(node);
+				}
+			}
+			for (Entry<PrimaryKey, Double> entry : scores.entrySet()) {
+				setScore(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Stops reloading the table and removes the leaderboard from the database
+	 */
+	public void close() {
+		setReconcileInterval(0);
+		database.removeLeaderboard(this);
+	}
+
+	private void reconcileSafely() {
+		try {
+			if (database.isConnected()) {
+				reconcile();
+			}
+		} catch (Throwable t) {
+			OsmiumLogger.warn("Failed to reload leaderboard for " + table.getName());
+			t.printStackTrace();
+		}
+	}
+
+	private PrimaryKey createKey(Object[] primaryKey) {
+		PrimaryKey key = table.createPrimaryKey(primaryKey);
+		if (key == null) {
+			throw new IllegalArgumentException("Invalid primary key for " + table.getName());
+		}
+		return key;
+	}
+
+	private void setScore(PrimaryKey key, double score) {
+		Node node = nodes.get(key);
+		if (node != null) {
+			if (node.score == score) {
+				return;
+			}
+			remove(node);
+		}
+		node = new Node(key, score, ++sequence);
+		nodes.put(key, node);
+		root = insert(root, node);
+	}
+
+	private void remove(Node node) {
+		nodes.remove(node.key);
+		root = remove(root, node);
+	}
+
+	/**
+	 * Compares nodes by rank, so the highest ranked node is the smallest
+	 */
+	private int compare(Node a, Node b) {
+		int result = descending ? Double.compare(b.score, a.score) : Double.compare(a.score, b.score);
+		return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+	}
+
+	private int rank(Node node) {
+		int rank = 1;
+		Node current = root;
+		while (current != null) {
+			int comparison = compare(node, current);
+			if (comparison < 0) {
+				current = current.left;
+			} else {
+				rank += size(current.left) + (comparison > 0 ? 1 : 0);
+				if (comparison == 0) {
+					return rank;
+				}
+				current = current.right;
+			}
+		}
+		throw new IllegalStateException("Leaderboard node is not in the tree");
+	}
+
+	/**
+	 * Adds the nodes with a zero based rank in [from, to) to the result in
+	 * order. Subtrees that are entirely outside of the range are skipped.
+	 */
+	private void collect(Node node, int from, int to, int offset, List<RankedEntry> result) {
+		if (node == null || offset >= to || offset + node.size <= from) {
+			return;
+		}
+		collect(node.left, from, to, offset, result);
+		int index = offset + size(node.left);
+		if (index >= from && index < to) {
+			result.add(new RankedEntry(node, index + 1));
+		}
+		collect(node.right, from, to, index + 1, result);
+	}
+
+	private Node insert(Node tree, Node node) {
+		if (tree == null) {
+			return node;
+		} else if (node.priority > tree.priority) {
+			Node[] split = split(tree, node);
+			node.left = split[0];
+			node.right = split[1];
+			return updateSize(node);
+		} else if (compare(node, tree) < 0) {
+			tree.left = insert(tree.left, node);
+		} else {
+			tree.right = insert(tree.right, node);
+		}
+		return updateSize(tree);
+	}
+
+	private Node remove(Node tree, Node node) {
+		if (tree == null) {
+			return null;
+		} else if (tree == node) {
+			return merge(tree.left, tree.right);
+		} else if (compare(node, tree) < 0) {
+			tree.left = remove(tree.left, node);
+		} else {
+			tree.right = remove(tree.right, node);
+		}
+		return updateSize(tree);
+	}
+
+	/**
+	 * Splits the tree into the nodes ranked before the given node and the
+	 * nodes ranked after it
+	 */
+	private Node[] split(Node tree, Node node) {
+		if (tree == null) {
+			return new Node[2];
+		} else if (compare(tree, node) < 0) {
+			Node[] split = split(tree.right, node);
+			tree.right = split[0];
+			split[0] = updateSize(tree);
+			return split;
+		} else {
+			Node[] split = split(tree.left, node);
+			tree.left = split[1];
+			split[1] = updateSize(tree);
+			return split;
+		}
+	}
+
+	private static Node merge(Node left, Node right) {
+		if (left == null) {
+			return right;
+		} else if (right == null) {
+			return left;
+		} else if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			return updateSize(left);
+		} else {
+			right.left = merge(left, right.left);
+			return updateSize(right);
+		}
+	}
+
+	private static Node updateSize(Node node) {
+		node.size = 1 + size(node.left) + size(node.right);
+		return node;
+	}
+
+	private static int size(Node node) {
+		return node != null ? node.size : 0;
+	}
+
+	private static final class Node {
+
+		private final PrimaryKey key;
+		private final double score;
+		private final long sequence;
+		private final int priority = ThreadLocalRandom.current().nextInt();
+		private int size = 1;
+		private Node left;
+		private Node right;
+
+		public Node(PrimaryKey key, double score, long sequence) {
+			this.key = key;
+			this.score = score;
+			this.sequence = sequence;
+		}
+
+	}
+
+	public static class RankedEntry {
+
+		private final Object[] primaryKey;
+		private final double score;
+		private final int rank;
+
+		private RankedEntry(Node node, int rank) {
+			this.primaryKey = node.key.getValues();
+			this.score = node.score;
+			this.rank = rank;
+		}
+
+		/**
+		 * Gets the value of the first primary key column, which identifies
+		 * the row for tables with a single column primary key
+		 */
+		public Object getKey() {
+			return primaryKey[0];
+		}
+
+		public Object[] getPrimaryKey() {
+			return primaryKey.clone();
+		}
+
+		public double getScore() {
+			return score;
+		}
+
+		public int getRank() {
+			return rank;
+		}
+
+		@Override
+		public String toString() {
+			return "#" + rank + " " + (primaryKey.length == 1 ? primaryKey[0] : Arrays.toString(primaryKey)) + ": " + score;
+		}
+
+	}
+
+}
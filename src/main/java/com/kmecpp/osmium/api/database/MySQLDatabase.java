@@ -1,6 +1,5 @@
 package com.kmecpp.osmium.api.database;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Optional;
@@ -10,7 +9,6 @@ import com.kmecpp.osmium.api.database.api.Filter;
 import com.kmecpp.osmium.api.database.api.OrderBy;
 import com.kmecpp.osmium.api.logging.OsmiumLogger;
 import com.kmecpp.osmium.api.plugin.OsmiumPlugin;
-import com.kmecpp.osmium.api.util.Reflection;
 
 public class MySQLDatabase extends SQLDatabase {
 
@@ -39,12 +37,12 @@ public class MySQLDatabase extends SQLDatabase {
 
 	public int count(Class<?> tableClass) {
 		TableData table = tables.get(tableClass);
-		return get("SELECT COUNT(*) FROM " + table.getName(), rs -> rs.getInt(1));
+		return get(table.getStatements().getCount(), rs -> rs.getInt(1));
 	}
 
 	public int count(Class<?> tableClass, Filter filter) {
 		TableData table = tables.get(tableClass);
-		return query("SELECT COUNT(*) FROM " + table.getName() + filter.createParameterizedStatement(), DBUtil.filterLinker(filter), rs -> {
+		return query(table.getStatements().getCount() + filter.createParameterizedStatement(), DBUtil.filterLinker(filter, table), rs -> {
 			if (rs.next()) {
 				return rs.getInt(1);
 			} else {
@@ -55,11 +53,11 @@ public class MySQLDatabase extends SQLDatabase {
 
 	public int count(Class<?> tableClass, String columns, Object... values) {
 		TableData table = tables.get(tableClass);
-		String where = DBUtil.createWhere(columns.split(","));
 		//		return query("SELECT COUNT(*) FROM " + table.getName() + " WHERE " + where + (StringUtil.isNullOrEmpty(extraFilter) ? "" : " AND " + extraFilter), ps -> {
-		return query("SELECT COUNT(*) FROM " + table.getName() + " WHERE " + where, ps -> {
+		String[] columnNames = columns.split(",");
+		return query(table.getStatements().getCountWhere(columns), ps -> {
 			for (int i = 0; i < values.length; i++) {
-				DBUtil.updatePreparedStatement(ps, i + 1, values[i]);
+				table.bind(ps, i + 1, columnNames[i], values[i]);
 			}
 		}, rs -> {
 			if (rs.next()) {
@@ -72,26 +70,24 @@ public class MySQLDatabase extends SQLDatabase {
 
 	public int setAll(Class<?> tableClass, String column, Object value) {
 		TableData table = tables.get(tableClass);
-		return preparedUpdateStatement("update " + table.getName() + " set " + SQLDatabase.getColumnName(column) + "=?", ps -> DBUtil.updatePreparedStatement(ps, 1, value));
+		int result = preparedUpdateStatement("update " + table.getName() + " set " + SQLDatabase.getColumnName(column) + "=?", ps -> table.bind(ps, 1, column, value));
+		invalidateCache(table);
+		return result;
 	}
 
 	public <T> ArrayList<T> orderBy(Class<T> tableClass, OrderBy orderBy, int limit) {
 		TableData table = tables.get(tableClass);
-		return query(table, "SELECT * FROM " + table.getName() + orderBy + " LIMIT " + limit);
+		return query(table, table.getStatements().getSelectAll() + orderBy + " LIMIT " + limit);
 	}
 
 	public <T> ArrayList<T> orderBy(Class<T> tableClass, OrderBy orderBy, int limit, String columns, Object... values) {
 		TableData table = tables.get(tableClass);
-		return query(table, "SELECT * FROM " + table.getName()
-				+ " WHERE " + DBUtil.createWhere(columns.split(","))
-				+ orderBy + " LIMIT " + limit);
+		return queryWhere(table, columns.split(","), orderBy + " LIMIT " + limit, values);
 	}
 
 	public <T> ArrayList<T> orderBy(Class<T> tableClass, OrderBy orderBy, int min, int max, String columns, Object... values) {
 		TableData table = tables.get(tableClass);
-		return query(table, "SELECT * FROM " + table.getName()
-				+ " WHERE " + DBUtil.createWhere(columns.split(","))
-				+ orderBy + " LIMIT " + min + "," + max, values);
+		return queryWhere(table, columns.split(","), orderBy + " LIMIT " + min + "," + max, values);
 	}
 
 	public <T> ArrayList<T> orderBy(Class<T> tableClass, String orderBy, int min, int max) {
@@ -100,14 +96,12 @@ public class MySQLDatabase extends SQLDatabase {
 
 	public <T> ArrayList<T> orderBy(Class<T> tableClass, OrderBy orderBy, int min, int max) {
 		TableData table = tables.get(tableClass);
-		return query(table, "SELECT * FROM " + table.getName() + orderBy + " LIMIT " + min + "," + max);
+		return query(table, table.getStatements().getSelectAll() + orderBy + " LIMIT " + min + "," + max);
 	}
 
 	public <T> Optional<T> getFirst(Class<T> tableClass, OrderBy orderBy, String columns, Object... values) {
 		TableData table = tables.get(tableClass);
-		ArrayList<T> result = query(table, "SELECT * FROM " + table.getName()
-				+ " WHERE " + DBUtil.createWhere(columns.split(","))
-				+ orderBy + " LIMIT 1", values);
+		ArrayList<T> result = queryWhere(table, columns.split(","), orderBy + " LIMIT 1", values);
 		return result.isEmpty() ? Optional.empty() : Optional.of(result.get(0));
 	}
 
@@ -118,8 +112,7 @@ public class MySQLDatabase extends SQLDatabase {
 			columns = tableData.getPrimaryColumnNames();
 		}
 
-		String query = "SELECT * FROM " + tableData.getName() + " WHERE " + DBUtil.createWhere(columns);
-		return query(tableData, query, values);
+		return queryWhere(tableData, columns, values);
 
 		//		//		DB.get().preparedStatement("", s ->{});
 		//		//		String query = "SELECT * FROM " + tableData.getTableName() + " " + MDBUtil.createJoins(tableData) + " WHERE " + MDBUtil.createWhere(columns, values);
@@ -172,63 +165,30 @@ public class MySQLDatabase extends SQLDatabase {
 
 		OsmiumLogger.debug("QUERY: " + query);
 		ArrayList<T> results = new ArrayList<>();
-		this.preparedQueryStatement(query, s -> {
-			for (int i = 0; i < values.length; i++) {
-				DBUtil.updatePreparedStatement(s, i + 1, values[i]);
-			}
-		}, rs -> {
-			try {
-				//				if (!rs.isBeforeFirst()) {
-				//					//Empty
-				//				}
-				while (rs.next()) {
-					results.add(parse(rs, table));
+		readTable(table, values, () -> {
+			this.preparedQueryStatement(query, s -> {
+				for (int i = 0; i < values.length; i++) {
+					DBUtil.updatePreparedStatement(s, i + 1, values[i]);
 				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+			}, rs -> {
+				try {
+					//				if (!rs.isBeforeFirst()) {
+					//					//Empty
+					//				}
+					results.addAll(parseAll(rs, table));
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			});
+			return null;
 		});
 		return results;
 	}
 
-	@Override
-	public <T> T parse(ResultSet resultSet, TableData tableData) throws Exception {
-		T obj = Reflection.createInstance(Reflection.cast(tableData.getTableClass()));
-		int index = 1;
-		if (resultSet.getMetaData().getColumnCount() != tableData.getColumnCount()) {
-			throw new SQLException("Column count mismatch for " + tableData.getName() + ". Database: " + resultSet.getMetaData().getColumnCount() + " class: " + tableData.getColumnCount());
-		}
-		for (ColumnData column : tableData.getColumns()) {
-			//						if (!column.isForeignKey()) {
-			DBUtil.processResultSet(obj, resultSet, index, column);
-			//						}
-			index++;
-		}
-		//					for (MDBColumnData foreignKeyColumn : tableData.getForeignKeyColumns()) {
-		//						//TODO: Can't have foreign key to foreign key. Make this recursive?
-		//						for (MDBColumnData foreignObjectColumn : foreignKeyColumn.getForeignKey().getColumns()) {
-		//							MDBUtil.processResultSet(obj, rs, index, foreignObjectColumn);
-		//							index++;
-		//						}
-		//					}
-		return obj;
-	}
-
 	@Override
 	public void replaceInto(Class<?> tableClass, Object obj) {
 		TableData tableData = tables.get(tableClass);
-		String update = DBUtil.createReplaceInto(tableData);
-
-		this.preparedUpdateStatement(update, s -> {
-			try {
-				ColumnData[] columns = tableData.getColumns();
-				for (int i = 0; i < columns.length; i++) {
-					DBUtil.updatePreparedStatement(s, i + 1, columns[i].getField().get(obj));
-				}
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
-		});
+		writeRow(tableData, obj);
 	}
 
 	//	public MDBTableData getParentData(Class<?> cls) {
@@ -0,0 +1,50 @@
+package com.kmecpp.osmium.api.database;
+
+import java.util.Arrays;
+
+/**
+ * Identifies a single row of a database table by the values of its primary
+ * key columns
+ */
+public final class PrimaryKey {
+
+	private final TableData table;
+	private final Object[] values;
+	private final int hash;
+
+	public PrimaryKey(TableData table, Object... values) {
+		this.table = table;
+		this.values = values;
+		this.hash = 31 * table.hashCode() + Arrays.hashCode(values);
+	}
+
+	public TableData getTable() {
+		return table;
+	}
+
+	public Object[] getValues() {
+		return values;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (!(obj instanceof PrimaryKey)) {
+			return false;
+		}
+		PrimaryKey other = (PrimaryKey) obj;
+		return table == other.table && Arrays.equals(values, other.values);
+	}
+
+	@Override
+	public String toString() {
+		return table.getName() + Arrays.toString(values);
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.kmecpp.osmium.api.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import com.kmecpp.osmium.api.database.api.Tuple;
+
+/**
+ * A subset of the columns of a table, see
+ * {@link TableData#getProjection(String...)}. Values are read with the codecs
+ * of their columns, so they have the same types as the corresponding fields.
+ */
+public class Projection {
+
+	private final TableData table;
+	private final String[] columnNames;
+	private final int[] indices;
+	private final ColumnCodec<?>[] codecs;
+	private final String columnList;
+	private final String select;
+
+	Projection(TableData table, String[] columns) {
+		if (columns.length == 0) {
+			throw new IllegalArgumentException("Projection of " + table.getName() + " must contain at least one column!");
+		}
+
+		this.table = table;
+		this.columnNames = new String[columns.length];
+		this.indices = new int[columns.length];
+		this.codecs = new ColumnCodec<?>[columns.length];
+
+		String[] qualified = new String[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			ColumnData column = table.getColumnMeta(columns[i].trim());
+			if (column == null) {
+				throw new IllegalArgumentException("Table " + table.getName() + " does not have a column named " + columns[i]);
+			}
+			columnNames[i] = column.getName();
+			indices[i] = Arrays.asList(table.getColumns()).indexOf(column);
+			codecs[i] = ColumnCodecs.get(table.getDatabase().getType(), column);
+			if (codecs[i] == null) {
+				throw new IllegalArgumentException("Cannot read column " + column.getName() + " of unsupported type: " + column.getType().getName());
+			}
+			qualified[i] = table.getName() + ".`" + column.getName() + "`"; //Qualified in case of joins
+		}
+		this.columnList = String.join(", ", qualified);
+		this.select = ("SELECT " + columnList + " FROM " + table.getName()).intern();
+	}
+
+	public TableData getTable() {
+		return table;
+	}
+
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	/**
+	 * @return "table.`col1`, table.`col2`"
+	 */
+	public String getColumnList() {
+		return columnList;
+	}
+
+	/**
+	 * @return "SELECT table.`col1`, table.`col2` FROM table"
+	 */
+	public String getSelect() {
+		return select;
+	}
+
+	/**
+	 * Reads the value of a column of the projection from the current row
+	 *
+	 * @param column
+	 *            the index of the column within the projection
+	 */
+	public Object read(ResultSet rs, int column) throws SQLException {
+		return codecs[column].read(rs, column + 1);
+	}
+
+	public Tuple readTuple(ResultSet rs) throws SQLException {
+		Object[] values = new Object[codecs.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = codecs[i].read(rs, i + 1);
+		}
+		return new Tuple(columnNames, values);
+	}
+
+	/**
+	 * Creates a table object from the current row, only setting the fields of
+	 * the selected columns. See {@link RowMapper#mapColumns(ResultSet, int[])}.
+	 */
+	public <T> T readObject(ResultSet rs) throws SQLException {
+		return table.getRowMapper().mapColumns(rs, indices);
+	}
+
+	/**
+	 * Gets the value of a column of the projection from a table object
+	 */
+	public Object get(Object obj, int column) {
+		return table.getRowMapper().getAccessors()[indices[column]].get(obj);
+	}
+
+}
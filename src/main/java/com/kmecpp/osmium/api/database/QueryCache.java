@@ -0,0 +1,369 @@
+package com.kmecpp.osmium.api.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A cache of query results keyed by the normalized SQL of the query and its
+ * bound parameters. Every entry remembers the tables its query reads from and
+ * is removed as soon as any of those tables is written through the
+ * {@link SQLDatabase}, or once its time to live has passed.
+ * <p>
+ * The cache is bounded by the total number of cached rows, evicting the least
+ * recently used results first. Cached lists are unmodifiable and are shared
+ * between callers, so the rows in them must not be modified either.
+ */
+public class QueryCache {
+
+	private static final Pattern TABLE = Pattern.compile("(?i)\\b(?:FROM|JOIN|INTO|UPDATE|TABLE)\\s+(?:IF\\s+(?:NOT\\s+)?EXISTS\\s+)?[`\"]?(\\w+)");
+	private static final Pattern FROM = Pattern.compile("(?i)\\bFROM\\b");
+	private static final Pattern WORD = Pattern.compile("[`\"]?(\\w+)[`\"]?");
+	private static final Set<String> FROM_LIST_END = new HashSet<>(Arrays.asList("WHERE", "GROUP", "ORDER", "LIMIT", "HAVING", "WINDOW", "UNION", "EXCEPT",
+			"INTERSECT", "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "CROSS", "NATURAL", "STRAIGHT_JOIN", "ON", "USING", "FOR", "LOCK", "INTO"));
+
+	private final int maxRows;
+
+	private final LinkedHashMap<Key, CacheEntry> entries = new LinkedHashMap<>(16, 0.75F, true);
+	private final HashMap<String, HashSet<Key>> tableEntries = new HashMap<>();
+	private final HashMap<String, Long> tableVersions = new HashMap<>();
+	private long version; //Incremented when every table is invalidated
+	private int rows;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+
+	/**
+	 * @param maxRows
+	 *            the maximum number of rows held by all of the cached results.
+	 *            Results that are not lists count as one row.
+	 */
+	public QueryCache(int maxRows) {
+		this.maxRows = maxRows;
+	}
+
+	/**
+	 * Gets the cached result of the given query, or loads it and caches it for
+	 * the given time. Lists are cached and returned as unmodifiable copies.
+	 * The result is not cached if a table the query reads from is written
+	 * while it is loaded, since the loaded result may already be out of date.
+	 *
+	 * @param sql
+	 *            the query
+	 * @param params
+	 *            the values bound to the query's parameters
+	 * @param ttlMillis
+	 *            how long the result may be cached
+	 * @param loader
+	 *            executes the query
+	 * @return the result
+	 */
+	public <R> R get(String sql, Object[] params, long ttlMillis, Supplier<R> loader) {
+		Key key = new Key(normalize(sql), params);
+		Set<String> tables;
+		long version;
+		synchronized (this) {
+			CacheEntry entry = entries.get(key);
+			if (entry != null && System.nanoTime() - entry.expiry >= 0) {
+				remove(key);
+				expirations.increment();
+				entry = null;
+			}
+			if (entry != null) {
+				hits.increment();
+				return cast(entry.value);
+			}
+			misses.increment();
+			tables = getTables(key.sql);
+			version = getVersion(tables);
+		}
+
+		R result = freeze(loader.get());
+		put(key, result, tables, version, ttlMillis);
+		return result;
+	}
+
+	private synchronized void put(Key key, Object value, Set<String> tables, long version, long ttlMillis) {
+		int size = value instanceof List ? Math.max(1, ((List<?>) value).size()) : 1;
+		if (size > maxRows || getVersion(tables) != version) {
+			return;
+		}
+
+		remove(key);
+		entries.put(key, new CacheEntry(value, tables, size, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis)));
+		for (String table : tables) {
+			tableEntries.computeIfAbsent(table, k -> new HashSet<>()).add(key);
+		}
+		rows += size;
+
+		while (rows > maxRows) {
+			remove(entries.keySet().iterator().next()); //Least recently used
+			evictions.increment();
+		}
+	}
+
+	/**
+	 * Removes the results of every query that reads from a table written by
+	 * the given statement. If no table can be found in the statement,
+	 * everything is invalidated.
+	 */
+	public void invalidate(String sql) {
+		Set<String> tables = getTables(sql);
+		if (tables.isEmpty()) {
+			invalidateAll();
+		} else {
+			for (String table : tables) {
+				invalidateTable(table);
+			}
+		}
+	}
+
+	/**
+	 * Removes the results of every query that reads from the given table
+	 */
+	public synchronized void invalidateTable(String table) {
+		table = table.toLowerCase(Locale.ROOT);
+		tableVersions.merge(table, 1L, Long::sum);
+		HashSet<Key> keys = tableEntries.remove(table);
+		if (keys != null) {
+			for (Key key : keys) {
+				remove(key);
+				invalidations.increment();
+			}
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		version++;
+		invalidations.add(entries.size());
+		entries.clear();
+		tableEntries.clear();
+		rows = 0;
+	}
+
+	private void remove(Key key) {
+		CacheEntry entry = entries.remove(key);
+		if (entry != null) {
+			unlink(key, entry);
+		}
+	}
+
+	/**
+	 * Removes the given entry from the table index and the row count
+	 */
+	private void unlink(Key key, CacheEntry entry) {
+		for (String table : entry.tables) {
+			HashSet<Key> keys = tableEntries.get(table);
+			if (keys != null && keys.remove(key) && keys.isEmpty()) {
+				tableEntries.remove(table);
+			}
+		}
+		rows -= entry.size;
+	}
+
+	/**
+	 * Gets a number that changes whenever any of the given tables is
+	 * invalidated. Versions only ever increase, so their sum does as well.
+	 */
+	private long getVersion(Set<String> tables) {
+		long sum = version;
+		for (String table : tables) {
+			sum += tableVersions.getOrDefault(table, 0L);
+		}
+		return sum;
+	}
+
+	/**
+	 * Gets the lower case names of the tables referenced by the given
+	 * statement
+	 */
+	public static Set<String> getTables(String sql) {
+		HashSet<String> tables = new HashSet<>();
+		Matcher matcher = TABLE.matcher(sql);
+		while (matcher.find()) {
+			tables.add(matcher.group(1).toLowerCase(Locale.ROOT));
+		}
+		matcher = FROM.matcher(sql);
+		while (matcher.find()) {
+			addFromList(sql, matcher.end(), tables);
+		}
+		return tables;
+	}
+
+	/**
+	 * Adds every table of the comma separated FROM list starting at the given
+	 * index, such as a and b in "FROM a, b x WHERE". Subqueries in the list are
+	 * skipped, since their own FROM clauses are parsed separately.
+	 */
+	private static void addFromList(String sql, int start, Set<String> tables) {
+		Matcher word = WORD.matcher(sql);
+		boolean item = true; //Whether the next word starts a list item
+		int depth = 0;
+		for (int i = start; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (c == '(') {
+				depth++;
+				item = false;
+			} else if (c == ')') {
+				if (depth-- == 0) {
+					return; //End of the subquery the list belongs to
+				}
+			} else if (depth > 0) {
+				continue;
+			} else if (c == ',') {
+				item = true;
+			} else if (c == ';') {
+				return;
+			} else if (word.region(i, sql.length()).lookingAt()) {
+				String name = word.group(1);
+				if (FROM_LIST_END.contains(name.toUpperCase(Locale.ROOT)) && word.group().equals(name)) {
+					return;
+				} else if (item) {
+					tables.add(name.toLowerCase(Locale.ROOT));
+					item = false;
+				}
+				i = word.end() - 1;
+			}
+		}
+	}
+
+	/**
+	 * Collapses consecutive whitespace, so queries that only differ in
+	 * formatting share a cache entry
+	 */
+	public static String normalize(String sql) {
+		return sql.trim().replaceAll("\\s+", " ");
+	}
+
+	private static <R> R freeze(R value) {
+		if (value instanceof List) {
+			return cast(Collections.unmodifiableList(new ArrayList<>((List<?>) value)));
+		}
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <R> R cast(Object value) {
+		return (R) value;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the number of rows held by the cached results
+	 */
+	public synchronized int getRows() {
+		return rows;
+	}
+
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Gets the number of cached results that were removed because a table
+	 * they read from was written
+	 */
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getExpirations() {
+		return expirations.sum();
+	}
+
+	/**
+	 * @return the fraction of lookups that were served from the cache
+	 */
+	public double getHitRate() {
+		long hits = this.hits.sum();
+		long total = hits + misses.sum();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	public void resetStats() {
+		hits.reset();
+		misses.reset();
+		invalidations.reset();
+		evictions.reset();
+		expirations.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "QueryCache[size: " + size() + ", rows: " + getRows() + "/" + maxRows + ", hits: " + getHits() + ", misses: " + getMisses() + "]";
+	}
+
+	private static final class Key {
+
+		private final String sql;
+		private final Object[] params;
+		private final int hash;
+
+		public Key(String sql, Object[] params) {
+			this.sql = sql;
+			this.params = params != null ? params : new Object[0];
+			this.hash = 31 * sql.hashCode() + Arrays.deepHashCode(this.params);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && sql.equals(other.sql) && Arrays.deepEquals(params, other.params);
+		}
+
+	}
+
+	private static final class CacheEntry {
+
+		private final Object value;
+		private final Set<String> tables;
+		private final int size;
+		private final long expiry;
+
+		public CacheEntry(Object value, Set<String> tables, int size, long expiry) {
+			this.value = value;
+			this.tables = tables;
+			this.size = size;
+			this.expiry = expiry;
+		}
+
+	}
+
+}
@@ -0,0 +1,272 @@
+package com.kmecpp.osmium.api.database;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import com.kmecpp.osmium.api.logging.OsmiumLogger;
+
+/**
+ * Collects execution statistics for every statement executed by a database,
+ * grouped by SQL template. Literal values are stripped from statements so
+ * that queries which only differ in their values share a template.
+ * <p>
+ * Statements that take longer than the configured threshold are written,
+ * along with their parameters and caller, to a rotating slow query log in the
+ * plugin's folder.
+ */
+public class QueryStats {
+
+	private static final int MAX_TEMPLATES = 1000;
+	private static final String OTHER_TEMPLATE = "<other>";
+
+	private static final int LOG_FILE_SIZE = 1024 * 1024;
+	private static final int LOG_FILE_COUNT = 5;
+
+	private static volatile int slowQueryMillis = 500;
+
+	private final SQLDatabase database;
+	private final ConcurrentHashMap<String, TemplateStats> templates = new ConcurrentHashMap<>();
+
+	private Logger slowLog;
+	private FileHandler slowLogHandler;
+
+	public QueryStats(SQLDatabase database) {
+		this.database = database;
+	}
+
+	/**
+	 * Records the execution of a statement
+	 *
+	 * @param sql
+	 *            the executed SQL
+	 * @param startNanos
+	 *            the time the connection was requested, from
+	 *            {@link System#nanoTime()}
+	 * @param poolWaitNanos
+	 *            how long it took to get a connection from the pool
+	 * @param rows
+	 *            the number of rows returned or updated, or -1 if unknown
+	 * @param statement
+	 *            the statement, whose string representation is logged as the
+	 *            parameters if the statement was slow
+	 */
+	public void record(String sql, long startNanos, long poolWaitNanos, int rows, Object statement) {
+		long elapsed = System.nanoTime() - startNanos;
+
+		TemplateStats stats = templates.get(sql); //Parameterized SQL is already a template
+		if (stats == null) {
+			String template = normalize(sql);
+			stats = templates.get(template);
+			if (stats == null) {
+				stats = templates.computeIfAbsent(templates.size() < MAX_TEMPLATES ? template : OTHER_TEMPLATE, TemplateStats::new);
+			}
+		}
+		stats.latency.record(elapsed);
+		stats.poolWait.add(poolWaitNanos);
+		if (rows > 0) {
+			stats.rows.add(rows);
+		}
+
+		int threshold = slowQueryMillis;
+		if (threshold > 0 && elapsed >= threshold * 1_000_000L) {
+			logSlowQuery(sql, elapsed, poolWaitNanos, rows, statement);
+		}
+	}
+
+	public static int getSlowQueryMillis() {
+		return slowQueryMillis;
+	}
+
+	/**
+	 * Sets how long a statement of any database can take before it is written
+	 * to the slow query log. 0 disables the log.
+	 */
+	public static void setSlowQueryMillis(int slowQueryMillis) {
+		QueryStats.slowQueryMillis = slowQueryMillis;
+	}
+
+	/**
+	 * Gets the templates with the highest average latency
+	 */
+	public List<TemplateStats> getSlowest(int count) {
+		return getTop(count, TemplateStats::getAverageMillis);
+	}
+
+	/**
+	 * Gets the templates that spent the most time executing in total
+	 */
+	public List<TemplateStats> getMostExpensive(int count) {
+		return getTop(count, stats -> stats.latency.getTotalMillis());
+	}
+
+	private List<TemplateStats> getTop(int count, ToDoubleFunction<TemplateStats> key) {
+		ArrayList<TemplateStats> result = new ArrayList<>(templates.values());
+		result.sort(Comparator.comparingDouble(key).reversed());
+		return result.subList(0, Math.min(count, result.size()));
+	}
+
+	public TemplateStats getStats(String template) {
+		return templates.get(template);
+	}
+
+	public int getTemplateCount() {
+		return templates.size();
+	}
+
+	public void reset() {
+		templates.clear();
+	}
+
+	public synchronized void close() {
+		if (slowLogHandler != null) {
+			slowLog.removeHandler(slowLogHandler);
+			slowLogHandler.close();
+			slowLogHandler = null;
+			slowLog = null;
+		}
+	}
+
+	private synchronized void logSlowQuery(String sql, long elapsed, long poolWait, int rows, Object statement) {
+		Logger log = getSlowLog();
+		if (log == null) {
+			return;
+		}
+		String parameters = statement != null ? String.valueOf(statement) : "";
+		log.info(String.format("%.1fms (pool wait %.1fms, rows %s) %s%n  SQL: %s%n  Statement: %s%n  Caller: %s",
+				elapsed / 1E6, poolWait / 1E6, rows >= 0 ? rows : "?", database.getPlugin().getName(), sql, parameters, getCaller()));
+	}
+
+	private Logger getSlowLog() {
+		if (slowLog == null) {
+			try {
+				Path folder = database.getPlugin().getFolder();
+				Files.createDirectories(folder);
+				slowLogHandler = new FileHandler(folder.resolve("slow-queries.%g.log").toString(), LOG_FILE_SIZE, LOG_FILE_COUNT, true);
+				slowLogHandler.setFormatter(new Formatter() {
+
+					@Override
+					public String format(LogRecord record) {
+						return "[" + LocalDateTime.now().withNano(0) + "] " + record.getMessage() + System.lineSeparator();
+					}
+
+				});
+				slowLog = Logger.getAnonymousLogger();
+				slowLog.setUseParentHandlers(false);
+				slowLog.addHandler(slowLogHandler);
+			} catch (IOException e) {
+				OsmiumLogger.warn("Failed to open slow query log for " + database.getPlugin().getName() + ": " + e.getMessage());
+				return null;
+			}
+		}
+		return slowLog;
+	}
+
+	/**
+	 * Gets the first stack frame outside of the database API
+	 */
+	private static String getCaller() {
+		for (StackTraceElement element : new Throwable().getStackTrace()) {
+			String className = element.getClassName();
+			if (!className.startsWith("com.kmecpp.osmium.api.database") && !className.startsWith("java.")) {
+				return element.toString();
+			}
+		}
+		return "<unknown>";
+	}
+
+	/**
+	 * Replaces string and numeric literals in the given SQL with '?'
+	 */
+	public static String normalize(String sql) {
+		StringBuilder sb = null;
+		int length = sql.length();
+		for (int i = 0; i < length; i++) {
+			char c = sql.charAt(i);
+			int end = -1;
+			if (c == '\'') {
+				end = i + 1;
+				while (end < length) {
+					char next = sql.charAt(end++);
+					if (next == '\\') {
+						end++; //Backslash escape
+					} else if (next == '\'') {
+						if (end < length && sql.charAt(end) == '\'') {
+							end++; //Doubled quote
+						} else {
+							break;
+						}
+					}
+				}
+				end = Math.min(end, length);
+			} else if (Character.isDigit(c) && (i == 0 || !Character.isLetterOrDigit(sql.charAt(i - 1)) && sql.charAt(i - 1) != '_' && sql.charAt(i - 1) != '`')) {
+				end = i + 1;
+				while (end < length && (Character.isDigit(sql.charAt(end)) || sql.charAt(end) == '.')) {
+					end++;
+				}
+			}
+
+			if (end != -1) {
+				if (sb == null) {
+					sb = new StringBuilder(length).append(sql, 0, i);
+				}
+				sb.append('?');
+				i = end - 1;
+			} else if (sb != null) {
+				sb.append(c);
+			}
+		}
+		return sb != null ? sb.toString() : sql;
+	}
+
+	public static class TemplateStats {
+
+		private final String template;
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final LongAdder poolWait = new LongAdder();
+		private final LongAdder rows = new LongAdder();
+
+		public TemplateStats(String template) {
+			this.template = template;
+		}
+
+		public String getTemplate() {
+			return template;
+		}
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		public long getCount() {
+			return latency.getCount();
+		}
+
+		public double getAverageMillis() {
+			return latency.getAverageMillis();
+		}
+
+		public double getAveragePoolWaitMillis() {
+			long count = latency.getCount();
+			return count > 0 ? poolWait.sum() / 1E6 / count : 0;
+		}
+
+		public double getAverageRows() {
+			long count = latency.getCount();
+			return count > 0 ? (double) rows.sum() / count : 0;
+		}
+
+	}
+
+}
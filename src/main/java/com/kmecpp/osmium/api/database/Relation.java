@@ -0,0 +1,199 @@
+package com.kmecpp.osmium.api.database;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.kmecpp.osmium.api.database.api.DBManyToOne;
+import com.kmecpp.osmium.api.database.api.DBOneToMany;
+import com.kmecpp.osmium.api.util.StringUtil;
+
+/**
+ * A one to many or many to one relationship from a table to another table,
+ * declared by {@link DBOneToMany} or {@link DBManyToOne} on a field of the
+ * owning table. The related rows are loaded for a whole list of owners at
+ * once, so loading any number of owners takes one extra query per relation
+ * instead of one query per owner.
+ */
+public class Relation {
+
+	private final TableData table;
+	private final Field field;
+	private final boolean many;
+	private final Class<?> targetClass;
+	private final String localColumn;
+	private final String targetColumn;
+
+	Relation(TableData table, Field field) {
+		this.table = table;
+		this.field = field;
+
+		DBOneToMany oneToMany = field.getDeclaredAnnotation(DBOneToMany.class);
+		if (oneToMany != null) {
+			Type type = field.getGenericType();
+			if (!field.getType().isAssignableFrom(ArrayList.class) || !(type instanceof ParameterizedType)
+					|| !(((ParameterizedType) type).getActualTypeArguments()[0] instanceof Class)) {
+				throw new IllegalArgumentException("One to many relation " + getName() + " must be a List of table objects!");
+			}
+			this.many = true;
+			this.targetClass = (Class<?>) ((ParameterizedType) type).getActualTypeArguments()[0];
+			this.localColumn = oneToMany.references();
+			this.targetColumn = oneToMany.column();
+		} else {
+			DBManyToOne manyToOne = field.getDeclaredAnnotation(DBManyToOne.class);
+			this.many = false;
+			this.targetClass = field.getType();
+			this.localColumn = manyToOne.column();
+			this.targetColumn = manyToOne.references();
+		}
+	}
+
+	/**
+	 * Gets whether the given field declares a relation instead of a column
+	 */
+	public static boolean isRelation(Field field) {
+		return field.isAnnotationPresent(DBOneToMany.class) || field.isAnnotationPresent(DBManyToOne.class);
+	}
+
+	public String getName() {
+		return table.getTableClass().getSimpleName() + "." + field.getName();
+	}
+
+	public TableData getTable() {
+		return table;
+	}
+
+	public Class<?> getTargetClass() {
+		return targetClass;
+	}
+
+	/**
+	 * Gets whether this is a one to many relation
+	 */
+	public boolean isMany() {
+		return many;
+	}
+
+	/**
+	 * Loads the related rows of every given row with one query and sets them
+	 */
+	void load(SQLDatabase database, List<?> rows) {
+		TableData target = getTarget(database);
+		ColumnAccessor local = getAccessor(table, localColumn);
+		LinkedHashMap<Object, Object> keys = getKeys(rows, local);
+		Map<Object, List<Object>> related = loadRelated(database, target, keys);
+		for (Object row : rows) {
+			Object key = normalize(local.get(row));
+			List<Object> values = key != null ? related.get(key) : null;
+			if (many) {
+				set(row, values != null ? new ArrayList<>(values) : new ArrayList<>());
+			} else {
+				set(row, values != null ? values.get(0) : null);
+			}
+		}
+	}
+
+	/**
+	 * Sets the children of every given row to a {@link RelationList} that
+	 * loads the children of all of the rows the first time it is accessed
+	 */
+	void loadLazily(SQLDatabase database, List<?> rows) {
+		if (!many) {
+			throw new IllegalArgumentException("Many to one relation " + getName() + " cannot be loaded lazily!");
+		}
+
+		TableData target = getTarget(database);
+		ColumnAccessor local = getAccessor(table, localColumn);
+		LinkedHashMap<Object, Object> keys = getKeys(rows, local);
+		RelationList.Batch<Object> batch = new RelationList.Batch<>(() -> loadRelated(database, target, keys));
+		for (Object row : rows) {
+			set(row, new RelationList<>(batch, normalize(local.get(row))));
+		}
+	}
+
+	/**
+	 * Gets the distinct, non null values of the given column, mapped from
+	 * their normalized form to the value that is bound to the query
+	 */
+	private static LinkedHashMap<Object, Object> getKeys(List<?> rows, ColumnAccessor accessor) {
+		LinkedHashMap<Object, Object> keys = new LinkedHashMap<>();
+		for (Object row : rows) {
+			Object value = accessor.get(row);
+			if (value != null) {
+				keys.putIfAbsent(normalize(value), value);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Selects the rows of the target table whose column matches one of the
+	 * given keys, grouped by the normalized key
+	 */
+	private Map<Object, List<Object>> loadRelated(SQLDatabase database, TableData target, Map<Object, Object> keys) {
+		HashMap<Object, List<Object>> related = new HashMap<>();
+		if (keys.isEmpty()) {
+			return related;
+		}
+
+		ColumnAccessor accessor = getAccessor(target, targetColumn);
+		for (Object row : database.selectWhereIn(target, accessor.getColumn().getName(), new ArrayList<>(keys.values()))) {
+			related.computeIfAbsent(normalize(accessor.get(row)), k -> new ArrayList<>()).add(row);
+		}
+		return related;
+	}
+
+	private TableData getTarget(SQLDatabase database) {
+		TableData target = database.getTable(targetClass);
+		if (target == null) {
+			throw new IllegalStateException("Relation " + getName() + " refers to " + targetClass.getName() + " which is not a registered table!");
+		}
+		return target;
+	}
+
+	/**
+	 * Gets the accessor of the given column, or of the primary key if the
+	 * column is empty
+	 */
+	private ColumnAccessor getAccessor(TableData table, String column) {
+		ColumnData data;
+		if (StringUtil.isNullOrEmpty(column)) {
+			if (table.getPrimaryColumns().length != 1) {
+				throw new IllegalArgumentException("Relation " + getName() + " must specify a column because " + table.getName() + " does not have a single primary key column!");
+			}
+			data = table.getPrimaryColumns()[0];
+		} else {
+			data = table.getColumnMeta(column);
+			if (data == null) {
+				throw new IllegalArgumentException("Relation " + getName() + " refers to unknown column " + column + " of " + table.getName());
+			}
+		}
+		return table.getRowMapper().getAccessors()[Arrays.asList(table.getColumns()).indexOf(data)];
+	}
+
+	private void set(Object row, Object value) {
+		try {
+			field.set(row, value);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Converts integral values to longs, so keys match even if the two columns
+	 * have different integer types
+	 */
+	private static Object normalize(Object value) {
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return ((Number) value).longValue();
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.kmecpp.osmium.api.database;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The children of a lazily loaded one to many relation. The children of all
+ * of the rows that were loaded together are fetched by a single query the
+ * first time any of their lists is accessed, so iterating over every row's
+ * children takes one query in total.
+ */
+public class RelationList<E> extends AbstractList<E> {
+
+	private final Batch<E> batch;
+	private final Object key;
+	private ArrayList<E> elements;
+
+	/**
+	 * @param batch
+	 *            the loader shared by the rows that were loaded together
+	 * @param key
+	 *            the key of this list's children in the batch, or null if the
+	 *            row has no children
+	 */
+	public RelationList(Batch<E> batch, Object key) {
+		this.batch = batch;
+		this.key = key;
+	}
+
+	/**
+	 * Gets whether the children have been fetched from the database
+	 */
+	public boolean isLoaded() {
+		return batch.isLoaded();
+	}
+
+	private ArrayList<E> elements() {
+		if (elements == null) {
+			List<E> children = key != null ? batch.get().get(key) : null;
+			elements = children != null ? new ArrayList<>(children) : new ArrayList<>();
+		}
+		return elements;
+	}
+
+	@Override
+	public E get(int index) {
+		return elements().get(index);
+	}
+
+	@Override
+	public int size() {
+		return elements().size();
+	}
+
+	@Override
+	public E set(int index, E element) {
+		return elements().set(index, element);
+	}
+
+	@Override
+	public void add(int index, E element) {
+		elements().add(index, element);
+		modCount++;
+	}
+
+	@Override
+	public E remove(int index) {
+		modCount++;
+		return elements().remove(index);
+	}
+
+	/**
+	 * Loads the children of a batch of rows at most once, grouped by the key
+	 * of their parent
+	 */
+	public static class Batch<E> {
+
+		private final Supplier<Map<Object, List<E>>> loader;
+		private volatile Map<Object, List<E>> children;
+
+		public Batch(Supplier<Map<Object, List<E>>> loader) {
+			this.loader = loader;
+		}
+
+		public boolean isLoaded() {
+			return children != null;
+		}
+
+		public Map<Object, List<E>> get() {
+			Map<Object, List<E>> children = this.children;
+			if (children == null) {
+				synchronized (this) {
+					children = this.children;
+					if (children == null) {
+						this.children = children = loader.get();
+					}
+				}
+			}
+			return children;
+		}
+
+	}
+
+}
@@ -0,0 +1,229 @@
+package com.kmecpp.osmium.api.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.kmecpp.osmium.api.logging.OsmiumLogger;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Routes reads that can tolerate replication lag to read replicas. Writes
+ * always go to the primary. The route is chosen per thread, so every read made
+ * by a callback passed to {@link #run(Boolean, Supplier)} uses it.
+ * <p>
+ * Players whose rows were written recently are pinned to the primary for a
+ * short window, so their reads always see their own writes even if the
+ * replicas have not caught up yet. Players are identified by the UUID values
+ * of the rows they write and read.
+ */
+public class ReplicaRouter {
+
+	private static final int PIN_SWEEP_THRESHOLD = 1024; //Expired pins are only removed once there are this many
+
+	private final HikariDataSource[] replicas;
+	private final long pinNanos;
+	private final ConcurrentHashMap<UUID, Long> pins = new ConcurrentHashMap<>();
+	private final ThreadLocal<Boolean> route = new ThreadLocal<>();
+	private final AtomicInteger next = new AtomicInteger();
+
+	private final LongAdder replicaReads = new LongAdder();
+	private final LongAdder pinnedReads = new LongAdder();
+	private final LongAdder failovers = new LongAdder();
+
+	/**
+	 * Opens a connection pool for every replica
+	 *
+	 * @param name
+	 *            the prefix of the pool names
+	 * @param configs
+	 *            the configuration of each replica's pool
+	 * @param readYourWritesMillis
+	 *            how long a player's reads are pinned to the primary after
+	 *            they write, or 0 to disable pinning
+	 */
+	public ReplicaRouter(String name, List<HikariConfig> configs, long readYourWritesMillis) {
+		if (configs.isEmpty()) {
+			throw new IllegalArgumentException("Replica router requires at least one replica!");
+		}
+		this.replicas = new HikariDataSource[configs.size()];
+		this.pinNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesMillis);
+		try {
+			for (int i = 0; i < replicas.length; i++) {
+				HikariConfig config = configs.get(i);
+				config.setPoolName(name + " Replica #" + (i + 1));
+				replicas[i] = new HikariDataSource(config); //This executes the test query
+			}
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the route chosen by the current thread
+	 *
+	 * @return true if reads use a replica, false if they use the primary, or
+	 *         null if each table's default is used
+	 */
+	public Boolean getRoute() {
+		return route.get();
+	}
+
+	public boolean isReplicaRead() {
+		return Boolean.TRUE.equals(route.get());
+	}
+
+	/**
+	 * Runs the given reader with the given route, restoring the current
+	 * thread's previous route afterwards
+	 *
+	 * @see #getRoute()
+	 */
+	public <T> T run(Boolean route, Supplier<T> reader) {
+		Boolean previous = this.route.get();
+		if (Objects.equals(route, previous)) {
+			return reader.get();
+		}
+
+		set(route);
+		try {
+			return reader.get();
+		} finally {
+			set(previous);
+		}
+	}
+
+	private void set(Boolean route) {
+		if (route == null) {
+			this.route.remove();
+		} else {
+			this.route.set(route);
+		}
+	}
+
+	/**
+	 * Gets a connection to the replica with the fewest active connections.
+	 * Replicas are tried in turn starting from a rotating offset, so idle
+	 * replicas share the load evenly.
+	 *
+	 * @return the connection, or null if no replica is available and the read
+	 *         should use the primary instead
+	 */
+	public Connection getConnection() {
+		int start = Math.floorMod(next.getAndIncrement(), replicas.length);
+		HikariDataSource best = null;
+		int bestActive = Integer.MAX_VALUE;
+		for (int i = 0; i < replicas.length; i++) {
+			HikariDataSource replica = replicas[(start + i) % replicas.length];
+			if (replica.isClosed()) {
+				continue;
+			}
+			int active = replica.getHikariPoolMXBean().getActiveConnections();
+			if (active < bestActive) {
+				best = replica;
+				bestActive = active;
+			}
+		}
+		if (best == null) {
+			return null;
+		}
+
+		try {
+			Connection connection = best.getConnection();
+			replicaReads.increment();
+			return connection;
+		} catch (SQLException e) {
+			OsmiumLogger.warn("Failed to connect to read replica " + best.getPoolName() + ", reading from the primary instead: " + e.getMessage());
+			failovers.increment();
+			return null;
+		}
+	}
+
+	/**
+	 * Pins the players among the given values to the primary for the read
+	 * your writes window
+	 */
+	public void pin(Object... values) {
+		if (pinNanos <= 0) {
+			return;
+		}
+		long deadline = System.nanoTime() + pinNanos;
+		for (Object value : values) {
+			if (value instanceof UUID) {
+				pins.put((UUID) value, deadline);
+			}
+		}
+		if (pins.size() > PIN_SWEEP_THRESHOLD) {
+			long now = System.nanoTime();
+			pins.values().removeIf(expiry -> expiry - now < 0);
+		}
+	}
+
+	/**
+	 * Checks whether any of the given values is a player who is pinned to the
+	 * primary
+	 */
+	public boolean isPinned(Object... values) {
+		if (values == null || pins.isEmpty()) {
+			return false;
+		}
+		for (Object value : values) {
+			if (value instanceof UUID) {
+				Long deadline = pins.get(value);
+				if (deadline != null) {
+					if (deadline - System.nanoTime() > 0) {
+						pinnedReads.increment();
+						return true;
+					}
+					pins.remove(value, deadline);
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the number of connections that were handed out by a replica
+	 */
+	public long getReplicaReads() {
+		return replicaReads.sum();
+	}
+
+	/**
+	 * Gets the number of replica reads that used the primary because the
+	 * player was pinned
+	 */
+	public long getPinnedReads() {
+		return pinnedReads.sum();
+	}
+
+	/**
+	 * Gets the number of replica reads that used the primary because the
+	 * chosen replica was unavailable
+	 */
+	public long getFailovers() {
+		return failovers.sum();
+	}
+
+	public int getReplicaCount() {
+		return replicas.length;
+	}
+
+	public void close() {
+		for (HikariDataSource replica : replicas) {
+			if (replica != null) {
+				replica.close();
+			}
+		}
+	}
+
+}
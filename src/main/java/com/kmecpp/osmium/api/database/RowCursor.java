@@ -0,0 +1,93 @@
+package com.kmecpp.osmium.api.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.kmecpp.osmium.api.util.IOUtil;
+
+/**
+ * A forward only cursor over the rows of a query which maps each row to an
+ * object as it is read. The cursor holds its connection until it is closed,
+ * which happens automatically once the last row has been read.
+ */
+public class RowCursor<T> implements Iterator<T>, AutoCloseable {
+
+	private final Connection connection;
+	private final Statement statement;
+	private final ResultSet resultSet;
+	private final RowMapper mapper;
+
+	private boolean advanced;
+	private boolean hasNext;
+	private boolean closed;
+
+	public RowCursor(Connection connection, Statement statement, ResultSet resultSet, RowMapper mapper) throws SQLException {
+		this.connection = connection;
+		this.statement = statement;
+		this.resultSet = resultSet;
+		this.mapper = mapper;
+		mapper.validate(resultSet);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		} else if (!advanced) {
+			try {
+				hasNext = resultSet.next();
+				advanced = true;
+			} catch (SQLException e) {
+				close();
+				throw new RuntimeException(e);
+			}
+			if (!hasNext) {
+				close();
+			}
+		}
+		return hasNext;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		advanced = false;
+		try {
+			return mapper.map(resultSet);
+		} catch (SQLException e) {
+			close();
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Creates a sequential stream over the remaining rows. Closing the stream
+	 * closes this cursor.
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			IOUtil.close(resultSet, statement, connection);
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package com.kmecpp.osmium.api.database;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.kmecpp.osmium.api.database.api.DatabaseType;
+import com.kmecpp.osmium.api.util.Reflection;
+
+/**
+ * Converts rows of a table to objects and binds objects to statements. A
+ * mapper is created once for every table when it is registered, resolving the
+ * constructor and the {@link ColumnAccessor} of every column up front.
+ */
+public class RowMapper {
+
+	private final TableData table;
+	private final MethodHandle constructor;
+	private final ColumnAccessor[] accessors;
+	private final boolean validateColumnCount;
+
+	public RowMapper(TableData table, DatabaseType databaseType) {
+		this.table = table;
+		this.constructor = getConstructor(table.getTableClass());
+		this.validateColumnCount = databaseType == DatabaseType.MYSQL;
+
+		ColumnData[] columns = table.getColumns();
+		this.accessors = new ColumnAccessor[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			accessors[i] = ColumnAccessor.create(columns[i], databaseType);
+		}
+	}
+
+	public ColumnAccessor[] getAccessors() {
+		return accessors;
+	}
+
+	/**
+	 * Checks that the given result set can be mapped by this mapper. This only
+	 * needs to be called once per result set, not for every row.
+	 */
+	public void validate(ResultSet rs) throws SQLException {
+		if (validateColumnCount) {
+			int columnCount = rs.getMetaData().getColumnCount();
+			if (columnCount != accessors.length) {
+				throw new SQLException("Column count mismatch for " + table.getName() + ". Database: " + columnCount + " class: " + accessors.length);
+			}
+		}
+	}
+
+	/**
+	 * Creates an object from the current row of the result set
+	 */
+	public <T> T map(ResultSet rs) throws SQLException {
+		Object obj = newInstance();
+		for (int i = 0; i < accessors.length; i++) {
+			accessors[i].read(rs, i + 1, obj);
+		}
+
+		IncrementAccumulator increments = table.getDatabase().getIncrements();
+		if (increments != null) {
+			increments.apply(table, obj); //Before the snapshot, so unchanged counters are not written back
+		}
+
+		RowSnapshots snapshots = table.getSnapshots();
+		if (snapshots != null) {
+			PrimaryKey key = table.getPrimaryKey(obj);
+			if (key != null) {
+				snapshots.put(key, getValues(obj));
+			}
+		}
+		return Reflection.cast(obj);
+	}
+
+	/**
+	 * Creates an object from a row that only contains the given columns, in
+	 * the given order. The other fields are left at their defaults and no
+	 * snapshot is recorded, since the object is not a complete row.
+	 *
+	 * @param columns
+	 *            the indices of the selected columns
+	 */
+	public <T> T mapColumns(ResultSet rs, int[] columns) throws SQLException {
+		Object obj = newInstance();
+		for (int i = 0; i < columns.length; i++) {
+			accessors[columns[i]].read(rs, i + 1, obj);
+		}
+
+		IncrementAccumulator increments = table.getDatabase().getIncrements();
+		if (increments != null) {
+			increments.apply(table, obj);
+		}
+		return Reflection.cast(obj);
+	}
+
+	/**
+	 * Gets every column value of the given object in column order
+	 */
+	public Object[] getValues(Object obj) {
+		Object[] values = new Object[accessors.length];
+		for (int i = 0; i < accessors.length; i++) {
+			values[i] = accessors[i].get(obj);
+		}
+		return values;
+	}
+
+	/**
+	 * Binds every column value of the given object to the statement, in column
+	 * order starting at the first parameter
+	 */
+	public void bind(PreparedStatement ps, Object obj) throws SQLException {
+		for (int i = 0; i < accessors.length; i++) {
+			accessors[i].bind(ps, i + 1, obj);
+		}
+	}
+
+	private Object newInstance() {
+		if (constructor == null) {
+			return Reflection.createInstance(table.getTableClass());
+		}
+		try {
+			return (Object) constructor.invokeExact();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	/**
+	 * Gets a method handle for the no argument constructor of the class or
+	 * null if it doesn't have one, in which case
+	 * {@link Reflection#createInstance(Class)} is used instead
+	 */
+	private static MethodHandle getConstructor(Class<?> cls) {
+		if (Modifier.isAbstract(cls.getModifiers())) {
+			return null;
+		}
+		try {
+			Constructor<?> constructor = cls.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return MethodHandles.lookup().unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+		} catch (ReflectiveOperationException | SecurityException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+package com.kmecpp.osmium.api.database;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers the column values of rows as they were last loaded from or saved
+ * to the database, so that saving a row only has to write the columns that
+ * changed. The number of remembered rows is bounded and the least recently
+ * used rows are forgotten first. Forgotten rows are simply written in full the
+ * next time they are saved.
+ * <p>
+ * Columns with mutable values, such as lists or serialized objects, cannot be
+ * compared with their snapshot and are always considered changed.
+ */
+public class RowSnapshots {
+
+	private final int maxSize;
+	private final boolean[] comparable;
+	private final BitSet updatable;
+
+	private final LinkedHashMap<PrimaryKey, Object[]> snapshots;
+
+	public RowSnapshots(TableData table, int maxSize) {
+		this.maxSize = maxSize;
+
+		ColumnAccessor[] accessors = table.getRowMapper().getAccessors();
+		this.comparable = new boolean[accessors.length];
+		this.updatable = new BitSet(accessors.length);
+		for (int i = 0; i < accessors.length; i++) {
+			comparable[i] = accessors[i].isImmutable();
+			if (!accessors[i].getColumn().isPrimary()) {
+				updatable.set(i);
+			}
+		}
+
+		this.snapshots = new LinkedHashMap<PrimaryKey, Object[]>(16, 0.75F, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<PrimaryKey, Object[]> eldest) {
+				return size() > RowSnapshots.this.maxSize;
+			}
+
+		};
+	}
+
+	/**
+	 * Gets the indices of the non primary key columns whose values differ from
+	 * the snapshot of the row
+	 *
+	 * @param key
+	 *            the primary key of the row
+	 * @param values
+	 *            the current column values of the row, in column order
+	 * @return the changed columns, which is empty if the row is unchanged, or
+	 *         null if there is no snapshot of the row and it has to be
+	 *         written in full
+	 */
+	public BitSet getChangedColumns(PrimaryKey key, Object[] values) {
+		Object[] snapshot;
+		synchronized (this) {
+			snapshot = snapshots.get(key);
+		}
+		if (snapshot == null) {
+			return null;
+		}
+
+		BitSet changed = new BitSet(values.length);
+		for (int i = updatable.nextSetBit(0); i >= 0; i = updatable.nextSetBit(i + 1)) {
+			if (!comparable[i] || !Objects.equals(values[i], snapshot[i])) {
+				changed.set(i);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Gets the indices of the non primary key columns, which is empty if every
+	 * column is part of the primary key
+	 */
+	public BitSet getUpdatableColumns() {
+		return (BitSet) updatable.clone();
+	}
+
+	/**
+	 * Records the column values of a row that was just loaded or saved
+	 */
+	public synchronized void put(PrimaryKey key, Object[] values) {
+		snapshots.put(key, values);
+	}
+
+	public synchronized void invalidate(PrimaryKey key) {
+		snapshots.remove(key);
+	}
+
+	public synchronized void invalidateAll() {
+		snapshots.clear();
+	}
+
+	public synchronized int size() {
+		return snapshots.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+}
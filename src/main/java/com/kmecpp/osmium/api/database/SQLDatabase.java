@@ -5,26 +5,49 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 
 import com.kmecpp.osmium.api.database.api.DBTable;
 import com.kmecpp.osmium.api.database.api.DatabaseType;
 import com.kmecpp.osmium.api.database.api.Filter;
+import com.kmecpp.osmium.api.database.api.OrderBy;
+import com.kmecpp.osmium.api.database.api.Page;
 import com.kmecpp.osmium.api.database.api.PreparedStatementBuilder;
 import com.kmecpp.osmium.api.database.api.ResultSetProcessor;
 import com.kmecpp.osmium.api.database.api.ResultSetTransformer;
 import com.kmecpp.osmium.api.database.api.SQLConfig;
 import com.kmecpp.osmium.api.database.api.SelectQuery;
+import com.kmecpp.osmium.api.database.api.TransactionCallback;
+import com.kmecpp.osmium.api.database.api.Tuple;
+import com.kmecpp.osmium.api.database.api.UUIDStorage;
 import com.kmecpp.osmium.api.logging.OsmiumLogger;
 import com.kmecpp.osmium.api.plugin.OsmiumPlugin;
 import com.kmecpp.osmium.api.util.Callback;
@@ -38,6 +61,14 @@ import com.zaxxer.hikari.pool.HikariPool.PoolInitializationException;
 public abstract class SQLDatabase {
 
 	//	private static final ExecutorService threadPool = Executors.newFixedThreadPool(3);
+
+	private static final int SQLITE_BUSY_TIMEOUT = 5000;
+	private static final int SQLITE_CACHE_SIZE = -16000; //Negative sizes are in KiB, so 16 MB per connection
+	private static final int SQLITE_MAX_PARAMETERS = 999; //SQLITE_MAX_VARIABLE_NUMBER before 3.32
+	private static final int MYSQL_MAX_PARAMETERS = 65535;
+	private static final int MAX_KEYS_PER_STATEMENT = 1000; //Larger lists are split so they can be read in parallel
+	private static final int TRANSACTION_ATTEMPTS = 5;
+	private static final long TRANSACTION_BACKOFF_MILLIS = 10;
 	protected final OsmiumPlugin plugin;
 	protected final DatabaseType type;
 
@@ -45,9 +76,16 @@ public abstract class SQLDatabase {
 
 	private SQLConfig config;
 	private HikariDataSource hikariSource;
+	private HikariDataSource writerSource; //Single connection that serializes SQLite writes
+	private SharedConnectionPool.Lease poolLease;
+	private volatile ReplicaRouter replicas;
+	private volatile IncrementAccumulator increments;
+	private volatile QueryCache queryCache;
 	private boolean initialized; //Represents whether or not this database has any tables associated with it
 
-	private DatabaseQueue queue = new DatabaseQueue();
+	private DatabaseQueue queue = new DatabaseQueue(this);
+	private final QueryStats queryStats = new QueryStats(this);
+	private ThreadPoolExecutor readExecutor;
 	private CountDownLatch availableLatch = new CountDownLatch(1);
 
 	protected final HashMap<Class<?>, TableData> tables = new HashMap<>();
@@ -76,6 +114,10 @@ public abstract class SQLDatabase {
 		return config != null ? config.getTablePrefix() : "";
 	}
 
+	public UUIDStorage getUUIDStorage() {
+		return config != null ? config.getUUIDStorage() : UUIDStorage.TEXT;
+	}
+
 	/**
 	 * Generally no need to call this manually. The database is initialized
 	 * automatically when tables are created.
@@ -90,11 +132,26 @@ public abstract class SQLDatabase {
 		try {
 			OsmiumLogger.info("Starting " + plugin.getName() + "'s " + type.getName() + " database");
 			if (type == DatabaseType.SQLITE) {
-				hikariConfig.setJdbcUrl("jdbc:sqlite:" + plugin.getFolder() + File.separator + "data.db");
+				String url = "jdbc:sqlite:" + plugin.getFolder() + File.separator + "data.db";
+				hikariConfig.setJdbcUrl(url);
 				hikariConfig.setDriverClassName("org.sqlite.JDBC");
 				hikariConfig.setMinimumIdle(2);
 				hikariConfig.setMaximumPoolSize(10);
 				hikariConfig.setConnectionTestQuery("SELECT 1");
+
+				if (configSupplier != null) {
+					config = configSupplier.get();
+				}
+
+				if (config == null || config.isWriteAheadLog()) {
+					//The writer is opened first so the database file exists and is in WAL mode before the readers connect
+					writerSource = new HikariDataSource(createSQLiteWriterConfig(url));
+
+					hikariConfig.setPoolName(plugin.getName() + " SQLite Reader");
+					hikariConfig.addDataSourceProperty("open_mode", "1"); //SQLITE_OPEN_READONLY
+					hikariConfig.addDataSourceProperty("busy_timeout", String.valueOf(SQLITE_BUSY_TIMEOUT));
+					hikariConfig.addDataSourceProperty("cache_size", String.valueOf(SQLITE_CACHE_SIZE));
+				}
 			} else {
 				config = this.configSupplier.get();
 
@@ -102,38 +159,175 @@ public abstract class SQLDatabase {
 					throw new IllegalArgumentException("MySQL Database for " + plugin.getName() + " is not configured!");
 				}
 
-				hikariConfig.setJdbcUrl("jdbc:mysql://" + config.getHost() + ":" + config.getPort() + "/" + config.getDatabase() + (config.isAllowMultiQueries() ? "?allowMultiQueries=true" : ""));
+				hikariConfig.setJdbcUrl(getMySQLUrl(config.getHost() + ":" + config.getPort()));
 				hikariConfig.setDriverClassName("com.mysql.cj.jdbc.Driver");
 				hikariConfig.setUsername(config.getUsername());
 				hikariConfig.setPassword(config.getPassword());
 				hikariConfig.setMinimumIdle(config.getMinimumIdle());
 				hikariConfig.setMaximumPoolSize(config.getMaximumPoolSize());
 				hikariConfig.setConnectionTestQuery("USE " + config.getDatabase());
+				hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true"); //Send batched writes as multi-row statements
+				if (config.getStatementCacheSize() > 0) {
+					hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
+					hikariConfig.addDataSourceProperty("useServerPrepStmts", "true");
+					hikariConfig.addDataSourceProperty("prepStmtCacheSize", String.valueOf(config.getStatementCacheSize()));
+					hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+				}
+				if (config.getFetchSize() > 0) {
+					hikariConfig.addDataSourceProperty("useCursorFetch", "true"); //Required for MySQL to honor positive fetch sizes
+				}
+			}
+
+			if (config != null) {
+				queue.configure(config);
 			}
 
-			hikariConfig.setConnectionTimeout(500L);
-			hikariSource = new HikariDataSource(hikariConfig); //This executes the test query
+			hikariConfig.setConnectionTimeout(writerSource != null ? SQLITE_BUSY_TIMEOUT : 500L);
+			List<HikariConfig> replicaConfigs = config != null && config.hasReplicas() ? createReplicaConfigs(hikariConfig) : null; //Copied before the shared pool renames the config
+			if (type == DatabaseType.MYSQL && config.isSharedPool()) {
+				//The plugin's maximum pool size becomes its quota of the shared pool
+				poolLease = SharedConnectionPool.lease(hikariConfig, plugin, config.getMaximumPoolSize());
+				hikariSource = poolLease.getPool().getSource();
+			} else {
+				hikariSource = new HikariDataSource(hikariConfig); //This executes the test query
+			}
 			availableLatch.countDown(); //Mark database as available
 
 			OsmiumLogger.info(type == DatabaseType.SQLITE
 					? "Successfully established SQLite connection!"
 					: "Successfully established connection to " + type.getName() + " database: " + config.getDatabase());
+			if (replicaConfigs != null) {
+				startReplicas(replicaConfigs);
+			}
 		} catch (PoolInitializationException e) {
 			OsmiumLogger.error("Invalid database configuration! Failed to execute: '" + hikariConfig.getConnectionTestQuery() + "'");
 			e.printStackTrace();
 		}
 		queue.start();
+		startReadExecutor(config != null && config.getReadThreads() > 0 ? config.getReadThreads() : hikariConfig.getMaximumPoolSize(),
+				config != null ? config.getReadQueueCapacity() : SQLConfig.DEFAULT_READ_QUEUE_CAPACITY);
+		if (config != null && config.getIncrementFlushMillis() > 0) {
+			increments = new IncrementAccumulator(this, config.getIncrementFlushMillis(), config.getIncrementFlushThreshold());
+		}
+		queryCache = config != null && config.getQueryCacheRows() > 0 ? new QueryCache(config.getQueryCacheRows()) : null;
+	}
+
+	/**
+	 * Creates the configuration for the single SQLite connection that all
+	 * writes go through. In WAL mode readers do not block the writer and the
+	 * writer does not block readers, so only writes need to be serialized.
+	 */
+	private HikariConfig createSQLiteWriterConfig(String url) {
+		HikariConfig writerConfig = new HikariConfig();
+		writerConfig.setPoolName(plugin.getName() + " SQLite Writer");
+		writerConfig.setJdbcUrl(url);
+		writerConfig.setDriverClassName("org.sqlite.JDBC");
+		writerConfig.setMinimumIdle(1);
+		writerConfig.setMaximumPoolSize(1);
+		writerConfig.setConnectionTestQuery("SELECT 1");
+		writerConfig.setConnectionTimeout(30000L); //Writers wait for their turn instead of failing
+		writerConfig.addDataSourceProperty("journal_mode", "WAL");
+		writerConfig.addDataSourceProperty("synchronous", "NORMAL"); //Durable in WAL mode except on power loss
+		writerConfig.addDataSourceProperty("busy_timeout", String.valueOf(SQLITE_BUSY_TIMEOUT));
+		writerConfig.addDataSourceProperty("cache_size", String.valueOf(SQLITE_CACHE_SIZE));
+		return writerConfig;
+	}
+
+	private String getMySQLUrl(String address) {
+		return "jdbc:mysql://" + address + "/" + config.getDatabase() + (config.isAllowMultiQueries() ? "?allowMultiQueries=true" : "");
+	}
+
+	/**
+	 * Creates the configurations of the read replica pools, which use the same
+	 * driver settings, credentials and pool size as the primary's pool
+	 */
+	private List<HikariConfig> createReplicaConfigs(HikariConfig primary) {
+		ArrayList<String> urls = new ArrayList<>();
+		for (String address : config.getReplicaHosts()) {
+			if (type == DatabaseType.MYSQL) {
+				urls.add(getMySQLUrl(address));
+			} else {
+				OsmiumLogger.warn("Ignoring MySQL read replica " + address + " of " + plugin.getName() + "'s " + type.getName() + " database");
+			}
+		}
+		urls.addAll(config.getReplicaUrls());
+
+		ArrayList<HikariConfig> configs = new ArrayList<>(urls.size());
+		for (String url : urls) {
+			HikariConfig replica = new HikariConfig();
+			primary.copyStateTo(replica);
+			replica.setJdbcUrl(url);
+			configs.add(replica);
+		}
+		return configs;
+	}
+
+	private void startReplicas(List<HikariConfig> configs) {
+		if (configs.isEmpty()) {
+			return;
+		}
+		try {
+			replicas = new ReplicaRouter(plugin.getName() + " " + type.getName(), configs, config.getReadYourWritesMillis());
+			OsmiumLogger.info("Successfully established connection to " + configs.size() + " read replica" + (configs.size() == 1 ? "" : "s"));
+		} catch (RuntimeException e) {
+			OsmiumLogger.error("Failed to connect to the read replicas of " + plugin.getName() + "'s database! Reads will use the primary.");
+			e.printStackTrace();
+		}
+	}
+
+	private void startReadExecutor(int threads, int queueCapacity) {
+		if (readExecutor != null) {
+			readExecutor.shutdown();
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueCapacity), runnable -> {
+			Thread thread = new Thread(runnable, plugin.getName() + " " + type.getName() + " Reader #" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		this.readExecutor = executor;
 	}
 
 	/**
 	 * Shuts down the connection pool
 	 */
 	public void shutdown() {
+		if (increments != null) {
+			increments.close(); //Written before the connections are closed
+			increments = null;
+		}
+		if (readExecutor != null) {
+			readExecutor.shutdown();
+			try {
+				if (!readExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+					OsmiumLogger.warn("Timed out waiting for " + plugin.getName() + "'s asynchronous database reads to finish");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			readExecutor = null;
+		}
+		if (replicas != null) {
+			replicas.close();
+			replicas = null;
+		}
 		if (hikariSource != null && !hikariSource.isClosed()) {
 			queue.flush(); //Queue should already have connection
-			hikariSource.close();
+			if (poolLease == null) {
+				hikariSource.close();
+			}
 			hikariSource = null;
 		}
+		if (poolLease != null) {
+			poolLease.release(); //Closes the shared pool if no other plugin is using it
+			poolLease = null;
+		}
+		if (writerSource != null) {
+			writerSource.close();
+			writerSource = null;
+		}
+		queryStats.close();
 	}
 
 	public void restart() {
@@ -151,6 +345,43 @@ public abstract class SQLDatabase {
 		return config;
 	}
 
+	public DatabaseQueue getQueue() {
+		return queue;
+	}
+
+	/**
+	 * Gets the execution statistics of the statements executed by this
+	 * database
+	 */
+	public QueryStats getQueryStats() {
+		return queryStats;
+	}
+
+	/**
+	 * Gets the router of the read replicas, or null if no replicas are
+	 * configured
+	 */
+	public ReplicaRouter getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * Gets the query result cache, or null if it is not enabled
+	 * 
+	 * @see SQLConfig#withQueryCache(int)
+	 */
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	public OsmiumPlugin getPlugin() {
+		return plugin;
+	}
+
+	public DatabaseType getType() {
+		return type;
+	}
+
 	public <T> SelectQuery<T> query(Class<T> tableClass) {
 		return new SelectQuery<>(this, tableClass);
 	}
@@ -208,10 +439,14 @@ public abstract class SQLDatabase {
 		OsmiumLogger.debug("Executing get query: " + query);
 		Statement statement = null;
 		ResultSet resultSet = null;
+		long start = System.nanoTime();
 		try (Connection connection = getConnection()) {
+			long poolWait = System.nanoTime() - start;
 			statement = connection.createStatement();
 			resultSet = statement.executeQuery(query);
-			return handler.process(resultSet);
+			T result = handler.process(resultSet);
+			queryStats.record(query, start, poolWait, -1, null);
+			return result;
 		} catch (Exception e) {
 			OsmiumLogger.warn("An error occurred while executing get query: " + query);
 			throw new RuntimeException(e);
@@ -245,6 +480,233 @@ public abstract class SQLDatabase {
 		return getOrDefault(tableClass, null, primaryKeys);
 	}
 
+	/**
+	 * Executes the given read on the database's read pool instead of the
+	 * calling thread. Use {@link DatabaseFuture#thenSync(Consumer)} to handle
+	 * the result on the main thread.
+	 */
+	public <T> DatabaseFuture<T> readAsync(Supplier<T> reader) {
+		DatabaseFuture<T> future = new DatabaseFuture<>(plugin);
+		ThreadPoolExecutor executor = this.readExecutor;
+		if (executor == null) {
+			future.completeExceptionally(new IllegalStateException("Database has not been initialized!"));
+			return future;
+		}
+
+		ReplicaRouter replicas = this.replicas;
+		Boolean route = replicas != null ? replicas.getRoute() : null; //Reads submitted from fromReplica() also use a replica
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(route != null ? replicas.run(route, reader) : reader.get());
+				} catch (Throwable t) {
+					OsmiumLogger.warn("An error occurred while executing asynchronous database read");
+					t.printStackTrace();
+					future.completeExceptionally(t);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			OsmiumLogger.warn("Rejected asynchronous database read for " + plugin.getName() + ". Read queue is full!");
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Runs the given reader with every read it makes using a read replica, if
+	 * any are configured. Reads for players who recently wrote to the database
+	 * still use the primary when they can be identified by the primary key or
+	 * the filtered values of the read.
+	 * 
+	 * @see SQLConfig#withReplica(String, int)
+	 */
+	public <T> T fromReplica(Supplier<T> reader) {
+		ReplicaRouter replicas = this.replicas;
+		return replicas != null ? replicas.run(true, reader) : reader.get();
+	}
+
+	/**
+	 * Runs the given reader with every read it makes using a read replica,
+	 * unless the given player wrote to the database within the read your
+	 * writes window
+	 * 
+	 * @see SQLConfig#withReadYourWrites(long)
+	 */
+	public <T> T fromReplica(UUID player, Supplier<T> reader) {
+		ReplicaRouter replicas = this.replicas;
+		return replicas != null ? replicas.run(!replicas.isPinned(player), reader) : reader.get();
+	}
+
+	/**
+	 * Runs the given reader on the read pool with every read it makes using a
+	 * read replica
+	 * 
+	 * @see #fromReplica(Supplier)
+	 */
+	public <T> DatabaseFuture<T> fromReplicaAsync(Supplier<T> reader) {
+		return readAsync(() -> fromReplica(reader));
+	}
+
+	/**
+	 * Runs the given reader with every read it makes using the primary, even
+	 * for tables that read from the replicas by default
+	 */
+	public <T> T fromPrimary(Supplier<T> reader) {
+		ReplicaRouter replicas = this.replicas;
+		return replicas != null ? replicas.run(false, reader) : reader.get();
+	}
+
+	/**
+	 * Makes the given player's reads use the primary for the read your writes
+	 * window. Writes of rows made through this database pin the players in
+	 * their primary keys automatically, so this is only needed after raw SQL
+	 * updates.
+	 */
+	public void pinToPrimary(UUID player) {
+		pin(player);
+	}
+
+	void pin(Object... values) {
+		ReplicaRouter replicas = this.replicas;
+		if (replicas != null) {
+			replicas.pin(values);
+		}
+	}
+
+	/**
+	 * Gets the cached result of the given query, or runs the loader and caches
+	 * its result for the given time. The loader reads from the primary unless
+	 * it chooses a route itself, since a lagging replica could otherwise cache
+	 * a result that is older than the last invalidation. If the query cache is
+	 * disabled, the loader is always run.
+	 * 
+	 * @param sql
+	 *            the query, which determines the tables whose writes remove the
+	 *            result
+	 * @param params
+	 *            the values bound to the query
+	 * @param ttlMillis
+	 *            how long the result may be cached
+	 * @param loader
+	 *            executes the query
+	 * @return the result, which is unmodifiable if it is a list
+	 * @see SQLConfig#withQueryCache(int)
+	 */
+	public <R> R cached(String sql, Object[] params, long ttlMillis, Supplier<R> loader) {
+		QueryCache queryCache = this.queryCache;
+		if (queryCache == null || ttlMillis <= 0) {
+			return loader.get();
+		}
+		return queryCache.get(sql, params, ttlMillis, () -> fromPrimary(loader));
+	}
+
+	/**
+	 * Removes the cached results of the queries that read from the tables
+	 * written by the given statement
+	 */
+	void invalidateQueries(String update) {
+		QueryCache queryCache = this.queryCache;
+		if (queryCache != null) {
+			queryCache.invalidate(update);
+		}
+	}
+
+	void invalidateQueries(TableData tableData) {
+		QueryCache queryCache = this.queryCache;
+		if (queryCache != null) {
+			queryCache.invalidateTable(tableData.getName());
+		}
+	}
+
+	/**
+	 * Checks whether a read of the given table would currently use a replica.
+	 * Rows read from a replica can be older than the last write, so they are
+	 * not put in the entity cache.
+	 */
+	private boolean isReplicaRoute(TableData table, Object[] values) {
+		return replicas != null && getRoute(table, values);
+	}
+
+	/**
+	 * Runs the given reader with the given route, so a route that was checked
+	 * by {@link #isReplicaRoute(TableData, Object[])} cannot change before the
+	 * read. A replica route still uses the primary for pinned players.
+	 */
+	private <T> T route(boolean replica, Supplier<T> reader) {
+		return replica ? fromReplica(reader) : fromPrimary(reader);
+	}
+
+	/**
+	 * Runs a read of the given table with the route chosen by
+	 * {@link #getRoute(TableData, Object[])}
+	 */
+	protected <T> T readTable(TableData table, Object[] values, Supplier<T> reader) {
+		ReplicaRouter replicas = this.replicas;
+		return holdFlushes(() -> replicas != null ? replicas.run(getRoute(table, values), reader) : reader.get());
+	}
+
+	/**
+	 * Runs the given read or write of rows without flushing pending
+	 * increments until it has finished, so the increments that are applied to
+	 * the rows it reads, or subtracted for the rows it writes, match the rows
+	 * in the database
+	 * 
+	 * @see IncrementAccumulator#hold(Supplier)
+	 */
+	public <T> T holdFlushes(Supplier<T> action) {
+		IncrementAccumulator increments = this.increments;
+		return increments != null ? increments.hold(action) : action.get();
+	}
+
+	/**
+	 * Chooses whether a read of the given table uses a replica. The current
+	 * thread's route takes precedence over the table's default, but a read is
+	 * never routed to a replica if one of the given values is a pinned player.
+	 * 
+	 * @return whether the read uses a replica
+	 */
+	private boolean getRoute(TableData table, Object[] values) {
+		Boolean route = replicas.getRoute();
+		return route != null ? route && !replicas.isPinned(values) : table.isReplicaReads() && !replicas.isPinned(values);
+	}
+
+	/**
+	 * Gets a connection for reading the given table, which is a replica
+	 * connection if the read can use a replica. For SQLite the connection is
+	 * read-only.
+	 * 
+	 * @param values
+	 *            the values the read filters by, which are checked for pinned
+	 *            players
+	 * @see #fromReplica(Supplier)
+	 */
+	public Connection getReadConnection(TableData table, Object... values) {
+		ReplicaRouter replicas = this.replicas;
+		if (replicas != null && getRoute(table, values)) {
+			Connection connection = replicas.getConnection();
+			if (connection != null) {
+				return connection;
+			}
+		}
+		return getConnection(hikariSource);
+	}
+
+	public <T> DatabaseFuture<T> getAsync(Class<T> tableClass, Object... primaryKeys) {
+		return readAsync(() -> get(tableClass, primaryKeys));
+	}
+
+	public <T> DatabaseFuture<T> getOrDefaultAsync(Class<T> tableClass, T defaultValue, Object... primaryKeys) {
+		return readAsync(() -> getOrDefault(tableClass, defaultValue, primaryKeys));
+	}
+
+	public <T> DatabaseFuture<ArrayList<T>> queryAsync(Class<T> tableClass, String columns, Object... values) {
+		return readAsync(() -> query(tableClass, columns, values));
+	}
+
+	public <T> DatabaseFuture<List<T>> queryAsync(Class<T> tableClass, String query) {
+		return readAsync(() -> query(tableClass, query));
+	}
+
 	public <T> T get(Class<T> tableClass, String columns, Object... primaryKeys) {
 		return getOrDefault(tableClass, null, columns, primaryKeys);
 	}
@@ -273,16 +735,308 @@ public abstract class SQLDatabase {
 	}
 
 	public <T> T getOrDefault(Class<T> tableClass, T defaultValue, String[] columns, Object... primaryKeys) {
-		ArrayList<T> list = query(tableClass, columns, primaryKeys);
+		EntityCache<PrimaryKey> cache = columns == null ? getTable(tableClass).getCache() : null;
+		PrimaryKey key = cache != null ? getTable(tableClass).createPrimaryKey(primaryKeys) : null;
+		long version = 0;
+		boolean replica = false;
+		if (key != null) {
+			Object cached = cache.get(key);
+			if (cached != null) {
+				return tableClass.cast(cached);
+			}
+			version = cache.getVersion();
+			replica = isReplicaRoute(getTable(tableClass), primaryKeys);
+		}
+
+		ArrayList<T> list = key != null ? route(replica, () -> query(tableClass, columns, primaryKeys)) : query(tableClass, columns, primaryKeys);
 		if (list.isEmpty()) {
 			return defaultValue;
 		} else if (list.size() != 1) {
 			throw new IllegalStateException("Database query returned multiple rows: " + list.size());
 		} else {
+			if (key != null && !replica) {
+				cache.putIfUnchanged(key, list.get(0), version);
+			}
 			return list.get(0);
 		}
 	}
 
+	/**
+	 * Reads a single column of the row with the given primary key without
+	 * loading the rest of the row. If the row is in the entity cache the value
+	 * is taken from the cached object instead.
+	 *
+	 * @return the value, or an empty optional if the row does not exist or the
+	 *         value is null
+	 */
+	public <V> Optional<V> getValue(Class<?> tableClass, String column, Object... primaryKeys) {
+		return getTuple(tableClass, new String[] { column }, primaryKeys).map(tuple -> tuple.<V> get(0));
+	}
+
+	/**
+	 * Reads the given columns of the row with the given primary key without
+	 * loading the rest of the row. If the row is in the entity cache the
+	 * values are taken from the cached object instead.
+	 */
+	public Optional<Tuple> getTuple(Class<?> tableClass, String[] columns, Object... primaryKeys) {
+		TableData table = getTable(tableClass);
+		PrimaryKey key = table.createPrimaryKey(primaryKeys);
+		if (key == null) {
+			throw new IllegalArgumentException("Invalid primary key for " + table.getName() + ": " + Arrays.toString(primaryKeys));
+		}
+
+		String[] selected = Arrays.copyOf(columns, columns.length + table.getPrimaryColumns().length);
+		System.arraycopy(table.getPrimaryColumnNames(), 0, selected, columns.length, table.getPrimaryColumns().length); //So pending increments can be applied
+		Projection projection = table.getProjection(selected);
+
+		Object row = table.getCache() != null ? table.getCache().get(key) : null;
+		if (row == null) {
+			row = readTable(table, primaryKeys, () -> readQuery(table, primaryKeys, projection.getSelect() + " WHERE " + DBUtil.createWhere(table.getPrimaryColumnNames()), ps -> {
+				for (int i = 0; i < primaryKeys.length; i++) {
+					ColumnCodecs.bind(type, ps, i + 1, table.getPrimaryColumns()[i], primaryKeys[i]);
+				}
+			}, rs -> rs.next() ? projection.readObject(rs) : null));
+		}
+		if (row == null) {
+			return Optional.empty();
+		}
+
+		Object[] values = new Object[columns.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = projection.get(row, i);
+		}
+		return Optional.of(new Tuple(Arrays.copyOf(projection.getColumnNames(), columns.length), values));
+	}
+
+	/**
+	 * Loads the rows with the given primary keys in as few round trips as
+	 * possible. Keys are split into IN lists that fit within the database's
+	 * parameter limit, and the lists are read in parallel on the read pool.
+	 * Rows that are in the entity cache are not read again.
+	 * 
+	 * @param tableClass
+	 *            the table class
+	 * @param keys
+	 *            the primary keys. For tables with a composite primary key,
+	 *            each key is a {@link List} of the key column values, for
+	 *            example {@code Arrays.asList(uuid, world)}
+	 * @return the rows that exist, mapped by the key they were requested with
+	 *         in the order of the given keys
+	 */
+	public <K, T> LinkedHashMap<K, T> getAll(Class<T> tableClass, Collection<K> keys) {
+		TableData table = getTable(tableClass);
+		int columns = table.getPrimaryColumns().length;
+		if (columns == 0) {
+			throw new IllegalArgumentException("Table " + table.getName() + " does not have a primary key!");
+		}
+
+		EntityCache<PrimaryKey> cache = table.getCache();
+		long version = cache != null ? cache.getVersion() : 0;
+		LinkedHashMap<PrimaryKey, K> requested = new LinkedHashMap<>();
+		HashMap<PrimaryKey, Object> found = new HashMap<>();
+		ArrayList<PrimaryKey> missing = new ArrayList<>();
+		for (K key : keys) {
+			Object[] values = columns == 1 ? new Object[] { key } : key instanceof List ? ((List<?>) key).toArray() : null;
+			PrimaryKey primaryKey = values != null ? table.createPrimaryKey(values) : null;
+			if (primaryKey == null) {
+				throw new IllegalArgumentException("Invalid primary key for " + table.getName() + ": " + key);
+			} else if (requested.putIfAbsent(primaryKey, key) != null) {
+				continue;
+			}
+
+			Object cached = cache != null ? cache.get(primaryKey) : null;
+			if (cached != null) {
+				found.put(primaryKey, cached);
+			} else {
+				missing.add(primaryKey);
+			}
+		}
+
+		if (!missing.isEmpty()) {
+			int maxKeys = type == DatabaseType.SQLITE ? SQLITE_MAX_PARAMETERS / columns : Math.min(MAX_KEYS_PER_STATEMENT, MYSQL_MAX_PARAMETERS / columns);
+			int chunks = (missing.size() + maxKeys - 1) / maxKeys;
+			int chunkSize = (missing.size() + chunks - 1) / chunks; //Evenly sized so the reads finish together
+
+			ArrayList<Supplier<ArrayList<T>>> reads = new ArrayList<>(chunks);
+			for (int start = 0; start < missing.size(); start += chunkSize) {
+				List<PrimaryKey> chunk = missing.subList(start, Math.min(start + chunkSize, missing.size()));
+				reads.add(() -> selectIn(table, chunk, Math.min(Integer.highestOneBit(chunk.size() * 2 - 1), maxKeys)));
+			}
+			Object[] values = replicas != null ? missing.stream().flatMap(key -> Arrays.stream(key.getValues())).toArray() : null;
+			boolean replica = isReplicaRoute(table, values);
+			for (ArrayList<T> rows : route(replica, () -> readTable(table, values, () -> readParallel(reads)))) {
+				for (T row : rows) {
+					PrimaryKey primaryKey = table.getPrimaryKey(row);
+					found.put(primaryKey, row);
+					if (cache != null && !replica) {
+						cache.putIfUnchanged(primaryKey, row, version);
+					}
+				}
+			}
+		}
+
+		LinkedHashMap<K, T> result = new LinkedHashMap<>();
+		for (Entry<PrimaryKey, K> entry : requested.entrySet()) {
+			Object row = found.get(entry.getKey());
+			if (row != null) {
+				result.put(entry.getValue(), tableClass.cast(row));
+			}
+		}
+		return result;
+	}
+
+	public <K, T> DatabaseFuture<LinkedHashMap<K, T>> getAllAsync(Class<T> tableClass, Collection<K> keys) {
+		return readAsync(() -> getAll(tableClass, keys));
+	}
+
+	/**
+	 * Selects the rows with the given keys. The key list is padded to the
+	 * given size by repeating the last key, so only a few distinct statements
+	 * are ever prepared.
+	 */
+	private <T> ArrayList<T> selectIn(TableData table, List<PrimaryKey> keys, int size) {
+		ArrayList<T> rows = new ArrayList<>(keys.size());
+		try (RowCursor<T> cursor = cursor(table, table.getStatements().getSelectIn(size), ps -> {
+			int index = 1;
+			for (int i = 0; i < size; i++) {
+				Object[] values = keys.get(Math.min(i, keys.size() - 1)).getValues();
+				for (int j = 0; j < values.length; j++) {
+					ColumnCodecs.bind(type, ps, index++, table.getPrimaryColumns()[j], values[j]);
+				}
+			}
+		})) {
+			cursor.forEachRemaining(rows::add);
+		}
+		return rows;
+	}
+
+	/**
+	 * Loads the given relations of every given row, declared by
+	 * {@link com.kmecpp.osmium.api.database.api.DBOneToMany} or
+	 * {@link com.kmecpp.osmium.api.database.api.DBManyToOne}. Each relation
+	 * is loaded for all of the rows with a single query, so loading 100
+	 * players and their homes takes two queries instead of 101.
+	 * 
+	 * @param tableClass
+	 *            the table of the rows
+	 * @param rows
+	 *            the rows
+	 * @param relations
+	 *            the names of the relation fields
+	 * @return the given rows
+	 */
+	public <T, L extends List<T>> L fetch(Class<T> tableClass, L rows, String... relations) {
+		TableData table = getTable(tableClass);
+		for (String relation : relations) {
+			table.getRelation(relation).load(this, rows);
+		}
+		return rows;
+	}
+
+	/**
+	 * Sets the given one to many relations of every given row to lists that
+	 * are loaded the first time they are accessed. The children of all of the
+	 * rows are loaded together by a single query, so the relation only costs
+	 * a query if it is used.
+	 * 
+	 * @see #fetch(Class, List, String...)
+	 */
+	public <T, L extends List<T>> L fetchLazy(Class<T> tableClass, L rows, String... relations) {
+		TableData table = getTable(tableClass);
+		for (String relation : relations) {
+			table.getRelation(relation).loadLazily(this, rows);
+		}
+		return rows;
+	}
+
+	/**
+	 * Selects the rows whose column is equal to any of the given values. Like
+	 * {@link #getAll(Class, Collection)}, the values are split into IN lists
+	 * that fit within the database's parameter limit.
+	 */
+	<T> List<T> selectWhereIn(TableData table, String column, List<?> values) {
+		if (values.isEmpty()) {
+			return new ArrayList<>();
+		}
+		int maxValues = type == DatabaseType.SQLITE ? SQLITE_MAX_PARAMETERS : MAX_KEYS_PER_STATEMENT;
+		int chunks = (values.size() + maxValues - 1) / maxValues;
+		int chunkSize = (values.size() + chunks - 1) / chunks;
+
+		ArrayList<Supplier<ArrayList<T>>> reads = new ArrayList<>(chunks);
+		for (int start = 0; start < values.size(); start += chunkSize) {
+			List<?> chunk = values.subList(start, Math.min(start + chunkSize, values.size()));
+			int size = Math.min(Integer.highestOneBit(chunk.size() * 2 - 1), maxValues); //Padded with the last value, like selectIn()
+			reads.add(() -> {
+				ArrayList<T> rows = new ArrayList<>(chunk.size());
+				try (RowCursor<T> cursor = cursor(table, table.getStatements().getSelectIn(column, size), ps -> {
+					for (int i = 0; i < size; i++) {
+						table.bind(ps, i + 1, column, chunk.get(Math.min(i, chunk.size() - 1)));
+					}
+				})) {
+					cursor.forEachRemaining(rows::add);
+				}
+				return rows;
+			});
+		}
+
+		ArrayList<T> result = new ArrayList<>();
+		for (ArrayList<T> rows : readParallel(reads)) {
+			result.addAll(rows);
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the given reads on the read pool and waits for all of them. The
+	 * calling thread runs every read that no reader has started yet, so this
+	 * cannot deadlock when the pool is saturated or when it is called from a
+	 * reader itself.
+	 */
+	private <T> List<T> readParallel(List<Supplier<T>> reads) {
+		int count = reads.size();
+		Object[] results = new Object[count];
+		AtomicIntegerArray claimed = new AtomicIntegerArray(count);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CountDownLatch done = new CountDownLatch(count);
+		ReplicaRouter replicas = this.replicas;
+		Boolean route = replicas != null ? replicas.getRoute() : null;
+		IntConsumer run = i -> {
+			if (claimed.compareAndSet(i, 0, 1)) {
+				try {
+					results[i] = route != null ? replicas.run(route, reads.get(i)) : reads.get(i).get();
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				} finally {
+					done.countDown();
+				}
+			}
+		};
+
+		ThreadPoolExecutor executor = this.readExecutor;
+		for (int i = 1; executor != null && i < count; i++) {
+			int index = i;
+			try {
+				executor.execute(() -> run.accept(index));
+			} catch (RejectedExecutionException e) {
+				break; //Remaining reads run on this thread
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			run.accept(i);
+		}
+
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		if (failure.get() != null) {
+			throw new RuntimeException(failure.get());
+		}
+		return Reflection.cast(Arrays.asList(results));
+	}
+
 	public <T> ArrayList<T> queryPrimaryKeys(Class<T> tableClass, Object... values) {
 		return query(tableClass, (String[]) null, values);
 	}
@@ -297,22 +1051,54 @@ public abstract class SQLDatabase {
 
 	public abstract <T> ArrayList<T> query(Class<T> tableClass, String[] columns, Object... values);
 
+	/**
+	 * Selects the rows whose columns are equal to the given values. Values are
+	 * bound using the storage format of their columns.
+	 */
+	protected <T> ArrayList<T> queryWhere(TableData table, String[] columns, Object[] values) {
+		return queryWhere(table, columns, "", values);
+	}
+
+	/**
+	 * Selects the rows whose columns are equal to the given values, followed by
+	 * the given clauses such as ORDER BY or LIMIT
+	 */
+	protected <T> ArrayList<T> queryWhere(TableData table, String[] columns, String suffix, Object[] values) {
+		if (columns.length != values.length) {
+			throw new IllegalArgumentException("Column size does not match value size: " + columns.length + " vs " + values.length
+					+ " Columns: " + Arrays.toString(columns) + " Values: " + Arrays.toString(values));
+		}
+		return readTable(table, values, () -> readQuery(table, values, table.getStatements().getSelectWhere(columns) + suffix, ps -> {
+			for (int i = 0; i < values.length; i++) {
+				table.bind(ps, i + 1, columns[i], values[i]);
+			}
+		}, rs -> parseAll(rs, table)));
+	}
+
 	public <T> @Nonnull List<T> query(Class<T> tableClass, String query) {
 		TableData tableData = tables.get(tableClass);
+		IncrementAccumulator increments = this.increments;
 
 		Connection connection = null;
 		Statement statement = null;
 		ResultSet resultSet = null;
+		if (increments != null) {
+			increments.hold();
+		}
 		try {
 			ArrayList<T> result = new ArrayList<>();
 
 			OsmiumLogger.debug("Executing query: \"" + query + "\"");
-			connection = getConnection();
+			long start = System.nanoTime();
+			connection = getReadConnection(tableData);
+			long poolWait = System.nanoTime() - start;
 			statement = connection.createStatement();
 			resultSet = statement.executeQuery(query);
+			tableData.getRowMapper().validate(resultSet);
 			while (resultSet.next()) {
-				result.add(parse(resultSet, tableData));
+				result.add(tableData.getRowMapper().map(resultSet));
 			}
+			queryStats.record(query, start, poolWait, result.size(), null);
 			return result;
 		} catch (Exception e) {
 			OsmiumLogger.error("Failed to execute database query: \"" + query + "\"");
@@ -320,36 +1106,612 @@ public abstract class SQLDatabase {
 			return Collections.emptyList();
 		} finally {
 			IOUtil.close(connection, statement, resultSet);
+			if (increments != null) {
+				increments.release();
+			}
+		}
+	}
+
+	/**
+	 * Executes the given query, reusing its result for up to the given time
+	 * until one of the tables it reads from is written. Unlike
+	 * {@link #query(Class, String)} a failed query throws an exception, so
+	 * failures are never cached.
+	 * 
+	 * @return an unmodifiable list of the rows, which are shared with other
+	 *         callers and must not be modified
+	 * @see #cached(String, Object[], long, Supplier)
+	 */
+	public <T> List<T> queryCached(Class<T> tableClass, String query, long ttlMillis) {
+		TableData tableData = getTable(tableClass);
+		return cached(query, null, ttlMillis, () -> readTable(tableData, null, () -> readQuery(tableData, null, query, ps -> {}, rs -> parseAll(rs, tableData))));
+	}
+
+	/**
+	 * Creates an object from the current row of the given result set
+	 */
+	public <T> T parse(ResultSet resultSet, TableData tableData) throws SQLException {
+		RowMapper mapper = tableData.getRowMapper();
+		mapper.validate(resultSet);
+		return mapper.map(resultSet);
+	}
+
+	/**
+	 * Creates an object from every remaining row of the given result set
+	 */
+	public <T> ArrayList<T> parseAll(ResultSet resultSet, TableData tableData) throws SQLException {
+		RowMapper mapper = tableData.getRowMapper();
+		mapper.validate(resultSet);
+
+		ArrayList<T> result = new ArrayList<>();
+		while (resultSet.next()) {
+			result.add(mapper.map(resultSet));
+		}
+		return result;
+	}
+
+	/**
+	 * Opens a forward only cursor over the rows returned by the given query.
+	 * Rows are mapped as they are read instead of being loaded into memory up
+	 * front. The cursor must be closed to release its connection.
+	 */
+	public <T> RowCursor<T> cursor(TableData tableData, String query, PreparedStatementBuilder builder) {
+		OsmiumLogger.debug("Opening cursor: \"" + query + "\"");
+		Connection connection = null;
+		PreparedStatement statement = null;
+		ResultSet resultSet = null;
+		try {
+			long start = System.nanoTime();
+			connection = getReadConnection(tableData);
+			long poolWait = System.nanoTime() - start;
+			statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			statement.setFetchSize(getFetchSize());
+			if (builder != null) {
+				builder.build(statement);
+			}
+			resultSet = statement.executeQuery();
+			queryStats.record(query, start, poolWait, -1, statement); //Rows are read lazily, so only the time until the first row is known
+			return new RowCursor<>(connection, statement, resultSet, tableData.getRowMapper());
+		} catch (Exception e) {
+			close(resultSet, statement, connection);
+			OsmiumLogger.error("Failed to execute database query: \"" + query + "\"");
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Lazily maps the rows returned by the given query. The stream holds a
+	 * connection until it is closed, so it should be used in a
+	 * try-with-resources statement.
+	 */
+	public <T> Stream<T> stream(Class<T> tableClass, String query) {
+		return this.<T> cursor(getTable(tableClass), query, null).stream();
+	}
+
+	/**
+	 * Performs the given action for every row returned by the given query
+	 * without loading the whole result into memory
+	 */
+	public <T> void forEach(Class<T> tableClass, String query, Consumer<? super T> action) {
+		try (RowCursor<T> cursor = cursor(getTable(tableClass), query, null)) {
+			cursor.forEachRemaining(action);
 		}
 	}
 
-	public abstract <T> T parse(ResultSet resultSet, TableData tableData) throws Exception;
+	/**
+	 * Gets a page of rows using keyset pagination. Unlike an offset, which
+	 * makes the database read and discard every preceding row, each page
+	 * seeks directly to where the previous page ended, so deep pages are as
+	 * fast as the first one given an index on the sort column.
+	 * 
+	 * @param tableClass
+	 *            the table to query
+	 * @param orderBy
+	 *            the sort order. The primary key is used as a tiebreaker for
+	 *            rows with equal values.
+	 * @param pageSize
+	 *            the maximum number of rows on the page
+	 * @param continuationToken
+	 *            the token of the previous page, or null for the first page
+	 * @return the page, including the token of the next page
+	 */
+	public <T> Page<T> seek(Class<T> tableClass, OrderBy orderBy, int pageSize, String continuationToken) {
+		return seek(tableClass, null, orderBy, pageSize, continuationToken);
+	}
+
+	public <T> Page<T> seek(Class<T> tableClass, Filter filter, OrderBy orderBy, int pageSize, String continuationToken) {
+		TableData table = getTable(tableClass);
+		return seek(table, table.getStatements().getSelectAll(), filter, orderBy, pageSize, continuationToken);
+	}
+
+	/**
+	 * Gets a page of rows using keyset pagination
+	 * 
+	 * @param select
+	 *            the query without a WHERE, ORDER BY or LIMIT clause
+	 * @see #seek(Class, OrderBy, int, String)
+	 */
+	public <T> Page<T> seek(TableData table, String select, Filter filter, OrderBy orderBy, int pageSize, String continuationToken) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be at least 1!");
+		}
+
+		KeysetQuery keyset = new KeysetQuery(table, type, orderBy);
+		Object[] after = continuationToken != null ? keyset.readToken(continuationToken) : null;
+
+		String where = filter != null ? filter.createParameterizedStatement() : "";
+		if (after != null) {
+			where += (where.isEmpty() ? " WHERE " : " AND ") + keyset.getCondition();
+		}
+		String query = select + where + keyset.getOrderBy() + " LIMIT " + (pageSize + 1); //One extra row to tell whether there is a next page
+
+		ArrayList<T> rows = new ArrayList<>(pageSize + 1);
+		try (RowCursor<T> cursor = cursor(table, query, ps -> {
+			if (filter != null) {
+				filter.link(ps, table);
+			}
+			if (after != null) {
+				keyset.bind(ps, filter != null ? filter.size() + 1 : 1, after);
+			}
+		})) {
+			cursor.forEachRemaining(rows::add);
+		}
+
+		if (rows.size() > pageSize) {
+			rows.remove(pageSize);
+			return new Page<>(rows, keyset.createToken(rows.get(pageSize - 1)));
+		}
+		return new Page<>(rows, null);
+	}
+
+	private int getFetchSize() {
+		int fetchSize = config != null ? config.getFetchSize() : 0;
+		if (fetchSize <= 0) {
+			return type == DatabaseType.MYSQL ? Integer.MIN_VALUE : 0; //MySQL streams rows one at a time with MIN_VALUE
+		}
+		return fetchSize;
+	}
 
 	public abstract void replaceInto(Class<?> tableClass, Object obj);
 
+	/**
+	 * Writes the given row. If dirty tracking is enabled for the table, only
+	 * the columns that changed since the row was last loaded or saved are
+	 * updated and unchanged rows are not written at all. Otherwise the whole
+	 * row is written with a REPLACE INTO.
+	 */
+	protected void writeRow(TableData tableData, Object obj) {
+		holdFlushes(() -> {
+			ArrayList<Runnable> onWrite = new ArrayList<>(1);
+			String update = getWriteStatement(tableData, obj, onWrite);
+			if (update != null) {
+				preparedUpdateStatement(update, s -> bindReplaceInto(s, tableData, obj));
+				onWrite.forEach(Runnable::run);
+			}
+			return null;
+		});
+		onReplaceInto(tableData, obj);
+	}
+
+	/**
+	 * Gets the statement that writes the given row, or null if the row has not
+	 * changed since it was last loaded or saved. The statement has a parameter
+	 * for every column and is bound by
+	 * {@link #bindReplaceInto(PreparedStatement, TableData, Object)}. Any
+	 * action that must be performed once the write succeeds is added to the
+	 * given list. Flushes of pending increments must be held off by
+	 * {@link #holdFlushes(Supplier)} until the write has succeeded and those
+	 * actions have run.
+	 */
+	String getWriteStatement(TableData tableData, Object obj, List<Runnable> onWrite) {
+		RowSnapshots snapshots = tableData.getSnapshots();
+		IncrementAccumulator increments = this.increments;
+		PrimaryKey key = snapshots != null || increments != null ? tableData.getPrimaryKey(obj) : null;
+		if (key == null) {
+			return tableData.getStatements().getReplaceInto();
+		} else if (snapshots == null) {
+			long[] overwritten = increments.capture(key, null); //Every counter is overwritten
+			onWrite.add(() -> increments.subtract(key, overwritten));
+			return tableData.getStatements().getReplaceInto();
+		}
+
+		//The snapshot is taken before binding, so a concurrent modification is written again by the next save instead of being lost
+		Object[] values = tableData.getRowMapper().getValues(obj);
+		BitSet changed = snapshots.getChangedColumns(key, values);
+		if (changed == null) {
+			changed = snapshots.getUpdatableColumns(); //The row may not exist yet, so it is always written
+		} else if (changed.isEmpty()) {
+			return null;
+		}
+		onWrite.add(() -> snapshots.put(key, values));
+		if (increments != null) {
+			long[] overwritten = increments.capture(key, changed);
+			onWrite.add(() -> increments.subtract(key, overwritten));
+		}
+		return tableData.getStatements().getUpsert(changed);
+	}
+
+	/**
+	 * Binds every column value of the given object to a REPLACE INTO statement
+	 * created by {@link StatementCache#getReplaceInto()}
+	 */
+	protected void bindReplaceInto(PreparedStatement statement, TableData tableData, Object obj) throws SQLException {
+		tableData.getRowMapper().bind(statement, obj);
+	}
+
+	/**
+	 * Updates the table's cache after the given row was written
+	 */
+	protected void onReplaceInto(TableData tableData, Object obj) {
+		invalidateQueries(tableData);
+		EntityCache<PrimaryKey> cache = tableData.getCache();
+		PrimaryKey key = cache != null || replicas != null ? tableData.getPrimaryKey(obj) : null;
+		if (key != null) {
+			if (cache != null) {
+				cache.put(key, obj);
+			}
+			pin(key.getValues()); //The player's next reads must see this write
+		}
+		for (Leaderboard leaderboard : tableData.getLeaderboards()) {
+			leaderboard.update(obj);
+		}
+	}
+
+	/**
+	 * Reverts the updates made by {@link #onReplaceInto(TableData, Object)}
+	 * for a queued write that was never executed
+	 */
+	void onWriteFailed(TableData tableData, PrimaryKey key) {
+		if (key != null && tableData.getCache() != null) {
+			tableData.getCache().invalidate(key);
+		}
+		for (Leaderboard leaderboard : tableData.getLeaderboards()) {
+			leaderboard.reconcileLater();
+		}
+	}
+
+	/**
+	 * Clears the table's cache after an update that could have changed any
+	 * number of rows
+	 */
+	protected void invalidateCache(TableData tableData) {
+		invalidateQueries(tableData);
+		if (tableData.getCache() != null) {
+			tableData.getCache().invalidateAll();
+		}
+		if (tableData.getSnapshots() != null) {
+			tableData.getSnapshots().invalidateAll();
+		}
+		for (Leaderboard leaderboard : tableData.getLeaderboards()) {
+			leaderboard.reconcileLater();
+		}
+	}
+
 	public void replaceIntoAsync(Class<?> tableClass, Object obj) {
-		updateAsync(() -> replaceInto(tableClass, obj));
+		TableData tableData = getTable(tableClass);
+		onReplaceInto(tableData, obj); //Reads see the new row while the write is queued
+		try {
+			queue.submitReplaceInto(tableData, obj);
+		} catch (RuntimeException e) {
+			onWriteFailed(tableData, tableData.getPrimaryKey(obj)); //The queue rejected the write
+			throw e;
+		}
+	}
+
+	/**
+	 * Executes a REPLACE INTO for every object in the given map using JDBC
+	 * batching. All of the batches are executed on a single connection and
+	 * committed in one transaction.
+	 * 
+	 * @param batches
+	 *            the rows to write, grouped by table
+	 */
+	public void replaceIntoBatch(Map<TableData, ? extends List<?>> batches) {
+		int count = 0;
+		for (List<?> rows : batches.values()) {
+			count += rows.size();
+		}
+		OsmiumLogger.debug("Executing batched replace into: " + count + " rows in " + batches.size() + " tables");
+
+		long start = System.nanoTime();
+		IncrementAccumulator increments = this.increments;
+		if (increments != null) {
+			increments.hold(); //Before the connection, see IncrementAccumulator#hold()
+		}
+		try (Connection connection = getWriteConnection()) {
+			long poolWait = System.nanoTime() - start;
+			connection.setAutoCommit(false);
+			ArrayList<Runnable> onWrite = new ArrayList<>();
+			try {
+				for (Entry<TableData, ? extends List<?>> entry : batches.entrySet()) {
+					TableData tableData = entry.getKey();
+
+					//Rows with different changed columns need different statements
+					LinkedHashMap<String, ArrayList<Object>> statements = new LinkedHashMap<>();
+					for (Object obj : entry.getValue()) {
+						String update = getWriteStatement(tableData, obj, onWrite);
+						if (update != null) {
+							statements.computeIfAbsent(update, k -> new ArrayList<>()).add(obj);
+						}
+					}
+
+					for (Entry<String, ArrayList<Object>> rows : statements.entrySet()) {
+						long batchStart = System.nanoTime();
+						try (PreparedStatement statement = connection.prepareStatement(rows.getKey())) {
+							for (Object obj : rows.getValue()) {
+								bindReplaceInto(statement, tableData, obj);
+								statement.addBatch();
+							}
+							statement.executeBatch();
+						}
+						queryStats.record(rows.getKey(), batchStart, 0, rows.getValue().size(), null);
+					}
+				}
+				connection.commit();
+				queryStats.record("<batch>", start, poolWait, count, null);
+				onWrite.forEach(Runnable::run);
+
+				for (Entry<TableData, ? extends List<?>> entry : batches.entrySet()) {
+					for (Object obj : entry.getValue()) {
+						onReplaceInto(entry.getKey(), obj);
+					}
+				}
+			} catch (Exception e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (Exception e) {
+			OsmiumLogger.warn("An error occurred while executing batched replace into for: " + batches.keySet());
+			throw new RuntimeException(e);
+		} finally {
+			if (increments != null) {
+				increments.release();
+			}
+		}
 	}
 
 	public int increment(Class<?> tableClass, String column) {
 		TableData table = getTable(tableClass);
-		return update("UPDATE " + table.getName() + " SET " + column + " = " + column + " + 1");
+		int result = update("UPDATE " + table.getName() + " SET " + column + " = " + column + " + 1");
+		invalidateCache(table);
+		return result;
 	}
 
 	public int increment(Class<?> tableClass, String column, Filter filter) {
 		TableData table = getTable(tableClass);
-		return preparedUpdateStatement("UPDATE " + table.getName() + " SET " + column + " = " + column + " + 1" + filter.createParameterizedStatement(), DBUtil.filterLinker(filter));
+		int result = preparedUpdateStatement("UPDATE " + table.getName() + " SET " + column + " = " + column + " + 1" + filter.createParameterizedStatement(), DBUtil.filterLinker(filter, table));
+		invalidateCache(table);
+		return result;
+	}
+
+	/**
+	 * Adds the given amount to a numeric column of the row with the given
+	 * primary key. If the increment accumulator is enabled in the
+	 * {@link SQLConfig}, the increment is summed in memory and written with
+	 * the next flush. Otherwise it is written immediately.
+	 */
+	public void increment(Class<?> tableClass, String column, long delta, Object... primaryKeys) {
+		TableData table = getTable(tableClass);
+		PrimaryKey key = table.createPrimaryKey(primaryKeys);
+		if (key == null) {
+			throw new IllegalArgumentException("Invalid primary key for " + table.getName() + ": " + Arrays.toString(primaryKeys));
+		}
+
+		for (Leaderboard leaderboard : table.getLeaderboards()) {
+			leaderboard.increment(key, column, delta);
+		}
+		pin(primaryKeys);
+
+		IncrementAccumulator increments = this.increments;
+		if (increments != null) {
+			increments.add(key, column, delta);
+			invalidateQueries(table); //Cached results would not include the pending increment
+			return;
+		}
+
+		preparedUpdateStatement("UPDATE " + table.getName() + " SET " + column + " = " + column + " + ? WHERE " + DBUtil.createWhere(table.getPrimaryColumnNames()), s -> {
+			s.setLong(1, delta);
+			for (int i = 0; i < primaryKeys.length; i++) {
+				ColumnCodecs.bind(type, s, i + 2, table.getPrimaryColumns()[i], primaryKeys[i]);
+			}
+		});
+		if (table.getCache() != null) {
+			table.getCache().invalidate(key);
+		}
+	}
+
+	/**
+	 * Creates a leaderboard that ranks the rows of a table by the given
+	 * column. The table is loaded immediately, and the leaderboard is kept up
+	 * to date by the writes and increments made through this database.
+	 * 
+	 * @param tableClass
+	 *            the table class
+	 * @param column
+	 *            the numeric column to rank by
+	 * @param descending
+	 *            whether the highest score is ranked first
+	 * @param reconcileMillis
+	 *            how often the table is reloaded to pick up changes made
+	 *            elsewhere, or 0 to never reload it
+	 * @return the leaderboard
+	 */
+	public Leaderboard createLeaderboard(Class<?> tableClass, String column, boolean descending, long reconcileMillis) {
+		TableData table = getTable(tableClass);
+		Leaderboard leaderboard = new Leaderboard(this, table, column, descending);
+		table.getLeaderboards().add(leaderboard); //Registered first so writes made while loading are not missed
+		leaderboard.reconcile();
+		leaderboard.setReconcileInterval(reconcileMillis);
+		return leaderboard;
+	}
+
+	public void removeLeaderboard(Leaderboard leaderboard) {
+		leaderboard.getTable().getLeaderboards().remove(leaderboard);
+	}
+
+	/**
+	 * Gets the increment accumulator, or null if increments are written
+	 * immediately
+	 */
+	public IncrementAccumulator getIncrements() {
+		return increments;
+	}
+
+	/**
+	 * Runs the given callback in a transaction. Every statement executed
+	 * through the {@link Transaction} uses the same connection and is
+	 * committed at once when the callback returns, or rolled back if it
+	 * throws. If the transaction fails because of a deadlock, a lock timeout
+	 * or a busy SQLite database, it is rolled back and the callback is run
+	 * again after an exponentially increasing delay.
+	 * <p>
+	 * Because the whole callback is run again, it must be idempotent and must
+	 * not have side effects outside of the transaction, such as modifying
+	 * shared objects or sending messages. Work that should only happen once
+	 * belongs after this method returns. The updates to caches, dirty
+	 * tracking snapshots and leaderboards made by the {@link Transaction} are
+	 * only applied once the transaction commits.
+	 * 
+	 * @param callback
+	 *            the work to perform in the transaction
+	 * @return the value returned by the callback
+	 */
+	public <T> T transaction(TransactionCallback<T> callback) {
+		for (int attempt = 1;; attempt++) {
+			long start = System.nanoTime();
+			IncrementAccumulator increments = this.increments;
+			if (increments != null) {
+				increments.hold(); //Increments overwritten by the transaction are only subtracted once it commits
+			}
+			try (Connection connection = getWriteConnection()) {
+				long poolWait = System.nanoTime() - start;
+				Transaction transaction = new Transaction(this, connection);
+				connection.setAutoCommit(false);
+				try {
+					T result = callback.run(transaction);
+					transaction.flush();
+
+					long commitStart = System.nanoTime();
+					connection.commit();
+					queryStats.record("<commit>", commitStart, 0, transaction.getStatementCount(), null);
+					queryStats.record("<transaction>", start, poolWait, transaction.getStatementCount(), null);
+					transaction.onCommit.forEach(Runnable::run);
+					return result;
+				} catch (Throwable t) {
+					transaction.discard();
+					connection.rollback();
+					throw t;
+				} finally {
+					connection.setAutoCommit(true);
+				}
+			} catch (Exception e) {
+				if (attempt < TRANSACTION_ATTEMPTS && isRetryable(e)) {
+					long backoff = TRANSACTION_BACKOFF_MILLIS << (attempt - 1);
+					OsmiumLogger.debug("Retrying transaction after " + e.getMessage() + " (attempt " + (attempt + 1) + ")");
+					try {
+						Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff)); //Jitter so the conflicting transactions do not retry in lockstep
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						throw new RuntimeException(e);
+					}
+					continue;
+				}
+				OsmiumLogger.warn("An error occurred while executing transaction for " + plugin.getName());
+				throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+			} finally {
+				if (increments != null) {
+					increments.release();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the given callback in a transaction on the database queue
+	 * 
+	 * @see #transaction(TransactionCallback)
+	 */
+	public <T> DatabaseFuture<T> transactionAsync(TransactionCallback<T> callback) {
+		DatabaseFuture<T> future = new DatabaseFuture<>(plugin);
+		queue.submit(() -> {
+			try {
+				future.complete(transaction(callback));
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Checks whether the given exception was caused by a conflict with
+	 * another transaction, so the transaction can succeed if it is retried
+	 */
+	private boolean isRetryable(Throwable t) {
+		for (; t != null; t = t.getCause()) {
+			if (t instanceof SQLTransactionRollbackException) {
+				return true;
+			} else if (t instanceof SQLException) {
+				SQLException e = (SQLException) t;
+				if (type == DatabaseType.MYSQL && (e.getErrorCode() == 1213 || e.getErrorCode() == 1205 || "40001".equals(e.getSQLState()))) {
+					return true; //Deadlock or lock wait timeout
+				} else if (type == DatabaseType.SQLITE && ((e.getErrorCode() & 0xFF) == 5 || (e.getErrorCode() & 0xFF) == 6)) {
+					return true; //SQLITE_BUSY or SQLITE_LOCKED, including their extended codes
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Converts the UUID columns of the given table that are configured to be
+	 * stored in binary but were created as text by an earlier version of the
+	 * table. The rows are copied into a new table in chunks of the given size,
+	 * each in its own transaction, and the new table replaces the old one once
+	 * every row has been copied. The old table is kept as
+	 * &lt;table&gt;_text_uuid and can be dropped once the result has been
+	 * verified.
+	 * <p>
+	 * Writes to the old table that happen after their rows have been copied
+	 * are lost, so this should be called before the table is used, for
+	 * example when the plugin is enabled, and on one server at a time.
+	 *
+	 * @return the number of rows copied, or -1 if the table did not have to
+	 *         be migrated
+	 */
+	public int migrateUUIDColumns(Class<?> tableClass, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1!");
+		}
+		TableData table = getTable(tableClass);
+		try {
+			int copied = new UUIDMigration(this, table).run(chunkSize);
+			if (copied >= 0) {
+				OsmiumLogger.info("Migrated " + copied + " rows of " + table.getName() + " to binary UUID storage");
+				invalidateCache(table);
+			}
+			return copied;
+		} catch (SQLException e) {
+			OsmiumLogger.error("Failed to migrate UUID columns of database table: " + table.getName());
+			throw new RuntimeException(e);
+		}
 	}
 
 	public int deleteAll(Class<?> tableClass) {
 		TableData table = getTable(tableClass);
-		return update("DELETE FROM " + table.getName());
+		int result = update("DELETE FROM " + table.getName());
+		invalidateCache(table);
+		return result;
 	}
 
 	public int deleteFrom(Class<?> tableClass, Filter filter) {
 		TableData table = getTable(tableClass);
 		String update = "DELETE FROM " + table.getName() + filter.createParameterizedStatement();
-		return preparedUpdateStatement(update, DBUtil.filterLinker(filter));
+		int result = preparedUpdateStatement(update, DBUtil.filterLinker(filter, table));
+		invalidateCache(table);
+		return result;
 	}
 
 	public int update(String update) {
@@ -361,9 +1723,14 @@ public abstract class SQLDatabase {
 		OsmiumLogger.debug("Executing raw update: " + update);
 		Statement statement = null;
 		ResultSet resultSet = null;
-		try (Connection connection = getConnection()) {
+		long start = System.nanoTime();
+		try (Connection connection = getWriteConnection()) {
+			long poolWait = System.nanoTime() - start;
 			statement = connection.createStatement();
-			return statement.executeUpdate(update);
+			int result = statement.executeUpdate(update);
+			queryStats.record(update, start, poolWait, result, null);
+			invalidateQueries(update);
+			return result;
 		} catch (Exception e) {
 			OsmiumLogger.warn("An error occurred while executing update: " + update);
 			throw new RuntimeException(e);
@@ -410,13 +1777,17 @@ public abstract class SQLDatabase {
 		OsmiumLogger.debug("Executing prepared statement: " + update);
 		PreparedStatement statement = null;
 		ResultSet resultSet = null;
-		try (Connection connection = getConnection()) {
+		long start = System.nanoTime();
+		try (Connection connection = getWriteConnection()) {
+			long poolWait = System.nanoTime() - start;
 			statement = connection.prepareStatement(update);
 			builder.build(statement);
 			int result = statement.executeUpdate();
 			if (handler != null) {
 				handler.accept(statement.getResultSet());
 			}
+			queryStats.record(update, start, poolWait, result, statement);
+			invalidateQueries(update);
 			return result;
 		} catch (Exception e) {
 			OsmiumLogger.warn("An error occurred while executing update: " + update);
@@ -438,13 +1809,16 @@ public abstract class SQLDatabase {
 
 		PreparedStatement statement = null;
 		ResultSet resultSet = null;
+		long start = System.nanoTime();
 		try (Connection connection = getConnection()) {
+			long poolWait = System.nanoTime() - start;
 			statement = connection.prepareStatement(update);
 			builder.build(statement);
 			resultSet = statement.executeQuery();
 			if (handler != null) {
 				handler.accept(resultSet);
 			}
+			queryStats.record(update, start, poolWait, -1, statement);
 		} catch (Exception e) {
 			OsmiumLogger.warn("An error occurred while executing query: " + update);
 			//			e.printStackTrace();
@@ -454,16 +1828,37 @@ public abstract class SQLDatabase {
 		}
 	}
 
+	/**
+	 * Executes the given statement, which may also modify the database, and
+	 * transforms its result
+	 */
 	public <T> T query(String query, PreparedStatementBuilder builder, ResultSetTransformer<T> resultSetProcessor) {
-		OsmiumLogger.warn("Executing prepared statement: " + query);
+		return query(this::getConnection, query, builder, resultSetProcessor);
+	}
+
+	/**
+	 * Executes a query that only reads from the given table, on a connection
+	 * from {@link #getReadConnection(TableData, Object...)}. For SQLite this
+	 * is a read-only connection, so reads do not wait for the writer.
+	 */
+	protected <T> T readQuery(TableData table, Object[] values, String query, PreparedStatementBuilder builder, ResultSetTransformer<T> resultSetProcessor) {
+		return query(() -> getReadConnection(table, values), query, builder, resultSetProcessor);
+	}
+
+	private <T> T query(Supplier<Connection> connectionSupplier, String query, PreparedStatementBuilder builder, ResultSetTransformer<T> resultSetProcessor) {
+		OsmiumLogger.debug("Executing prepared statement: " + query);
 
 		PreparedStatement statement = null;
 		ResultSet resultSet = null;
-		try (Connection connection = getConnection()) {
+		long start = System.nanoTime();
+		try (Connection connection = connectionSupplier.get()) {
+			long poolWait = System.nanoTime() - start;
 			statement = connection.prepareStatement(query);
 			builder.build(statement);
 			statement.execute();
-			return resultSetProcessor.process(statement.getResultSet());
+			T result = resultSetProcessor.process(statement.getResultSet());
+			queryStats.record(query, start, poolWait, -1, statement);
+			return result;
 		} catch (Exception e) {
 			OsmiumLogger.error("An error occurred while executing query: '" + query + "'");
 			throw new RuntimeException(e);
@@ -497,12 +1892,37 @@ public abstract class SQLDatabase {
 
 	/**
 	 * Gets a connection from the connection pool or null if a Connection cannot
-	 * be established
+	 * be established. The connection can modify the database, so for SQLite
+	 * it is the writer connection. Inside {@link #fromReplica(Supplier)} the
+	 * connection is to a read replica.
 	 * 
 	 * @return a Connection to the data source or null
+	 * @see #getReadConnection(TableData, Object...)
 	 */
 	public Connection getConnection() {
-		if (hikariSource == null) {
+		ReplicaRouter replicas = this.replicas;
+		if (replicas != null && replicas.isReplicaRead()) {
+			Connection connection = replicas.getConnection();
+			if (connection != null) {
+				return connection;
+			}
+		}
+		return getWriteConnection();
+	}
+
+	/**
+	 * Gets a connection that can be used to modify the database. For SQLite
+	 * this is the single writer connection, which is shared by all threads in
+	 * turn. Unlike {@link #getConnection()} it is never a replica connection.
+	 * 
+	 * @return a writable Connection to the data source or null
+	 */
+	public Connection getWriteConnection() {
+		return writerSource != null ? getConnection(writerSource) : getConnection(hikariSource);
+	}
+
+	private Connection getConnection(HikariDataSource source) {
+		if (source == null) {
 			throw new IllegalStateException("Database has not been initialized!");
 		}
 		try {
@@ -511,7 +1931,9 @@ public abstract class SQLDatabase {
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}
-			return hikariSource.getConnection();
+			return poolLease != null && source == hikariSource
+					? poolLease.getConnection() //Waits for the plugin's quota of the shared pool
+					: source.getConnection();
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return null;
@@ -581,6 +2003,7 @@ public abstract class SQLDatabase {
 		} else {
 			update(SQLiteDBUtil.createTable(data));
 		}
+		createIndexes(data);
 
 		//		TableProperties data = new TableProperties(this, cls);
 		//		tables.put(cls, data);
@@ -615,4 +2038,17 @@ public abstract class SQLDatabase {
 
 	}
 
+	/**
+	 * Creates the declared indexes of the given table, and recreates or drops
+	 * the indexes whose declarations changed since the table was last created
+	 */
+	private void createIndexes(TableData data) {
+		try (Connection connection = getWriteConnection()) {
+			IndexData.reconcile(connection, type, data.getName(), data.getIndexes());
+		} catch (SQLException e) {
+			OsmiumLogger.error("Failed to update the indexes of database table: " + data.getName());
+			e.printStackTrace();
+		}
+	}
+
 }
@@ -6,10 +6,13 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.UUID;
 
+import com.kmecpp.osmium.api.database.api.DatabaseType;
 import com.kmecpp.osmium.api.persistence.Serialization;
 import com.kmecpp.osmium.api.util.StringUtil;
 
@@ -42,35 +45,7 @@ public class SQLiteDBUtil {
 	}
 
 	public static void updatePreparedStatement(PreparedStatement s, int index, Object value) throws SQLException {
-		if (value == null) {
-			s.setObject(index, null);
-		} else if (value instanceof Boolean) {
-			s.setBoolean(index, (boolean) value);
-		} else if (value instanceof Byte) {
-			s.setByte(index, (byte) value);
-		} else if (value instanceof Short) {
-			s.setShort(index, (short) value);
-		} else if (value instanceof Integer) {
-			s.setInt(index, (int) value);
-		} else if (value instanceof Long) {
-			s.setLong(index, (long) value);
-		} else if (value instanceof Float) {
-			s.setFloat(index, (float) value);
-		} else if (value instanceof Double) {
-			s.setDouble(index, (double) value);
-		} else if (value instanceof Date) {
-			s.setString(index, Serialization.serialize((Date) value)); //SQLITE
-		} else if (value instanceof Time) {
-			s.setTime(index, (Time) value);
-		} else if (value instanceof Timestamp) {
-			s.setTimestamp(index, (Timestamp) value);
-		} else if (value instanceof String) {
-			s.setString(index, (String) value);
-		} else if (value instanceof UUID) {
-			s.setString(index, String.valueOf(value));
-		} else {
-			throw new UnsupportedOperationException("MySQL serialization of '" + value + "' is not yet supported");
-		}
+		ColumnCodecs.bind(DatabaseType.SQLITE, s, index, value);
 	}
 
 	public String createWhere(SQLiteDatabase db, Class<?> cls, Object... primaryKeys) {
@@ -83,11 +58,15 @@ public class SQLiteDBUtil {
 	}
 
 	public static final String createTable(TableData properties) {
+		return createTable(properties, properties.getName());
+	}
+
+	public static final String createTable(TableData properties, String name) {
 		if (properties.getColumnCount() == 0) {
 			throw new IllegalArgumentException("Invalid database table '" + properties.getName() + "' Must contain at least one column!");
 		}
 
-		StringBuilder schema = new StringBuilder("CREATE TABLE IF NOT EXISTS " + properties.getName() + " (");
+		StringBuilder schema = new StringBuilder("CREATE TABLE IF NOT EXISTS " + name + " (");
 
 		boolean autoIncrement = false;
 		for (ColumnData column : properties.getColumns()) {
@@ -101,7 +80,11 @@ public class SQLiteDBUtil {
 				e.printStackTrace();
 			}
 
-			String typeString = types.get(field.getType());
+			String typeString = column.isBinaryUUID() ? "BLOB" : types.get(field.getType());
+			if (typeString == null) {
+				ColumnCodec<?> codec = ColumnCodecs.get(DatabaseType.SQLITE, field.getType());
+				typeString = codec != null ? codec.getSQLType(column) : null;
+			}
 			if (typeString == null) {
 				if (Serialization.isSerializable(field.getType())) {
 					typeString = "SERIALIZABLE";
@@ -170,6 +153,24 @@ public class SQLiteDBUtil {
 				+ "VALUES(" + StringUtil.join('?', ",", table.getColumnCount()) + ");";
 	}
 
+	/**
+	 * Creates an insert with a parameter for every column, which only updates
+	 * the given columns if a row with the same primary key already exists. If
+	 * no columns are given, an existing row is left unchanged.
+	 */
+	public static final String createUpsert(TableData table, BitSet columns) {
+		String[] names = table.getEscapedColumnNames();
+		ArrayList<String> updates = new ArrayList<>();
+		for (int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+			updates.add(names[i] + "=excluded." + names[i]);
+		}
+		return "INSERT INTO " + table.getName()
+				+ "(" + StringUtil.join(names, ", ") + ") "
+				+ "VALUES(" + StringUtil.join('?', ",", table.getColumnCount()) + ") "
+				+ "ON CONFLICT(`" + String.join("`, `", table.getPrimaryColumnNames()) + "`) "
+				+ (updates.isEmpty() ? "DO NOTHING;" : "DO UPDATE SET " + String.join(", ", updates) + ";");
+	}
+
 	public static String getColumnName(Field field) {
 		return getColumnName(field.getName());
 
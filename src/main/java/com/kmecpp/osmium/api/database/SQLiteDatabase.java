@@ -13,10 +13,8 @@ import com.kmecpp.osmium.api.database.api.OrderBy;
 import com.kmecpp.osmium.api.database.api.ResultSetTransformer;
 import com.kmecpp.osmium.api.database.api.SQLConfig;
 import com.kmecpp.osmium.api.logging.OsmiumLogger;
-import com.kmecpp.osmium.api.persistence.Serialization;
 import com.kmecpp.osmium.api.plugin.OsmiumPlugin;
 import com.kmecpp.osmium.api.util.IOUtil;
-import com.kmecpp.osmium.api.util.Reflection;
 import com.kmecpp.osmium.core.OsmiumCoreConfig;
 
 public class SQLiteDatabase extends SQLDatabase {
@@ -48,18 +46,7 @@ public class SQLiteDatabase extends SQLDatabase {
 		//		update(DBUtil.createReplaceInto(this, cls, obj));
 
 		TableData tableData = tables.get(cls);
-		String update = DBUtil.createReplaceInto(tableData);
-
-		this.preparedUpdateStatement(update, s -> {
-			try {
-				ColumnData[] columns = tableData.getColumns();
-				for (int i = 0; i < columns.length; i++) {
-					SQLiteDBUtil.updatePreparedStatement(s, i + 1, columns[i].getField().get(obj));
-				}
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
-		});
+		writeRow(tableData, obj);
 
 		//		TableProperties tableData = getTable(cls);
 		//		String update = DBUtil.createReplaceInto(tableData);
@@ -103,9 +90,14 @@ public class SQLiteDatabase extends SQLDatabase {
 		Connection connection = null;
 		Statement statement = null;
 		try {
-			connection = getConnection();
+			long start = System.nanoTime();
+			connection = getWriteConnection();
+			long poolWait = System.nanoTime() - start;
 			statement = connection.createStatement();
-			return statement.executeUpdate(update);
+			int result = statement.executeUpdate(update);
+			getQueryStats().record(update, start, poolWait, result, null);
+			invalidateQueries(update);
+			return result;
 		} catch (SQLException e) {
 			OsmiumLogger.error("Failed to execute database update!");
 			if (!OsmiumCoreConfig.debug) {
@@ -119,14 +111,14 @@ public class SQLiteDatabase extends SQLDatabase {
 	}
 
 	public void setAll(Class<?> tableClass, String column, Object value) {
-		update("UPDATE " + getTableName(tableClass) + " SET " + SQLiteDBUtil.getColumnName(column) + "='" + value + "'");
+		TableData table = tables.get(tableClass);
+		preparedUpdateStatement("UPDATE " + table.getName() + " SET " + SQLiteDBUtil.getColumnName(column) + "=?", ps -> table.bind(ps, 1, column, value));
+		invalidateCache(table);
 	}
 
 	public <T> Optional<T> getFirst(Class<T> tableClass, OrderBy orderBy, String columns, Object... values) {
 		TableData properties = tables.get(tableClass);
-		ArrayList<T> result = this.<T> query("SELECT * FROM " + properties.getName()
-				+ " WHERE " + SQLiteDBUtil.createWhere(columns.split(","), values)
-				+ orderBy + " LIMIT 1", properties);
+		ArrayList<T> result = queryWhere(properties, columns.split(","), orderBy + " LIMIT 1", values);
 		return result.isEmpty() ? Optional.empty() : Optional.of(result.get(0));
 
 		//		TableProperties properties = tables.get(tableClass);
@@ -137,7 +129,7 @@ public class SQLiteDatabase extends SQLDatabase {
 
 	public int count(Class<?> tableClass) {
 		TableData properties = tables.get(tableClass);
-		return rawQuery("SELECT COUNT(*) FROM " + properties.getName(), r -> {
+		return rawQuery(properties.getStatements().getCount(), r -> {
 			try {
 				return r.getInt(1);
 			} catch (SQLException e) {
@@ -152,7 +144,7 @@ public class SQLiteDatabase extends SQLDatabase {
 
 	public <T> ArrayList<T> orderBy(Class<T> tableClass, OrderBy orderBy, int limit) {
 		TableData properties = tables.get(tableClass);
-		return query("SELECT * FROM " + properties.getName() + orderBy + " LIMIT " + limit, properties);
+		return query(properties.getStatements().getSelectAll() + orderBy + " LIMIT " + limit, properties);
 	}
 
 	public <T> ArrayList<T> orderBy(Class<T> tableClass, String orderBy, int min, int max) {
@@ -161,16 +153,7 @@ public class SQLiteDatabase extends SQLDatabase {
 
 	public <T> ArrayList<T> orderBy(Class<T> tableClass, OrderBy orderBy, int min, int max) {
 		TableData properties = tables.get(tableClass);
-		return query("SELECT * FROM " + properties.getName() + orderBy + " LIMIT " + min + "," + max, properties);
-	}
-
-	public <T> T get(Class<T> tableClass, Object... primaryKeys) {
-		return getOrDefault(tableClass, null, primaryKeys);
-	}
-
-	public <T> T getOrDefault(Class<T> tableClass, T defaultValue, Object... primaryKeys) {
-		ArrayList<T> list = queryPrimaryKeys(tableClass, primaryKeys);
-		return list.isEmpty() ? defaultValue : list.get(0);
+		return query(properties.getStatements().getSelectAll() + orderBy + " LIMIT " + min + "," + max, properties);
 	}
 
 	@Override
@@ -188,8 +171,7 @@ public class SQLiteDatabase extends SQLDatabase {
 			columns = table.getPrimaryColumnNames();
 		}
 
-		String query = "SELECT * FROM " + table.getName() + " WHERE " + SQLiteDBUtil.createWhere(columns, values);
-		return query(query, table);
+		return queryWhere(table, columns, values);
 	}
 
 	//	private <T> T newInstance(Class<T> cls, ResultSet rs) throws InstantiationException, IllegalAccessException, IllegalArgumentException, SQLException {
@@ -231,19 +213,22 @@ public class SQLiteDatabase extends SQLDatabase {
 	 * @return the result of the query
 	 */
 	public <T> ArrayList<T> query(String query, TableData properties) {
+		IncrementAccumulator increments = getIncrements();
 		Connection connection = null;
 		Statement statement = null;
 		ResultSet resultSet = null;
+		if (increments != null) {
+			increments.hold();
+		}
 		try {
-			ArrayList<T> result = new ArrayList<>();
-
 			OsmiumLogger.debug("Executing query: \"" + query + "\"");
-			connection = getConnection();
+			long start = System.nanoTime();
+			connection = getReadConnection(properties);
+			long poolWait = System.nanoTime() - start;
 			statement = connection.createStatement();
 			resultSet = statement.executeQuery(query);
-			while (resultSet.next()) {
-				result.add(parse(resultSet, properties));
-			}
+			ArrayList<T> result = parseAll(resultSet, properties);
+			getQueryStats().record(query, start, poolWait, result.size(), null);
 			return result;
 		} catch (Exception e) {
 			OsmiumLogger.error("Failed to execute database query: \"" + query + "\"");
@@ -251,32 +236,26 @@ public class SQLiteDatabase extends SQLDatabase {
 			return null;
 		} finally {
 			IOUtil.close(connection, statement, resultSet);
+			if (increments != null) {
+				increments.release();
+			}
 		}
 	}
 
-	@Override
-	public <T> T parse(ResultSet resultSet, TableData tableData) throws Exception {
-		ColumnData[] columns = tableData.getColumns();
-
-		T obj = Reflection.cast(Reflection.createInstance(tableData.getTableClass()));
-
-		for (int i = 0; i < columns.length; i++) {
-			columns[i].getField().set(obj, Serialization.deserialize(tableData.getColumns()[i].getType(), (resultSet.getString(i + 1))));
-		}
-
-		return obj;
-	}
-
 	public <T> T rawQuery(String query, ResultSetTransformer<T> processor) {
 		Connection connection = null;
 		Statement statement = null;
 		ResultSet resultSet = null;
 		try {
 			OsmiumLogger.debug("Executing query: \"" + query + "\"");
+			long start = System.nanoTime();
 			connection = getConnection();
+			long poolWait = System.nanoTime() - start;
 			statement = connection.createStatement();
 			resultSet = statement.executeQuery(query);
-			return processor.process(resultSet);
+			T result = processor.process(resultSet);
+			getQueryStats().record(query, start, poolWait, -1, null);
+			return result;
 		} catch (Exception e) {
 			throw new RuntimeException("Failed to execute database query: \"" + query + "\"", e);
 		} finally {
@@ -297,10 +276,13 @@ public class SQLiteDatabase extends SQLDatabase {
 		ResultSet resultSet = null;
 		try {
 			OsmiumLogger.debug("Executing query: \"" + query + "\"");
+			long start = System.nanoTime();
 			connection = getConnection();
+			long poolWait = System.nanoTime() - start;
 			statement = connection.createStatement();
 			resultSet = statement.executeQuery(query);
 			processor.process(resultSet);
+			getQueryStats().record(query, start, poolWait, -1, null);
 		} catch (SQLException e) {
 			OsmiumLogger.error("Failed to execute database query: \"" + query + "\"");
 			e.printStackTrace();
@@ -0,0 +1,312 @@
+package com.kmecpp.osmium.api.database;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.kmecpp.osmium.api.logging.OsmiumLogger;
+import com.kmecpp.osmium.api.plugin.OsmiumPlugin;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * A connection pool shared by every plugin that connects to the same database
+ * with the same credentials. Each plugin leases connections from the pool
+ * through a {@link Lease}, which limits how many connections the plugin can
+ * use at once, so a single busy plugin cannot hold every connection of the
+ * pool. Threads of the same plugin that wait for its quota are served in the
+ * order they asked. Between plugins that are within their quotas there is no
+ * such ordering, and connections are handed out in the pool's own order.
+ * <p>
+ * The pool is created by the first plugin that leases from it, using that
+ * plugin's driver settings, and closed when the last lease is released.
+ */
+public class SharedConnectionPool {
+
+	private static final HashMap<String, SharedConnectionPool> pools = new HashMap<>();
+	private static int size = 20;
+
+	private final String key;
+	private final String name;
+	private final HikariDataSource source;
+	private final long timeoutMillis;
+	private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+	private SharedConnectionPool(String key, HikariConfig config, int size) {
+		this.key = key;
+		this.name = config.getJdbcUrl();
+		this.timeoutMillis = config.getConnectionTimeout();
+
+		config.setPoolName("Osmium Shared Pool #" + (pools.size() + 1));
+		config.setMaximumPoolSize(size);
+		config.setMinimumIdle(Math.min(config.getMinimumIdle(), size));
+		this.source = new HikariDataSource(config);
+	}
+
+	/**
+	 * Leases connections from the pool for the database described by the
+	 * given configuration, creating the pool if it does not exist yet
+	 *
+	 * @param config
+	 *            the configuration of the plugin's database
+	 * @param plugin
+	 *            the plugin leasing connections
+	 * @param quota
+	 *            the maximum number of connections the plugin can use at once
+	 * @return the lease
+	 */
+	public static synchronized Lease lease(HikariConfig config, OsmiumPlugin plugin, int quota) {
+		String key = config.getJdbcUrl() + "\0" + config.getUsername() + "\0" + config.getPassword();
+		SharedConnectionPool pool = pools.get(key);
+		if (pool == null || pool.source.isClosed()) {
+			pool = new SharedConnectionPool(key, config, size);
+			pools.put(key, pool);
+		}
+
+		Lease lease = pool.new Lease(plugin, quota);
+		Lease previous = pool.leases.put(plugin.getName(), lease);
+		if (previous != null) {
+			OsmiumLogger.warn(plugin.getName() + " leased connections from " + pool.name + " twice without releasing them");
+		}
+		return lease;
+	}
+
+	public static synchronized Collection<SharedConnectionPool> getPools() {
+		return new ArrayList<>(pools.values());
+	}
+
+	public static synchronized int getSize() {
+		return size;
+	}
+
+	/**
+	 * Sets the number of connections in each shared pool, resizing the pools
+	 * that already exist
+	 */
+	public static synchronized void setSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1!");
+		}
+		SharedConnectionPool.size = size;
+		for (SharedConnectionPool pool : pools.values()) {
+			pool.resize(size);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public HikariDataSource getSource() {
+		return source;
+	}
+
+	public Collection<Lease> getLeases() {
+		return leases.values();
+	}
+
+	public int getMaximumPoolSize() {
+		return source.getHikariConfigMXBean().getMaximumPoolSize();
+	}
+
+	/**
+	 * Changes the number of connections in the pool. Connections above the
+	 * new size are closed as they are returned.
+	 */
+	public void resize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1!");
+		}
+		source.getHikariConfigMXBean().setMaximumPoolSize(size);
+		source.getHikariConfigMXBean().setMinimumIdle(Math.min(source.getHikariConfigMXBean().getMinimumIdle(), size));
+	}
+
+	public int getActiveConnections() {
+		HikariPoolMXBean bean = source.getHikariPoolMXBean();
+		return bean != null ? bean.getActiveConnections() : 0;
+	}
+
+	public int getIdleConnections() {
+		HikariPoolMXBean bean = source.getHikariPoolMXBean();
+		return bean != null ? bean.getIdleConnections() : 0;
+	}
+
+	public int getThreadsAwaitingConnection() {
+		HikariPoolMXBean bean = source.getHikariPoolMXBean();
+		return bean != null ? bean.getThreadsAwaitingConnection() : 0;
+	}
+
+	/**
+	 * A plugin's share of a {@link SharedConnectionPool}
+	 */
+	public class Lease {
+
+		private final OsmiumPlugin plugin;
+		private final QuotaSemaphore permits;
+		private int quota;
+
+		private final AtomicInteger active = new AtomicInteger();
+		private final LongAccumulator peakActive = new LongAccumulator(Math::max, 0);
+		private final LongAdder acquisitions = new LongAdder();
+		private final LongAdder waitNanos = new LongAdder();
+		private final LongAdder timeouts = new LongAdder();
+
+		private Lease(OsmiumPlugin plugin, int quota) {
+			this.plugin = plugin;
+			this.quota = Math.max(1, quota);
+			this.permits = new QuotaSemaphore(this.quota);
+		}
+
+		/**
+		 * Gets a connection from the pool once the plugin is within its quota.
+		 * Closing the connection returns it to the pool.
+		 */
+		public Connection getConnection() throws SQLException {
+			long start = System.nanoTime();
+			try {
+				if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+					timeouts.increment();
+					throw new SQLTransientConnectionException(plugin.getName() + " timed out waiting for a connection. All " + quota + " of its connections are in use");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+			}
+
+			Connection connection;
+			try {
+				connection = source.getConnection();
+			} catch (SQLTransientConnectionException e) {
+				permits.release();
+				timeouts.increment(); //The pool itself is exhausted
+				throw e;
+			} catch (SQLException | RuntimeException e) {
+				permits.release();
+				throw e;
+			}
+
+			waitNanos.add(System.nanoTime() - start);
+			acquisitions.increment();
+			peakActive.accumulate(active.incrementAndGet());
+			return wrap(connection);
+		}
+
+		/**
+		 * Wraps the connection so that closing it also gives the permit back
+		 */
+		private Connection wrap(Connection connection) {
+			AtomicBoolean closed = new AtomicBoolean();
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+				if (method.getName().equals("close") && method.getParameterCount() == 0) {
+					if (closed.compareAndSet(false, true)) {
+						try {
+							connection.close();
+						} finally {
+							active.decrementAndGet();
+							permits.release();
+						}
+					}
+					return null;
+				} else if (method.getName().equals("isClosed") && closed.get()) {
+					return true;
+				}
+
+				try {
+					return method.invoke(connection, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			});
+		}
+
+		/**
+		 * Changes the maximum number of connections the plugin can use at once.
+		 * Connections already in use above the new quota are not interrupted.
+		 */
+		public synchronized void setQuota(int quota) {
+			quota = Math.max(1, quota);
+			int difference = quota - this.quota;
+			if (difference > 0) {
+				permits.release(difference);
+			} else if (difference < 0) {
+				permits.reducePermits(-difference);
+			}
+			this.quota = quota;
+		}
+
+		/**
+		 * Ends the lease. The pool is closed once every lease is released.
+		 */
+		public void release() {
+			synchronized (SharedConnectionPool.class) {
+				if (leases.remove(plugin.getName(), this) && leases.isEmpty()) {
+					source.close();
+					pools.remove(key);
+				}
+			}
+		}
+
+		public SharedConnectionPool getPool() {
+			return SharedConnectionPool.this;
+		}
+
+		public OsmiumPlugin getPlugin() {
+			return plugin;
+		}
+
+		public int getQuota() {
+			return quota;
+		}
+
+		public int getActive() {
+			return active.get();
+		}
+
+		public long getPeakActive() {
+			return peakActive.get();
+		}
+
+		public long getAcquisitions() {
+			return acquisitions.sum();
+		}
+
+		public long getTimeouts() {
+			return timeouts.sum();
+		}
+
+		public double getAverageWaitMillis() {
+			long count = acquisitions.sum();
+			return count > 0 ? waitNanos.sum() / 1E6 / count : 0;
+		}
+
+	}
+
+	private static final class QuotaSemaphore extends Semaphore {
+
+		private static final long serialVersionUID = 1L;
+
+		public QuotaSemaphore(int permits) {
+			super(permits, true); //Fair, so the plugin's waiting threads are served in order
+		}
+
+		@Override
+		public void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+
+	}
+
+}
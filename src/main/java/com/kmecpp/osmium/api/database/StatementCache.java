@@ -0,0 +1,149 @@
+package com.kmecpp.osmium.api.database;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.kmecpp.osmium.api.database.api.DatabaseType;
+
+/**
+ * Caches the SQL text of the statements that are executed repeatedly against
+ * a table, so the same interned string is returned for every call instead of
+ * being rebuilt. Using identical SQL strings also lets the driver reuse its
+ * cached prepared statements.
+ */
+public class StatementCache {
+
+	private final TableData table;
+	private final DatabaseType type;
+
+	private final String replaceInto;
+	private final String selectAll;
+	private final String count;
+	private final String selectPrimary;
+
+	private final ConcurrentHashMap<String, String> selectWhere = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, String> countWhere = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<BitSet, String> upserts = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Integer, String> selectIn = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, String> selectColumnIn = new ConcurrentHashMap<>();
+
+	public StatementCache(TableData table, DatabaseType type) {
+		this.table = table;
+		this.type = type;
+		this.replaceInto = DBUtil.createReplaceInto(table).intern();
+		this.selectAll = ("SELECT * FROM " + table.getName()).intern();
+		this.count = ("SELECT COUNT(*) FROM " + table.getName()).intern();
+		this.selectPrimary = (selectAll + " WHERE " + DBUtil.createWhere(table.getPrimaryColumnNames())).intern();
+	}
+
+	public String getReplaceInto() {
+		return replaceInto;
+	}
+
+	/**
+	 * Gets an insert that only updates the given columns if the row already
+	 * exists. The statement has a parameter for every column, like
+	 * {@link #getReplaceInto()}.
+	 *
+	 * @param columns
+	 *            the indices of the columns to update, which must not be
+	 *            modified afterwards
+	 */
+	public String getUpsert(BitSet columns) {
+		return upserts.computeIfAbsent(columns, k -> (type == DatabaseType.MYSQL
+				? DBUtil.createUpsert(table, k)
+				: SQLiteDBUtil.createUpsert(table, k)).intern());
+	}
+
+	/**
+	 * @return "SELECT * FROM table"
+	 */
+	public String getSelectAll() {
+		return selectAll;
+	}
+
+	/**
+	 * @return "SELECT COUNT(*) FROM table"
+	 */
+	public String getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets a select statement with a parameter for each of the given columns
+	 *
+	 * @param columns
+	 *            a comma separated list of column names
+	 * @return "SELECT * FROM table WHERE col1=? AND col2=?"
+	 */
+	public String getSelectWhere(String columns) {
+		return selectWhere.computeIfAbsent(columns, k -> (selectAll + " WHERE " + DBUtil.createWhere(k.split(","))).intern());
+	}
+
+	public String getSelectWhere(String[] columns) {
+		if (columns == table.getPrimaryColumnNames()) {
+			return selectPrimary;
+		}
+		return getSelectWhere(String.join(",", columns));
+	}
+
+	/**
+	 * Gets a select statement for the given number of primary keys. Tables
+	 * with a composite primary key are matched with a row value list, which
+	 * SQLite only accepts from a VALUES clause.
+	 *
+	 * @param keys
+	 *            the number of keys
+	 * @return "SELECT * FROM table WHERE id IN (?,?)" or "SELECT * FROM table
+	 *         WHERE (a,b) IN ((?,?),(?,?))"
+	 */
+	public String getSelectIn(int keys) {
+		return selectIn.computeIfAbsent(keys, k -> {
+			String[] columns = table.getPrimaryColumnNames();
+			StringBuilder sb = new StringBuilder(selectAll).append(" WHERE ");
+			if (columns.length == 1) {
+				sb.append(columns[0]).append(" IN (");
+				for (int i = 0; i < k; i++) {
+					sb.append(i > 0 ? ",?" : "?");
+				}
+				return sb.append(")").toString().intern();
+			}
+
+			String row = "(" + String.join(",", Collections.nCopies(columns.length, "?")) + ")";
+			sb.append("(").append(String.join(",", columns)).append(") IN (").append(type == DatabaseType.SQLITE ? "VALUES " : "");
+			for (int i = 0; i < k; i++) {
+				sb.append(i > 0 ? "," : "").append(row);
+			}
+			return sb.append(")").toString().intern();
+		});
+	}
+
+	/**
+	 * Gets a select statement for the rows whose given column is equal to any
+	 * of the given number of values
+	 *
+	 * @return "SELECT * FROM table WHERE col IN (?,?)"
+	 */
+	public String getSelectIn(String column, int values) {
+		return selectColumnIn.computeIfAbsent(column + ":" + values, k -> {
+			StringBuilder sb = new StringBuilder(selectAll).append(" WHERE ").append(column).append(" IN (");
+			for (int i = 0; i < values; i++) {
+				sb.append(i > 0 ? ",?" : "?");
+			}
+			return sb.append(")").toString().intern();
+		});
+	}
+
+	/**
+	 * Gets a count statement with a parameter for each of the given columns
+	 *
+	 * @param columns
+	 *            a comma separated list of column names
+	 * @return "SELECT COUNT(*) FROM table WHERE col1=? AND col2=?"
+	 */
+	public String getCountWhere(String columns) {
+		return countWhere.computeIfAbsent(columns, k -> (count + " WHERE " + DBUtil.createWhere(k.split(","))).intern());
+	}
+
+}
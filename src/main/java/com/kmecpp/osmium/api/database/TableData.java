@@ -1,10 +1,17 @@
 package com.kmecpp.osmium.api.database;
 
+import java.lang.invoke.MethodType;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import com.kmecpp.osmium.api.database.api.DBIndex;
 import com.kmecpp.osmium.api.database.api.DBTable;
 import com.kmecpp.osmium.api.database.api.DatabaseType;
 import com.kmecpp.osmium.api.util.Reflection;
@@ -12,6 +19,7 @@ import com.kmecpp.osmium.api.util.StringUtil;
 
 public class TableData {
 
+	private SQLDatabase database;
 	private String name;
 	private Class<?> tableClass;
 	private LinkedHashMap<String, ColumnData> columnMap;
@@ -27,11 +35,22 @@ public class TableData {
 	private boolean sqlite;
 	private boolean mysql;
 
+	private RowMapper rowMapper;
+	private StatementCache statements;
+	private EntityCache<PrimaryKey> cache;
+	private RowSnapshots snapshots;
+	private boolean replicaReads;
+	private final CopyOnWriteArrayList<Leaderboard> leaderboards = new CopyOnWriteArrayList<>();
+	private final ConcurrentHashMap<String, Projection> projections = new ConcurrentHashMap<>();
+	private final LinkedHashMap<String, Relation> relations = new LinkedHashMap<>();
+	private final ArrayList<IndexData> indexes = new ArrayList<>();
+
 	//	private MDBColumnData[] foreignKeyColumns;
 	//	private String[] foreignKeyColumnNames;
 
 	public TableData(SQLDatabase database, Class<?> cls) {
 		DBTable meta = cls.getDeclaredAnnotation(DBTable.class);
+		this.database = database;
 		this.tableClass = cls;
 		this.columnMap = new LinkedHashMap<>();
 
@@ -57,7 +76,13 @@ public class TableData {
 		//		ArrayList<MDBColumnData> foreignKeyColumns = new ArrayList<>();
 		
 		Reflection.walk(cls, false, false, field -> {
+			if (Relation.isRelation(field)) {
+				relations.put(field.getName(), new Relation(this, field));
+				return;
+			}
+
 			ColumnData columnData = new ColumnData(field);
+			columnData.resolveUUIDStorage(database.getUUIDStorage());
 			this.columnMap.put(columnData.getName(), columnData);
 
 			columns.add(columnData);
@@ -73,10 +98,26 @@ public class TableData {
 		this.escapedColumnNames = columns.stream().map(data -> "`" + data.getName() + "`").toArray(String[]::new);
 		this.primaryColumns = primaryColumns.toArray(new ColumnData[primaryColumns.size()]);
 		this.primaryColumnNames = primaryColumns.stream().map(ColumnData::getName).toArray(String[]::new);
+		this.rowMapper = new RowMapper(this, database.type);
+		this.statements = new StatementCache(this, database.type);
+		if (meta.cacheSize() > 0) {
+			this.cache = new EntityCache<>(meta.cacheSize(), meta.cacheExpireSeconds() * 1000L);
+		}
+		if (meta.dirtyTracking() > 0 && this.primaryColumns.length > 0) {
+			this.snapshots = new RowSnapshots(this, meta.dirtyTracking());
+		}
+		this.replicaReads = meta.replicaReads();
+		for (DBIndex index : cls.getDeclaredAnnotationsByType(DBIndex.class)) {
+			indexes.add(IndexData.create(this, index));
+		}
 		//		this.foreignKeyColumns = foreignKeyColumns.toArray(new MDBColumnData[foreignKeyColumns.size()]);
 		//		this.foreignKeyColumnNames = foreignKeyColumns.stream().map(MDBColumnData::getName).toArray(String[]::new);
 	}
 
+	public SQLDatabase getDatabase() {
+		return database;
+	}
+
 	public Class<?> getTableClass() {
 		return tableClass;
 	}
@@ -125,6 +166,173 @@ public class TableData {
 		return primaryColumnNames;
 	}
 
+	/**
+	 * Binds a value that is compared to the given column, using the column's
+	 * storage format
+	 * 
+	 * @param column
+	 *            the column or field name, optionally qualified with the table
+	 *            name or quoted with backticks
+	 */
+	public void bind(PreparedStatement ps, int index, String column, Object value) throws SQLException {
+		String name = column.trim().replace("`", "");
+		name = name.substring(name.lastIndexOf('.') + 1);
+		ColumnCodecs.bind(database.type, ps, index, getColumnMeta(name), value);
+	}
+
+	/**
+	 * Gets the primary key of the row that the given object represents. If the
+	 * table has no primary key, or the key has not been generated yet by an
+	 * auto increment column, the row cannot be identified and this method
+	 * returns null.
+	 * 
+	 * @param obj
+	 *            the table object
+	 * @return the primary key of the object or null
+	 */
+	public PrimaryKey getPrimaryKey(Object obj) {
+		if (primaryColumns.length == 0) {
+			return null;
+		}
+
+		Object[] values = new Object[primaryColumns.length];
+		try {
+			for (int i = 0; i < primaryColumns.length; i++) {
+				ColumnData column = primaryColumns[i];
+				Object value = column.getField().get(obj);
+				if (value == null || (column.isAutoIncrement() && value instanceof Number && ((Number) value).longValue() == 0)) {
+					return null;
+				}
+				values[i] = value;
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return new PrimaryKey(this, values);
+	}
+
+	/**
+	 * Creates a primary key from the given column values. Numbers are
+	 * converted to the type of their column if no precision is lost, so a key
+	 * of {@code 1} matches a long column. If the values do not match the types
+	 * of the primary key columns, the key would not be equal to one created by
+	 * {@link #getPrimaryKey(Object)} so null is returned.
+	 * 
+	 * @param values
+	 *            the values of the primary key columns
+	 * @return the primary key or null
+	 */
+	public PrimaryKey createPrimaryKey(Object... values) {
+		if (values.length == 0 || values.length != primaryColumns.length) {
+			return null;
+		}
+		Object[] converted = new Object[values.length];
+		for (int i = 0; i < values.length; i++) {
+			Class<?> type = MethodType.methodType(primaryColumns[i].getType()).wrap().returnType();
+			converted[i] = convertKey(type, values[i]);
+			if (converted[i] == null) {
+				return null;
+			}
+		}
+		return new PrimaryKey(this, converted);
+	}
+
+	/**
+	 * Converts a primary key value to the given wrapper type
+	 * 
+	 * @return the converted value, or null if the value is not of the given
+	 *         type and cannot be converted to it exactly
+	 */
+	private static Object convertKey(Class<?> type, Object value) {
+		if (type.isInstance(value)) {
+			return value;
+		} else if (value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long) {
+			long number = ((Number) value).longValue();
+			if (type == Long.class) {
+				return number;
+			} else if (type == Integer.class && (int) number == number) {
+				return (int) number;
+			} else if (type == Short.class && (short) number == number) {
+				return (short) number;
+			} else if (type == Byte.class && (byte) number == number) {
+				return (byte) number;
+			}
+		} else if (value instanceof Float && type == Double.class) {
+			return ((Float) value).doubleValue();
+		}
+		return null;
+	}
+
+	public RowMapper getRowMapper() {
+		return rowMapper;
+	}
+
+	public StatementCache getStatements() {
+		return statements;
+	}
+
+	/**
+	 * Gets the primary key cache for this table, or null if caching is not
+	 * enabled by {@link DBTable#cacheSize()}
+	 */
+	public EntityCache<PrimaryKey> getCache() {
+		return cache;
+	}
+
+	/**
+	 * Gets the last loaded or saved state of the rows of this table, or null
+	 * if dirty tracking is not enabled by {@link DBTable#dirtyTracking()}
+	 */
+	public RowSnapshots getSnapshots() {
+		return snapshots;
+	}
+
+	/**
+	 * Gets whether reads of this table use the read replicas by default, see
+	 * {@link DBTable#replicaReads()}
+	 */
+	public boolean isReplicaReads() {
+		return replicaReads;
+	}
+
+	/**
+	 * Gets the relation declared by the field with the given name
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the field does not declare a relation
+	 */
+	public Relation getRelation(String name) {
+		Relation relation = relations.get(name);
+		if (relation == null) {
+			throw new IllegalArgumentException("Table " + this.name + " does not have a relation named " + name);
+		}
+		return relation;
+	}
+
+	public Collection<Relation> getRelations() {
+		return relations.values();
+	}
+
+	/**
+	 * Gets the secondary indexes declared with
+	 * {@link com.kmecpp.osmium.api.database.api.DBIndex}
+	 */
+	public ArrayList<IndexData> getIndexes() {
+		return indexes;
+	}
+
+	public CopyOnWriteArrayList<Leaderboard> getLeaderboards() {
+		return leaderboards;
+	}
+
+	/**
+	 * Gets the projection of the given columns, which is created once for
+	 * every distinct list of columns
+	 */
+	public Projection getProjection(String... columns) {
+		return projections.computeIfAbsent(String.join(",", columns), k -> new Projection(this, columns));
+	}
+
 	public boolean isMySQL() {
 		return mysql;
 	}
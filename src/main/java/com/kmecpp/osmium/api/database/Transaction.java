@@ -0,0 +1,199 @@
+package com.kmecpp.osmium.api.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.kmecpp.osmium.api.database.api.Filter;
+import com.kmecpp.osmium.api.database.api.PreparedStatementBuilder;
+import com.kmecpp.osmium.api.database.api.ResultSetTransformer;
+
+/**
+ * A group of statements that are executed on a single connection and
+ * committed together, created by
+ * {@link SQLDatabase#transaction(com.kmecpp.osmium.api.database.api.TransactionCallback)}.
+ * <p>
+ * Consecutive writes that use the same statement are sent to the database as
+ * one JDBC batch. Caches, snapshots, cached query results and leaderboards are
+ * only updated once the transaction has been committed.
+ */
+public class Transaction {
+
+	private final SQLDatabase database;
+	private final Connection connection;
+	final ArrayList<Runnable> onCommit = new ArrayList<>();
+
+	private String batchSql;
+	private PreparedStatement batch;
+	private int batchSize;
+	private int statements;
+
+	Transaction(SQLDatabase database, Connection connection) {
+		this.database = database;
+		this.connection = connection;
+	}
+
+	/**
+	 * Gets the transaction's connection, for statements that are not covered
+	 * by this class. The connection must not be closed or committed.
+	 */
+	public Connection getConnection() throws SQLException {
+		flush();
+		return connection;
+	}
+
+	public void replaceInto(Object obj) throws SQLException {
+		replaceInto(obj.getClass(), obj);
+	}
+
+	public void replaceInto(Class<?> tableClass, Object obj) throws SQLException {
+		TableData table = database.getTable(tableClass);
+		String update = database.getWriteStatement(table, obj, onCommit);
+		if (update != null) {
+			addBatch(update, s -> database.bindReplaceInto(s, table, obj));
+		}
+		onCommit.add(() -> database.onReplaceInto(table, obj));
+	}
+
+	public int update(String update) throws SQLException {
+		flush();
+		long start = System.nanoTime();
+		try (Statement statement = connection.createStatement()) {
+			int result = statement.executeUpdate(update);
+			database.getQueryStats().record(update, start, 0, result, null);
+			statements++;
+			onCommit.add(() -> database.invalidateQueries(update));
+			return result;
+		}
+	}
+
+	public int update(String update, PreparedStatementBuilder builder) throws SQLException {
+		flush();
+		long start = System.nanoTime();
+		try (PreparedStatement statement = connection.prepareStatement(update)) {
+			builder.build(statement);
+			int result = statement.executeUpdate();
+			database.getQueryStats().record(update, start, 0, result, statement);
+			statements++;
+			onCommit.add(() -> database.invalidateQueries(update));
+			return result;
+		}
+	}
+
+	/**
+	 * Adds the given amount to a numeric column of a row. Unlike
+	 * {@link SQLDatabase#increment(Class, String, long, Object...)} the
+	 * increment is never accumulated, since it has to be part of the
+	 * transaction.
+	 *
+	 * @return the number of rows updated, 0 if the row does not exist
+	 */
+	public int increment(Class<?> tableClass, String column, long delta, Object... primaryKeys) throws SQLException {
+		TableData table = database.getTable(tableClass);
+		PrimaryKey key = table.createPrimaryKey(primaryKeys);
+		if (key == null) {
+			throw new IllegalArgumentException("Invalid primary key for " + table.getName() + ": " + Arrays.toString(primaryKeys));
+		}
+
+		int result = update("UPDATE " + table.getName() + " SET " + column + " = " + column + " + ? WHERE " + DBUtil.createWhere(table.getPrimaryColumnNames()), s -> {
+			s.setLong(1, delta);
+			for (int i = 0; i < primaryKeys.length; i++) {
+				ColumnCodecs.bind(database.getType(), s, i + 2, table.getPrimaryColumns()[i], primaryKeys[i]);
+			}
+		});
+		onCommit.add(() -> {
+			if (table.getCache() != null) {
+				table.getCache().invalidate(key);
+			}
+			for (Leaderboard leaderboard : table.getLeaderboards()) {
+				leaderboard.increment(key, column, delta);
+			}
+			database.pin(primaryKeys);
+		});
+		return result;
+	}
+
+	public int deleteFrom(Class<?> tableClass, Filter filter) throws SQLException {
+		TableData table = database.getTable(tableClass);
+		int result = update("DELETE FROM " + table.getName() + filter.createParameterizedStatement(), DBUtil.filterLinker(filter, table));
+		onCommit.add(() -> database.invalidateCache(table));
+		return result;
+	}
+
+	/**
+	 * Executes a query within the transaction, so it sees the transaction's
+	 * own writes
+	 */
+	public <T> T query(String query, PreparedStatementBuilder builder, ResultSetTransformer<T> transformer) throws SQLException {
+		flush();
+		long start = System.nanoTime();
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			builder.build(statement);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				T result = transformer.process(resultSet);
+				database.getQueryStats().record(query, start, 0, -1, statement);
+				statements++;
+				return result;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of statements executed so far, counting each batch once
+	 */
+	public int getStatementCount() {
+		return statements;
+	}
+
+	private void addBatch(String update, PreparedStatementBuilder builder) throws SQLException {
+		if (batch != null && !update.equals(batchSql)) {
+			flush();
+		}
+		if (batch == null) {
+			batch = connection.prepareStatement(update);
+			batchSql = update;
+		}
+		builder.build(batch);
+		batch.addBatch();
+		batchSize++;
+	}
+
+	/**
+	 * Executes the pending batch, if any
+	 */
+	void flush() throws SQLException {
+		if (batch == null) {
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			batch.executeBatch();
+			database.getQueryStats().record(batchSql, start, 0, batchSize, null);
+			statements++;
+		} finally {
+			batch.close();
+			batch = null;
+			batchSql = null;
+			batchSize = 0;
+		}
+	}
+
+	/**
+	 * Closes the pending batch without executing it
+	 */
+	void discard() {
+		if (batch != null) {
+			try {
+				batch.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			batch = null;
+		}
+	}
+
+}
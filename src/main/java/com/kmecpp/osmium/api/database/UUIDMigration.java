@@ -0,0 +1,214 @@
+package com.kmecpp.osmium.api.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import com.kmecpp.osmium.api.database.api.DatabaseType;
+import com.kmecpp.osmium.api.logging.OsmiumLogger;
+
+/**
+ * Converts the binary UUID columns of a table that are still stored as text.
+ * The rows are copied in primary key order into a new table with the binary
+ * schema, one chunk per transaction, and the new table replaces the old one
+ * once every row has been copied. See
+ * {@link SQLDatabase#migrateUUIDColumns(Class, int)}.
+ */
+class UUIDMigration {
+
+	private final SQLDatabase database;
+	private final TableData table;
+	private final String tempName;
+	private final String backupName;
+
+	private final String[] columns;
+	private final boolean[] textUUID;
+	private final int[] primaryIndexes;
+
+	UUIDMigration(SQLDatabase database, TableData table) {
+		this.database = database;
+		this.table = table;
+		this.tempName = table.getName() + "_uuid_migration";
+		this.backupName = table.getName() + "_text_uuid";
+		this.columns = table.getEscapedColumnNames();
+		this.textUUID = new boolean[columns.length];
+
+		ColumnData[] primaryColumns = table.getPrimaryColumns();
+		if (primaryColumns.length == 0) {
+			throw new IllegalStateException("Cannot migrate table without a primary key: " + table.getName());
+		}
+		this.primaryIndexes = new int[primaryColumns.length];
+		for (int i = 0; i < primaryColumns.length; i++) {
+			primaryIndexes[i] = Arrays.asList(table.getColumns()).indexOf(primaryColumns[i]);
+		}
+	}
+
+	/**
+	 * @return the number of rows copied, or -1 if no column had to be migrated
+	 */
+	int run(int chunkSize) throws SQLException {
+		Connection connection = database.getConnection();
+		if (connection == null) {
+			throw new SQLException("Could not connect to the database");
+		}
+
+		boolean autoCommit = connection.getAutoCommit();
+		try {
+			DatabaseMetaData meta = connection.getMetaData();
+			if (!findTextColumns(meta, connection.getCatalog())) {
+				return -1;
+			}
+			if (exists(meta, connection.getCatalog(), backupName)) {
+				throw new IllegalStateException("Cannot migrate " + table.getName() + ", the backup table from a previous migration still exists: " + backupName);
+			}
+
+			connection.setAutoCommit(false);
+			update(connection, "DROP TABLE IF EXISTS " + tempName); //Left over from an interrupted migration
+			update(connection, database.getType() == DatabaseType.MYSQL
+					? DBUtil.getCreateTableUpdate(table, tempName)
+					: SQLiteDBUtil.createTable(table, tempName));
+			connection.commit();
+
+			int copied = copy(connection, chunkSize);
+
+			//Indexes are created after copying, which is faster than updating them for every chunk
+			if (database.getType() == DatabaseType.MYSQL) {
+				for (IndexData index : table.getIndexes()) {
+					update(connection, index.getCreate(DatabaseType.MYSQL, tempName));
+				}
+				update(connection, "RENAME TABLE " + table.getName() + " TO " + backupName + ", " + tempName + " TO " + table.getName());
+			} else {
+				update(connection, "ALTER TABLE " + table.getName() + " RENAME TO " + backupName);
+				for (IndexData index : table.getIndexes()) {
+					update(connection, index.getDrop(DatabaseType.SQLITE)); //SQLite index names are global and now belong to the backup
+				}
+				update(connection, "ALTER TABLE " + tempName + " RENAME TO " + table.getName());
+				for (IndexData index : table.getIndexes()) {
+					update(connection, index.getCreate(DatabaseType.SQLITE));
+				}
+			}
+			connection.commit();
+			return copied;
+		} catch (SQLException | RuntimeException e) {
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+			connection.close();
+		}
+	}
+
+	private int copy(Connection connection, int chunkSize) throws SQLException {
+		String columnList = String.join(", ", columns);
+		String orderBy = " ORDER BY " + String.join(", ", Arrays.stream(primaryIndexes).mapToObj(i -> columns[i]).toArray(String[]::new));
+		String select = "SELECT " + columnList + " FROM " + table.getName();
+		String first = select + orderBy + " LIMIT " + chunkSize;
+		String next = select + " WHERE " + getAfterCondition() + orderBy + " LIMIT " + chunkSize;
+		String insert = "INSERT INTO " + tempName + " (" + columnList + ") VALUES (" + String.join(", ", Collections.nCopies(columns.length, "?")) + ")";
+
+		Object[] last = null;
+		int copied = 0;
+		while (true) {
+			long start = System.nanoTime();
+			int rows = 0;
+			try (PreparedStatement query = connection.prepareStatement(last == null ? first : next);
+					PreparedStatement batch = connection.prepareStatement(insert)) {
+				if (last != null) {
+					int index = 1;
+					for (int i = 0; i < last.length; i++) {
+						for (int j = 0; j <= i; j++) {
+							query.setObject(index++, last[j]);
+						}
+					}
+				}
+
+				try (ResultSet resultSet = query.executeQuery()) {
+					while (resultSet.next()) {
+						Object[] values = new Object[columns.length];
+						for (int i = 0; i < columns.length; i++) {
+							values[i] = resultSet.getObject(i + 1);
+							Object value = values[i];
+							if (textUUID[i] && value != null) {
+								value = ColumnCodecs.toBytes(UUID.fromString(value.toString().trim()));
+							}
+							batch.setObject(i + 1, value);
+						}
+						batch.addBatch();
+
+						last = new Object[primaryIndexes.length]; //Raw values, since the position is compared against the old table
+						for (int i = 0; i < primaryIndexes.length; i++) {
+							last[i] = values[primaryIndexes[i]];
+						}
+						rows++;
+					}
+				}
+				if (rows > 0) {
+					batch.executeBatch();
+				}
+			}
+			connection.commit();
+			database.getQueryStats().record(insert, start, 0, rows, null);
+
+			copied += rows;
+			OsmiumLogger.debug("Migrated " + copied + " rows of " + table.getName());
+			if (rows < chunkSize) {
+				return copied;
+			}
+		}
+	}
+
+	/**
+	 * Creates a condition matching the rows after a primary key, in the form:
+	 * (a > ?) OR (a = ? AND b > ?)
+	 */
+	private String getAfterCondition() {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < primaryIndexes.length; i++) {
+			sb.append(i > 0 ? " OR (" : "(");
+			for (int j = 0; j < i; j++) {
+				sb.append(columns[primaryIndexes[j]]).append(" = ? AND ");
+			}
+			sb.append(columns[primaryIndexes[i]]).append(" > ?)");
+		}
+		return sb.append(")").toString();
+	}
+
+	private boolean findTextColumns(DatabaseMetaData meta, String catalog) throws SQLException {
+		boolean found = false;
+		ColumnData[] columnData = table.getColumns();
+		for (int i = 0; i < columnData.length; i++) {
+			if (!columnData[i].isBinaryUUID()) {
+				continue;
+			}
+			try (ResultSet resultSet = meta.getColumns(catalog, null, table.getName(), columnData[i].getName())) {
+				if (resultSet.next()) {
+					String type = resultSet.getString("TYPE_NAME").toUpperCase();
+					textUUID[i] = !type.contains("BINARY") && !type.contains("BLOB");
+					found |= textUUID[i];
+				}
+			}
+		}
+		return found;
+	}
+
+	private static boolean exists(DatabaseMetaData meta, String catalog, String table) throws SQLException {
+		try (ResultSet resultSet = meta.getTables(catalog, null, table, null)) {
+			return resultSet.next();
+		}
+	}
+
+	private static void update(Connection connection, String update) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate(update);
+		}
+	}
+
+}
@@ -28,4 +28,11 @@ public @interface DBColumn {
 
 	String defaultValue() default SQL.NULL;
 
+	/**
+	 * How the column is stored if it is a UUID
+	 * 
+	 * @return the UUID storage of this column
+	 */
+	UUIDStorage uuidStorage() default UUIDStorage.DEFAULT;
+
 }
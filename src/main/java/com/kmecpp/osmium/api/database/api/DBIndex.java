@@ -0,0 +1,47 @@
+package com.kmecpp.osmium.api.database.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a secondary index on a table, over one or more columns in the
+ * given order. An index on the columns a query filters or orders by lets the
+ * database find the rows without scanning the whole table. Indexes are
+ * created with the table, and indexes that were changed or removed from the
+ * table class are updated when the table is created again on startup.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(DBIndexes.class)
+public @interface DBIndex {
+
+	/**
+	 * The columns or fields of the index. Composite indexes can be used by
+	 * queries that filter by a leading subset of their columns.
+	 */
+	String[] columns();
+
+	/**
+	 * The name of the index, by default "idx_" followed by the table and
+	 * column names. Only indexes with default names are dropped automatically
+	 * when they are removed from the table class.
+	 */
+	String name() default "";
+
+	/**
+	 * Whether the indexed values must be unique
+	 */
+	boolean unique() default false;
+
+	/**
+	 * The number of leading characters of each string column that are
+	 * indexed, in the same order as the columns, where 0 indexes the whole
+	 * value. MySQL requires a prefix length for TEXT columns. SQLite always
+	 * indexes whole values.
+	 */
+	int[] prefixLengths() default {};
+
+}
@@ -0,0 +1,17 @@
+package com.kmecpp.osmium.api.database.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Holds the {@link DBIndex} annotations of a table with multiple indexes
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DBIndexes {
+
+	DBIndex[] value();
+
+}
@@ -0,0 +1,31 @@
+package com.kmecpp.osmium.api.database.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a field as the row of another table that this row refers to, for
+ * example the owner of a home. The field is not a column. It is filled by
+ * {@link SelectQuery#fetch(String...)} or
+ * {@link com.kmecpp.osmium.api.database.SQLDatabase#fetch(Class, java.util.List, String...)},
+ * which load the related rows of every row in a single query, and is never
+ * written.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DBManyToOne {
+
+	/**
+	 * The column or field of this table that holds the key of the related row
+	 */
+	String column();
+
+	/**
+	 * The column or field of the related table that is referred to, by default
+	 * the primary key
+	 */
+	String references() default "";
+
+}
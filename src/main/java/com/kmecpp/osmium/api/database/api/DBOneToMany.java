@@ -0,0 +1,31 @@
+package com.kmecpp.osmium.api.database.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a field of type {@code List<Child>} as the rows of another table
+ * that refer to this row, for example a player's homes. The field is not a
+ * column. It is filled by {@link SelectQuery#fetch(String...)} or
+ * {@link com.kmecpp.osmium.api.database.SQLDatabase#fetch(Class, java.util.List, String...)},
+ * which load the children of every row in a single query, and is never
+ * written. Children are saved through their own table.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DBOneToMany {
+
+	/**
+	 * The column or field of the child table that holds the key of this row
+	 */
+	String column();
+
+	/**
+	 * The column or field of this table that the child column refers to, by
+	 * default the primary key
+	 */
+	String references() default "";
+
+}
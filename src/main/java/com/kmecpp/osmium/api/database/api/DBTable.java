@@ -15,4 +15,31 @@ public @interface DBTable {
 
 	boolean autoCreate() default true;
 
+	/**
+	 * The maximum number of rows to cache by primary key, or 0 to disable
+	 * caching. Cached rows are kept up to date by writes made through the same
+	 * database, but not by raw SQL updates.
+	 */
+	int cacheSize() default 0;
+
+	/**
+	 * How long cached rows stay valid in seconds, or 0 if they never expire
+	 */
+	int cacheExpireSeconds() default 0;
+
+	/**
+	 * The maximum number of rows whose last loaded or saved state is
+	 * remembered, or 0 to disable dirty tracking. When enabled, saving a row
+	 * only updates the columns that changed and rows that did not change are
+	 * not written at all. Tables without a primary key are not tracked.
+	 */
+	int dirtyTracking() default 0;
+
+	/**
+	 * Whether reads of this table use the database's read replicas, if any are
+	 * configured. Reads for a player who recently wrote to the database still
+	 * use the primary, see {@link SQLConfig#withReadYourWrites(long)}.
+	 */
+	boolean replicaReads() default false;
+
 }
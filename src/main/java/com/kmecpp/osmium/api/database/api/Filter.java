@@ -5,6 +5,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 
 import com.kmecpp.osmium.api.database.DBUtil;
+import com.kmecpp.osmium.api.database.TableData;
 
 public class Filter {
 
@@ -66,10 +67,33 @@ public class Filter {
 		return values.get(filterIndex);
 	}
 
+	public Object[] getValues() {
+		return values.toArray();
+	}
+
 	public void link(PreparedStatement ps) throws SQLException {
 		for (int i = 0; i < filters.size(); i++) {
 			DBUtil.updatePreparedStatement(ps, i + 1, values.get(i));
 		}
 	}
 
+	/**
+	 * Binds the filter values using the storage format of the filtered columns,
+	 * which is required for columns such as binary UUIDs
+	 */
+	public void link(PreparedStatement ps, TableData table) throws SQLException {
+		for (int i = 0; i < filters.size(); i++) {
+			table.bind(ps, i + 1, getColumn(i), values.get(i));
+		}
+	}
+
+	public String getColumn(int filterIndex) {
+		String filter = filters.get(filterIndex).trim();
+		int end = filter.length();
+		while (end > 0 && "=<>! ".indexOf(filter.charAt(end - 1)) != -1) {
+			end--;
+		}
+		return filter.substring(0, end);
+	}
+
 }
@@ -0,0 +1,46 @@
+package com.kmecpp.osmium.api.database.api;
+
+import java.util.List;
+
+/**
+ * A page of rows returned by keyset pagination. The continuation token
+ * identifies where the next page starts and can be passed back to the query
+ * to fetch it. Tokens are only valid for the table and sort order they were
+ * created with. To allow going back, callers can keep the tokens of the pages
+ * they have already visited.
+ */
+public class Page<T> {
+
+	private final List<T> rows;
+	private final String continuationToken;
+
+	public Page(List<T> rows, String continuationToken) {
+		this.rows = rows;
+		this.continuationToken = continuationToken;
+	}
+
+	public List<T> getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the token for the next page or null if this is the last page
+	 */
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+
+	public boolean hasNext() {
+		return continuationToken != null;
+	}
+
+	public boolean isEmpty() {
+		return rows.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "Page[rows: " + rows.size() + ", next: " + continuationToken + "]";
+	}
+
+}
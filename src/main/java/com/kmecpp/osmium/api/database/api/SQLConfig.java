@@ -1,7 +1,13 @@
 package com.kmecpp.osmium.api.database.api;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class SQLConfig implements Cloneable {
 
+	public static final int DEFAULT_READ_QUEUE_CAPACITY = 1000;
+	public static final long DEFAULT_READ_YOUR_WRITES_MILLIS = 1000;
+
 	private final String tablePrefix;
 	private final String host;
 	private final String database;
@@ -12,6 +18,28 @@ public class SQLConfig implements Cloneable {
 	private int minimumIdle = 2;
 	private int maximumPoolSize = 10;
 	private boolean allowMultiQueries;
+	private int statementCacheSize = 250;
+	private int fetchSize;
+	private int readThreads;
+	private int readQueueCapacity = DEFAULT_READ_QUEUE_CAPACITY;
+	private boolean writeAheadLog = true;
+	private boolean sharedPool;
+	private long incrementFlushMillis;
+	private int incrementFlushThreshold = 1000;
+	private UUIDStorage uuidStorage = UUIDStorage.TEXT;
+	private ArrayList<String> replicaHosts = new ArrayList<>();
+	private ArrayList<String> replicaUrls = new ArrayList<>();
+	private long readYourWritesMillis = DEFAULT_READ_YOUR_WRITES_MILLIS;
+	private int queryCacheRows;
+
+	private int batchSize = 1;
+	private long batchLingerMillis = 50;
+	private boolean writeCoalescing = true;
+	private int queueLanes;
+	private ContextCapture contextCapture = ContextCapture.LAZY;
+	private int contextSampleRate = 100;
+	private int queueCapacity;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
 
 	private SQLConfig(String tablePrefix, String host, int port, String database, String username, String password) {
 		this.tablePrefix = tablePrefix;
@@ -66,6 +94,97 @@ public class SQLConfig implements Cloneable {
 		return allowMultiQueries;
 	}
 
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	public int getReadThreads() {
+		return readThreads;
+	}
+
+	public int getReadQueueCapacity() {
+		return readQueueCapacity;
+	}
+
+	public long getIncrementFlushMillis() {
+		return incrementFlushMillis;
+	}
+
+	public int getIncrementFlushThreshold() {
+		return incrementFlushThreshold;
+	}
+
+	public UUIDStorage getUUIDStorage() {
+		return uuidStorage;
+	}
+
+	/**
+	 * Gets the "host:port" addresses of the MySQL read replicas
+	 */
+	public List<String> getReplicaHosts() {
+		return replicaHosts;
+	}
+
+	public List<String> getReplicaUrls() {
+		return replicaUrls;
+	}
+
+	public boolean hasReplicas() {
+		return !replicaHosts.isEmpty() || !replicaUrls.isEmpty();
+	}
+
+	public long getReadYourWritesMillis() {
+		return readYourWritesMillis;
+	}
+
+	public int getQueryCacheRows() {
+		return queryCacheRows;
+	}
+
+	public boolean isSharedPool() {
+		return sharedPool;
+	}
+
+	public boolean isWriteAheadLog() {
+		return writeAheadLog;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public long getBatchLingerMillis() {
+		return batchLingerMillis;
+	}
+
+	public boolean isWriteCoalescing() {
+		return writeCoalescing;
+	}
+
+	public int getQueueLanes() {
+		return queueLanes;
+	}
+
+	public ContextCapture getContextCapture() {
+		return contextCapture;
+	}
+
+	public int getContextSampleRate() {
+		return contextSampleRate;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
 	public SQLConfig withPoolSize(int minimumIdle, int maximumPoolSize) {
 		this.minimumIdle = minimumIdle;
 		this.maximumPoolSize = maximumPoolSize;
@@ -77,13 +196,315 @@ public class SQLConfig implements Cloneable {
 		return this;
 	}
 
+	/**
+	 * Sets how many prepared statements the MySQL driver caches per
+	 * connection. Cached statements are prepared once on the server and
+	 * reused for every execution of the same SQL.
+	 * 
+	 * @param statementCacheSize
+	 *            the number of statements to cache or 0 to disable caching
+	 * @return this config
+	 */
+	public SQLConfig withStatementCache(int statementCacheSize) {
+		this.statementCacheSize = Math.max(0, statementCacheSize);
+		return this;
+	}
+
+	/**
+	 * Sets how many rows are fetched from the database at a time by cursors
+	 * and streams. By default MySQL streams rows one at a time as they are
+	 * read.
+	 * 
+	 * @param fetchSize
+	 *            the number of rows per fetch or 0 to use the default
+	 * @return this config
+	 */
+	public SQLConfig withFetchSize(int fetchSize) {
+		this.fetchSize = Math.max(0, fetchSize);
+		return this;
+	}
+
+	/**
+	 * Configures the thread pool used for asynchronous reads
+	 * 
+	 * @param threads
+	 *            the number of read threads or 0 to use one per pooled
+	 *            connection
+	 * @param queueCapacity
+	 *            the maximum number of reads waiting for a thread. Reads
+	 *            submitted to a full queue fail immediately.
+	 * @return this config
+	 */
+	public SQLConfig withReadPool(int threads, int queueCapacity) {
+		this.readThreads = Math.max(0, threads);
+		this.readQueueCapacity = Math.max(1, queueCapacity);
+		return this;
+	}
+
+	/**
+	 * Sets whether this database leases connections from a pool shared with
+	 * every other plugin that connects to the same MySQL database with the
+	 * same credentials, instead of opening its own pool. The maximum pool
+	 * size then limits how many of the shared connections this plugin can
+	 * use at once. The size of the shared pool itself is set in the Osmium
+	 * configuration.
+	 * 
+	 * @param sharedPool
+	 *            whether to use the shared pool
+	 * @return this config
+	 */
+	public SQLConfig withSharedPool(boolean sharedPool) {
+		this.sharedPool = sharedPool;
+		return this;
+	}
+
+	/**
+	 * Adds a MySQL read replica of the database, which is connected to with
+	 * the same database name, credentials and pool size as the primary. Reads
+	 * of tables with {@link DBTable#replicaReads()} enabled and reads made
+	 * through
+	 * {@link com.kmecpp.osmium.api.database.SQLDatabase#fromReplica(java.util.function.Supplier)}
+	 * are spread across the replicas, while writes always go to the primary.
+	 * 
+	 * @param host
+	 *            the replica's host
+	 * @param port
+	 *            the replica's port
+	 * @return this config
+	 */
+	public SQLConfig withReplica(String host, int port) {
+		this.replicaHosts.add(host + ":" + port);
+		return this;
+	}
+
+	/**
+	 * Adds a read replica with the given JDBC URL, for example a copy of an
+	 * SQLite database file. The driver settings and credentials of the primary
+	 * are used.
+	 * 
+	 * @param jdbcUrl
+	 *            the replica's JDBC URL
+	 * @return this config
+	 * @see #withReplica(String, int)
+	 */
+	public SQLConfig withReplicaUrl(String jdbcUrl) {
+		this.replicaUrls.add(jdbcUrl);
+		return this;
+	}
+
+	/**
+	 * Sets how long a player's reads use the primary after a row containing
+	 * their UUID is written, so they always see their own writes even when
+	 * the replicas lag behind. This should be at least the expected
+	 * replication lag.
+	 * 
+	 * @param millis
+	 *            the length of the window or 0 to always use the replicas
+	 * @return this config
+	 */
+	public SQLConfig withReadYourWrites(long millis) {
+		this.readYourWritesMillis = Math.max(0, millis);
+		return this;
+	}
+
+	/**
+	 * Enables the query result cache used by
+	 * {@link com.kmecpp.osmium.api.database.api.SQLInterfaces.SelectInterfaces.SIBase#cached(long)}
+	 * and {@link com.kmecpp.osmium.api.database.SQLDatabase#queryCached(Class, String, long)}.
+	 * Cached results are removed when a table they read from is written
+	 * through the database. Tables that are written by other servers or
+	 * plugins should only be cached with short expiry times.
+	 * 
+	 * @param maxRows
+	 *            the maximum number of rows held by all cached results or 0
+	 *            to disable the cache
+	 * @return this config
+	 */
+	public SQLConfig withQueryCache(int maxRows) {
+		this.queryCacheRows = Math.max(0, maxRows);
+		return this;
+	}
+
+	/**
+	 * Sets whether SQLite databases use write ahead logging. When enabled,
+	 * writes are serialized through a single connection while reads use a
+	 * separate pool of read only connections and run concurrently with the
+	 * writer. This is enabled by default and has no effect on MySQL.
+	 * 
+	 * @param writeAheadLog
+	 *            whether to use WAL mode
+	 * @return this config
+	 */
+	public SQLConfig withWriteAheadLog(boolean writeAheadLog) {
+		this.writeAheadLog = writeAheadLog;
+		return this;
+	}
+
+	/**
+	 * Sets how UUID columns are stored unless the column specifies its own
+	 * storage with {@link DBColumn#uuidStorage()}. Existing tables are not
+	 * converted automatically, see
+	 * {@link com.kmecpp.osmium.api.database.SQLDatabase#migrateUUIDColumns(Class, int)}.
+	 * 
+	 * @param uuidStorage
+	 *            the UUID storage, TEXT by default
+	 * @return this config
+	 */
+	public SQLConfig withUUIDStorage(UUIDStorage uuidStorage) {
+		this.uuidStorage = uuidStorage == UUIDStorage.DEFAULT ? UUIDStorage.TEXT : uuidStorage;
+		return this;
+	}
+
+	/**
+	 * Enables the increment accumulator. Increments made with
+	 * {@link com.kmecpp.osmium.api.database.SQLDatabase#increment(Class, String, long, Object...)} are summed
+	 * in memory and written every flushIntervalMillis, or sooner once
+	 * flushThreshold rows have pending increments. Pending increments are
+	 * included when rows are read and are written when the database shuts
+	 * down.
+	 * 
+	 * @param flushIntervalMillis
+	 *            the time between flushes. 0 disables the accumulator
+	 * @param flushThreshold
+	 *            the number of rows with pending increments that triggers an
+	 *            early flush
+	 * @return this config
+	 */
+	public SQLConfig withIncrementAccumulator(long flushIntervalMillis, int flushThreshold) {
+		this.incrementFlushMillis = Math.max(0, flushIntervalMillis);
+		this.incrementFlushThreshold = Math.max(1, flushThreshold);
+		return this;
+	}
+
+	/**
+	 * Enables batching of asynchronous REPLACE INTO writes. Up to batchSize
+	 * queued writes are collected, waiting at most lingerMillis for more to
+	 * arrive, and are executed in a single transaction.
+	 * 
+	 * @param batchSize
+	 *            the maximum number of writes per batch. 1 disables batching
+	 * @param lingerMillis
+	 *            the maximum time to wait for a batch to fill up
+	 * @return this config
+	 */
+	public SQLConfig withBatching(int batchSize, long lingerMillis) {
+		this.batchSize = Math.max(1, batchSize);
+		this.batchLingerMillis = Math.max(0, lingerMillis);
+		return this;
+	}
+
+	/**
+	 * Sets whether asynchronous REPLACE INTO writes for a row that is still
+	 * waiting in the queue should be merged into the pending write instead of
+	 * being queued again. This is enabled by default.
+	 * 
+	 * @param writeCoalescing
+	 *            whether to coalesce pending writes by primary key
+	 * @return this config
+	 */
+	public SQLConfig withWriteCoalescing(boolean writeCoalescing) {
+		this.writeCoalescing = writeCoalescing;
+		return this;
+	}
+
+	/**
+	 * Sets the number of worker threads used to execute asynchronous database
+	 * tasks. Writes to the same row are always executed on the same lane. By
+	 * default MySQL databases use one lane per pooled connection and SQLite
+	 * databases use a single lane.
+	 * 
+	 * @param queueLanes
+	 *            the number of lanes or 0 to use the default
+	 * @return this config
+	 */
+	public SQLConfig withQueueLanes(int queueLanes) {
+		this.queueLanes = Math.max(0, queueLanes);
+		return this;
+	}
+
+	/**
+	 * Sets how the call site of asynchronous database tasks is recorded. The
+	 * call site is printed if the task fails.
+	 * 
+	 * @param contextCapture
+	 *            the capture mode
+	 * @param sampleRate
+	 *            for {@link ContextCapture#SAMPLED}, the call site is recorded
+	 *            for one in every sampleRate tasks
+	 * @return this config
+	 */
+	public SQLConfig withContextCapture(ContextCapture contextCapture, int sampleRate) {
+		this.contextCapture = contextCapture;
+		this.contextSampleRate = Math.max(1, sampleRate);
+		return this;
+	}
+
+	/**
+	 * Limits the number of tasks that can wait on each lane of the database
+	 * queue
+	 * 
+	 * @param capacity
+	 *            the maximum number of waiting tasks per lane or 0 for no limit
+	 * @param overflowPolicy
+	 *            what to do when a task is submitted to a full lane. Tasks are
+	 *            never run on the submitting thread instead, since they would
+	 *            overtake the tasks for the same row that are still queued.
+	 * @return this config
+	 */
+	public SQLConfig withQueueCapacity(int capacity, OverflowPolicy overflowPolicy) {
+		this.queueCapacity = Math.max(0, capacity);
+		this.overflowPolicy = overflowPolicy;
+		return this;
+	}
+
 	@Override
 	public SQLConfig clone() {
 		try {
-			return (SQLConfig) super.clone();
+			SQLConfig clone = (SQLConfig) super.clone();
+			clone.replicaHosts = new ArrayList<>(replicaHosts);
+			clone.replicaUrls = new ArrayList<>(replicaUrls);
+			return clone;
 		} catch (CloneNotSupportedException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	public static enum ContextCapture {
+
+		/**
+		 * The call site is never recorded
+		 */
+		OFF,
+
+		/**
+		 * The call site is recorded for one in every N tasks
+		 */
+		SAMPLED,
+
+		/**
+		 * The call site is recorded for every task as a Throwable. The stack
+		 * trace elements are only resolved if the task fails.
+		 */
+		LAZY,
+
+		;
+
+	}
+
+	public static enum OverflowPolicy {
+
+		/**
+		 * The submitting thread waits until there is space in the queue
+		 */
+		BLOCK,
+
+		/**
+		 * A RejectedExecutionException is thrown
+		 */
+		REJECT,
+
+		;
+
+	}
+
 }
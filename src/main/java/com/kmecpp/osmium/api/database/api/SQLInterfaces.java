@@ -2,7 +2,11 @@ package com.kmecpp.osmium.api.database.api;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+import com.kmecpp.osmium.api.database.DatabaseFuture;
 import com.kmecpp.osmium.api.database.api.JoinClause.JoinType;
 import com.kmecpp.osmium.api.util.Pagination;
 
@@ -12,6 +16,55 @@ public interface SQLInterfaces {
 
 		public static interface SIBase<T> extends SIWhere<T> {
 
+			/**
+			 * Reads the query from a read replica, if any are configured,
+			 * unless the filter contains a player who recently wrote to the
+			 * database
+			 */
+			SIBase<T> fromReplica();
+
+			/**
+			 * Reads the query from the primary, even if the table reads from
+			 * the replicas by default
+			 */
+			SIBase<T> fromPrimary();
+
+			/**
+			 * Loads the given relations of the rows returned by
+			 * {@link SITerminal#execute()} and {@link SILimit#seek(int, String)}.
+			 * Each relation takes one extra query for all of the rows.
+			 * 
+			 * @param relations
+			 *            the names of the relation fields
+			 * @see com.kmecpp.osmium.api.database.SQLDatabase#fetch(Class, List, String...)
+			 */
+			SIBase<T> fetch(String... relations);
+
+			/**
+			 * Loads the given one to many relations of the returned rows the
+			 * first time any of them is accessed
+			 * 
+			 * @see com.kmecpp.osmium.api.database.SQLDatabase#fetchLazy(Class, List, String...)
+			 */
+			SIBase<T> fetchLazy(String... relations);
+
+			/**
+			 * Reuses the result of the query for up to the given time, until
+			 * one of the tables it reads from is written through the database.
+			 * This applies to the terminal operations that return lists or
+			 * aggregates, but not to streams, pages, primitive arrays or
+			 * {@link SITerminal#transform(ResultSetTransformer)}. Cached lists
+			 * are unmodifiable and their rows are shared with other callers,
+			 * so cached queries cannot load relations.
+			 * <p>
+			 * Has no effect unless the query cache is enabled.
+			 * 
+			 * @param ttlMillis
+			 *            how long the result may be reused
+			 * @see com.kmecpp.osmium.api.database.api.SQLConfig#withQueryCache(int)
+			 */
+			SIBase<T> cached(long ttlMillis);
+
 			SIWhere<T> join(JoinClause join);
 
 			default SIWhere<T> leftJoin(String table, String criteria) {
@@ -82,12 +135,31 @@ public interface SQLInterfaces {
 
 			SITerminal<T> limit(int offset, int rowCount);
 
+			/**
+			 * Executes the query using keyset pagination, which is much faster
+			 * than {@link #page(int, int)} for deep pages. The query must be
+			 * ordered, and the primary key is used as a tiebreaker.
+			 * 
+			 * @param pageSize
+			 *            the maximum number of rows on the page
+			 * @param continuationToken
+			 *            the token of the previous page, or null for the first
+			 *            page
+			 * @return the page, including the token of the next page
+			 */
+			Page<T> seek(int pageSize, String continuationToken);
+
 		}
 
 		public static interface SITerminal<T> {
 
 			List<T> execute();
 
+			/**
+			 * Executes the query on the database's read pool
+			 */
+			DatabaseFuture<List<T>> executeAsync();
+
 			default Optional<T> get() {
 				List<T> result = this.execute();
 				if (result.size() > 1) {
@@ -96,6 +168,76 @@ public interface SQLInterfaces {
 				return result.isEmpty() ? Optional.empty() : Optional.of(result.get(0));
 			}
 
+			/**
+			 * Lazily maps the rows of the query as the stream is consumed. The
+			 * stream holds a database connection until it is closed, so it
+			 * should be used in a try-with-resources statement.
+			 */
+			Stream<T> stream();
+
+			/**
+			 * Performs the given action for every row of the query without
+			 * loading the whole result into memory
+			 */
+			default void forEach(Consumer<? super T> action) {
+				try (Stream<T> stream = stream()) {
+					stream.forEach(action);
+				}
+			}
+
+			/**
+			 * Reads only the given columns into table objects. The fields of
+			 * the other columns are left at their defaults, so the objects
+			 * must not be saved back to the table.
+			 */
+			List<T> executeColumns(String... columns);
+
+			/**
+			 * Reads the given columns of every row
+			 */
+			default List<Tuple> getTuples(String... columns) {
+				return map(tuple -> tuple, columns);
+			}
+
+			/**
+			 * Reads the given columns of every row and converts each row with
+			 * the given function, for example into a small record class
+			 */
+			<R> List<R> map(Function<Tuple, ? extends R> mapper, String... columns);
+
+			/**
+			 * Reads a single column of every row
+			 */
+			<V> List<V> getColumn(String column);
+
+			/**
+			 * Reads a numeric column of every row without boxing the values.
+			 * Null values are read as 0.
+			 */
+			int[] getInts(String column);
+
+			long[] getLongs(String column);
+
+			double[] getDoubles(String column);
+
+			long count();
+
+			/**
+			 * Sums an integer column, or returns 0 if no rows match
+			 */
+			long sum(String column);
+
+			double sumDouble(String column);
+
+			/**
+			 * Averages a numeric column, or returns 0 if no rows match
+			 */
+			double average(String column);
+
+			<V> Optional<V> min(String column);
+
+			<V> Optional<V> max(String column);
+
 			<R> R transform(ResultSetTransformer<R> resultHandler);
 
 			default void process(ResultSetProcessor resultHandler) {
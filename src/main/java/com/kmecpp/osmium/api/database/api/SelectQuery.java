@@ -4,8 +4,16 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import com.kmecpp.osmium.api.database.DatabaseFuture;
+import com.kmecpp.osmium.api.database.IncrementAccumulator;
+import com.kmecpp.osmium.api.database.Projection;
 import com.kmecpp.osmium.api.database.SQLDatabase;
 import com.kmecpp.osmium.api.database.TableData;
 import com.kmecpp.osmium.api.database.api.SQLInterfaces.SelectInterfaces.SIBase;
@@ -16,6 +24,7 @@ import com.kmecpp.osmium.api.database.api.SQLInterfaces.SelectInterfaces.SITermi
 import com.kmecpp.osmium.api.database.api.SQLInterfaces.SelectInterfaces.SIWhere;
 import com.kmecpp.osmium.api.logging.OsmiumLogger;
 import com.kmecpp.osmium.api.util.IOUtil;
+import com.kmecpp.osmium.api.util.Reflection;
 
 public class SelectQuery<T> implements SIBase<T> {
 
@@ -27,6 +36,10 @@ public class SelectQuery<T> implements SIBase<T> {
 	private OrderBy orderBy;
 	private Filter filter;
 	private LimitClause limit;
+	private Boolean replica;
+	private String[] fetch;
+	private String[] fetchLazy;
+	private long cacheMillis;
 
 	public SelectQuery(SQLDatabase database, Class<T> tableClass) {
 		this.database = database;
@@ -38,46 +51,288 @@ public class SelectQuery<T> implements SIBase<T> {
 
 	@Override
 	public List<T> execute() {
-		return transform(resultSet -> {
-			try {
-				ArrayList<T> result = new ArrayList<>();
-				while (resultSet.next()) {
-					result.add(this.database.parse(resultSet, tableData));
+		if (cacheMillis > 0 && (fetch != null || fetchLazy != null)) {
+			throw new IllegalStateException("Cached queries cannot load relations because their rows are shared!");
+		}
+		return loadRelations(this.<List<T>> transform("rows", createQuery(tableData.getStatements().getSelectAll()), resultSet -> {
+			return this.database.parseAll(resultSet, tableData);
+		}));
+	}
+
+	@Override
+	public DatabaseFuture<List<T>> executeAsync() {
+		return this.database.readAsync(this::execute);
+	}
+
+	@Override
+	public Stream<T> stream() {
+		return route(() -> this.database.<T> cursor(tableData, createQuery(tableData.getStatements().getSelectAll()), filter != null ? ps -> filter.link(ps, tableData) : null).stream());
+	}
+
+	@Override
+	public Page<T> seek(int pageSize, String continuationToken) {
+		if (orderBy == null) {
+			throw new IllegalStateException("Keyset pagination requires an order by clause!");
+		} else if (groupBy != null || limit != null) {
+			throw new IllegalStateException("Keyset pagination cannot be combined with group by or limit clauses!");
+		}
+		Page<T> page = route(() -> this.database.seek(tableData, this.tableData.getStatements().getSelectAll() + (join != null ? join : ""), filter, orderBy, pageSize, continuationToken));
+		loadRelations(page.getRows());
+		return page;
+	}
+
+	/**
+	 * Loads the relations requested by {@link #fetch(String...)} and
+	 * {@link #fetchLazy(String...)}
+	 */
+	private <L extends List<T>> L loadRelations(L rows) {
+		Class<T> tableClass = Reflection.cast(tableData.getTableClass());
+		if (fetch != null) {
+			route(() -> database.fetch(tableClass, rows, fetch));
+		}
+		if (fetchLazy != null) {
+			database.fetchLazy(tableClass, rows, fetchLazy);
+		}
+		return rows;
+	}
+
+	@Override
+	public List<T> executeColumns(String... columns) {
+		Projection projection = tableData.getProjection(columns);
+		return transform("objects", createQuery(projection.getSelect()), resultSet -> {
+			ArrayList<T> result = new ArrayList<>();
+			while (resultSet.next()) {
+				result.add(projection.readObject(resultSet));
+			}
+			return result;
+		});
+	}
+
+	@Override
+	public <R> List<R> map(Function<Tuple, ? extends R> mapper, String... columns) {
+		Projection projection = tableData.getProjection(columns);
+		List<Tuple> tuples = transform("tuples", createQuery(projection.getSelect()), resultSet -> {
+			ArrayList<Tuple> result = new ArrayList<>();
+			while (resultSet.next()) {
+				result.add(projection.readTuple(resultSet));
+			}
+			return result;
+		});
+		ArrayList<R> result = new ArrayList<>(tuples.size());
+		for (Tuple tuple : tuples) {
+			result.add(mapper.apply(tuple));
+		}
+		return result;
+	}
+
+	@Override
+	public <V> List<V> getColumn(String column) {
+		Projection projection = tableData.getProjection(column);
+		return transform("column", createQuery(projection.getSelect()), resultSet -> {
+			ArrayList<V> result = new ArrayList<>();
+			while (resultSet.next()) {
+				result.add(Reflection.cast(projection.read(resultSet, 0)));
+			}
+			return result;
+		});
+	}
+
+	@Override
+	public int[] getInts(String column) {
+		return read(createQuery(tableData.getProjection(column).getSelect()), resultSet -> {
+			int[] values = new int[16];
+			int size = 0;
+			while (resultSet.next()) {
+				if (size == values.length) {
+					values = Arrays.copyOf(values, size * 2);
+				}
+				values[size++] = resultSet.getInt(1);
+			}
+			return Arrays.copyOf(values, size);
+		});
+	}
+
+	@Override
+	public long[] getLongs(String column) {
+		return read(createQuery(tableData.getProjection(column).getSelect()), resultSet -> {
+			long[] values = new long[16];
+			int size = 0;
+			while (resultSet.next()) {
+				if (size == values.length) {
+					values = Arrays.copyOf(values, size * 2);
 				}
-				return result;
-			} catch (Exception e) {
-				throw new RuntimeException(e);
+				values[size++] = resultSet.getLong(1);
 			}
+			return Arrays.copyOf(values, size);
+		});
+	}
+
+	@Override
+	public double[] getDoubles(String column) {
+		return read(createQuery(tableData.getProjection(column).getSelect()), resultSet -> {
+			double[] values = new double[16];
+			int size = 0;
+			while (resultSet.next()) {
+				if (size == values.length) {
+					values = Arrays.copyOf(values, size * 2);
+				}
+				values[size++] = resultSet.getDouble(1);
+			}
+			return Arrays.copyOf(values, size);
+		});
+	}
+
+	@Override
+	public long count() {
+		return aggregate("COUNT", null, resultSet -> resultSet.getLong(1));
+	}
+
+	@Override
+	public long sum(String column) {
+		return aggregate("SUM", column, resultSet -> resultSet.getLong(1));
+	}
+
+	@Override
+	public double sumDouble(String column) {
+		return aggregate("SUM", column, resultSet -> resultSet.getDouble(1));
+	}
+
+	@Override
+	public double average(String column) {
+		return aggregate("AVG", column, resultSet -> resultSet.getDouble(1));
+	}
+
+	@Override
+	public <V> Optional<V> min(String column) {
+		Projection projection = tableData.getProjection(column);
+		return aggregate("MIN", column, resultSet -> Optional.ofNullable(Reflection.cast(projection.read(resultSet, 0))));
+	}
+
+	@Override
+	public <V> Optional<V> max(String column) {
+		Projection projection = tableData.getProjection(column);
+		return aggregate("MAX", column, resultSet -> Optional.ofNullable(Reflection.cast(projection.read(resultSet, 0))));
+	}
+
+	/**
+	 * Applies an aggregate function to a column, or to every row if the column
+	 * is null. Grouped or limited queries are aggregated as a subquery, so the
+	 * function applies to the rows the query would return.
+	 */
+	private <R> R aggregate(String function, String column, ResultSetTransformer<R> reader) {
+		String argument = column != null ? tableData.getProjection(column).getColumnList() : "*";
+		String query;
+		if (groupBy == null && limit == null) {
+			query = createQuery("SELECT " + function + "(" + argument + ") FROM " + tableData.getName());
+		} else {
+			query = "SELECT " + function + "(" + (column != null ? "projected" : "*") + ") FROM ("
+					+ createQuery("SELECT " + (column != null ? argument : "1") + " AS projected FROM " + tableData.getName())
+					+ ") AS projection";
+		}
+		return transform("aggregate", query, resultSet -> {
+			resultSet.next(); //Aggregates without a group by always return one row
+			return reader.process(resultSet);
 		});
 	}
 
 	@Override
 	public <R> R transform(ResultSetTransformer<R> resultHandler) {
-		String query = "SELECT * FROM " + this.tableData.getName()
-				+ (join != null ? join : "")
-				+ (filter != null ? filter.createParameterizedStatement() : "")
-				+ (groupBy != null ? groupBy : "")
-				+ (orderBy != null ? orderBy : "")
-				+ (limit != null ? limit : "");
+		return read(createQuery(tableData.getStatements().getSelectAll()), resultHandler);
+	}
 
+	/**
+	 * Executes the given query, or reuses its cached result if
+	 * {@link #cached(long)} was called. The kind of result is part of the
+	 * cache key, since different results can be read from the same query.
+	 */
+	private <R> R transform(String kind, String query, ResultSetTransformer<R> resultHandler) {
+		if (cacheMillis <= 0) {
+			return read(query, resultHandler);
+		}
+		Object[] params = { kind, filter != null ? filter.getValues() : null };
+		return database.cached(query, params, cacheMillis, () -> read(query, resultHandler));
+	}
+
+	private <R> R read(String query, ResultSetTransformer<R> resultHandler) {
+		IncrementAccumulator increments = database.getIncrements();
 		Connection connection = null;
 		PreparedStatement statement = null;
 		ResultSet resultSet = null;
+		if (increments != null) {
+			increments.hold(); //Rows are read and their pending increments applied without a flush in between
+		}
 		try {
 			OsmiumLogger.debug("Executing query: \"" + query + "\"");
-			connection = this.database.getConnection();
+			long start = System.nanoTime();
+			connection = route(() -> this.database.getReadConnection(tableData, filter != null ? filter.getValues() : null));
+			long poolWait = System.nanoTime() - start;
 			statement = connection.prepareStatement(query);
 			if (filter != null) {
-				filter.link(statement);
+				filter.link(statement, tableData);
 			}
 			resultSet = statement.executeQuery();
-			return resultHandler.process(resultSet);
+			R result = resultHandler.process(resultSet);
+			this.database.getQueryStats().record(query, start, poolWait, result instanceof List ? ((List<?>) result).size() : -1, statement);
+			return result;
 		} catch (Exception e) {
 			OsmiumLogger.error("Failed to execute database query: \"" + query + "\"");
 			throw new RuntimeException(e);
 		} finally {
 			IOUtil.close(connection, statement, resultSet);
+			if (increments != null) {
+				increments.release();
+			}
+		}
+	}
+
+	/**
+	 * Runs the given read with the route chosen by {@link #fromReplica()} or
+	 * {@link #fromPrimary()}, or the table's default
+	 */
+	private <R> R route(Supplier<R> reader) {
+		if (replica == null) {
+			return reader.get();
 		}
+		return replica ? database.fromReplica(reader) : database.fromPrimary(reader);
+	}
+
+	private String createQuery(String select) {
+		return select
+				+ (join != null ? join : "")
+				+ (filter != null ? filter.createParameterizedStatement() : "")
+				+ (groupBy != null ? groupBy : "")
+				+ (orderBy != null ? orderBy : "")
+				+ (limit != null ? limit : "");
+	}
+
+	@Override
+	public SIBase<T> fromReplica() {
+		this.replica = true;
+		return this;
+	}
+
+	@Override
+	public SIBase<T> fromPrimary() {
+		this.replica = false;
+		return this;
+	}
+
+	@Override
+	public SIBase<T> fetch(String... relations) {
+		this.fetch = relations;
+		return this;
+	}
+
+	@Override
+	public SIBase<T> fetchLazy(String... relations) {
+		this.fetchLazy = relations;
+		return this;
+	}
+
+	@Override
+	public SIBase<T> cached(long ttlMillis) {
+		this.cacheMillis = ttlMillis;
+		return this;
 	}
 
 	@Override
@@ -0,0 +1,19 @@
+package com.kmecpp.osmium.api.database.api;
+
+import java.sql.SQLException;
+
+import com.kmecpp.osmium.api.database.Transaction;
+
+/**
+ * The work performed by a transaction. The callback is run again from the
+ * start if the transaction is retried after a deadlock, so it must be
+ * idempotent and must not have side effects outside of the transaction. Any
+ * state it changes outside of the database would be changed once for every
+ * attempt, including the attempts that were rolled back.
+ */
+@FunctionalInterface
+public interface TransactionCallback<T> {
+
+	T run(Transaction transaction) throws SQLException;
+
+}
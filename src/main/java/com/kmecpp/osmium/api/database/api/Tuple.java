@@ -0,0 +1,84 @@
+package com.kmecpp.osmium.api.database.api;
+
+import com.kmecpp.osmium.api.database.SQLDatabase;
+import com.kmecpp.osmium.api.util.Reflection;
+
+/**
+ * The values of the selected columns of a single row, see
+ * {@link SelectQuery#getTuples(String...)}. Values have the same types as the
+ * fields of their columns.
+ */
+public class Tuple {
+
+	private final String[] columns;
+	private final Object[] values;
+
+	public Tuple(String[] columns, Object[] values) {
+		this.columns = columns;
+		this.values = values;
+	}
+
+	public int size() {
+		return values.length;
+	}
+
+	public <V> V get(int index) {
+		return Reflection.cast(values[index]);
+	}
+
+	/**
+	 * Gets the value of the given column, which can be specified by its column
+	 * or field name
+	 */
+	public <V> V get(String column) {
+		return get(indexOf(column));
+	}
+
+	public String getString(String column) {
+		return (String) values[indexOf(column)];
+	}
+
+	public int getInt(String column) {
+		Number value = (Number) values[indexOf(column)];
+		return value != null ? value.intValue() : 0;
+	}
+
+	public long getLong(String column) {
+		Number value = (Number) values[indexOf(column)];
+		return value != null ? value.longValue() : 0;
+	}
+
+	public double getDouble(String column) {
+		Number value = (Number) values[indexOf(column)];
+		return value != null ? value.doubleValue() : 0;
+	}
+
+	public Object[] toArray() {
+		return values.clone();
+	}
+
+	private int indexOf(String column) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equals(column)) {
+				return i;
+			}
+		}
+		String columnName = SQLDatabase.getColumnName(column);
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equals(columnName)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Tuple does not contain column: " + column);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < columns.length; i++) {
+			sb.append(i > 0 ? ", " : "").append(columns[i]).append("=").append(values[i]);
+		}
+		return sb.append(")").toString();
+	}
+
+}
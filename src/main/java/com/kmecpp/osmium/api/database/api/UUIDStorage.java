@@ -0,0 +1,27 @@
+package com.kmecpp.osmium.api.database.api;
+
+/**
+ * How a UUID column is stored in the database
+ */
+public enum UUIDStorage {
+
+	/**
+	 * Uses the storage set for the database with
+	 * {@link SQLConfig#withUUIDStorage(UUIDStorage)}, which is TEXT unless
+	 * configured otherwise
+	 */
+	DEFAULT,
+
+	/**
+	 * A 36 character string, CHAR(36)
+	 */
+	TEXT,
+
+	/**
+	 * The 16 bytes of the UUID, BINARY(16) for MySQL and BLOB for SQLite.
+	 * This less than halves the size of the column and its indexes and
+	 * compares keys as bytes instead of with a collation.
+	 */
+	BINARY;
+
+}
@@ -4,7 +4,9 @@ import com.kmecpp.osmium.AppInfo;
 import com.kmecpp.osmium.Osmium;
 import com.kmecpp.osmium.Platform;
 import com.kmecpp.osmium.api.TickTimeUnit;
+import com.kmecpp.osmium.api.database.QueryStats;
 import com.kmecpp.osmium.api.database.SQLDatabase;
+import com.kmecpp.osmium.api.database.SharedConnectionPool;
 import com.kmecpp.osmium.api.database.api.SQLConfig;
 import com.kmecpp.osmium.api.inventory.menu.InventoryManager;
 import com.kmecpp.osmium.api.plugin.OsmiumPlugin;
@@ -29,6 +31,8 @@ public class OsmiumCore extends OsmiumPlugin {
 	@Override
 	public void onLoad() {
 		TimeUtil.setTimeZone(OsmiumCoreConfig.timeZone);
+		SharedConnectionPool.setSize(OsmiumCoreConfig.Database.sharedPoolSize);
+		QueryStats.setSlowQueryMillis(OsmiumCoreConfig.Database.Stats.slowQueryMillis);
 
 		if (OsmiumCoreConfig.Database.useMySql) {
 			this.getMySQLDatabase().configure(() -> SQLConfig.of("osmium", OsmiumCoreConfig.Database.host, OsmiumCoreConfig.Database.port,
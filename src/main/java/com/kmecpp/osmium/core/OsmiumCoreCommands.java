@@ -3,7 +3,9 @@ package com.kmecpp.osmium.core;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Optional;
 import java.util.UUID;
@@ -16,7 +18,14 @@ import com.kmecpp.osmium.api.User;
 import com.kmecpp.osmium.api.command.Chat;
 import com.kmecpp.osmium.api.command.Command;
 import com.kmecpp.osmium.api.command.CommandEvent;
+import com.kmecpp.osmium.api.database.LatencyHistogram;
+import com.kmecpp.osmium.api.database.QueryCache;
+import com.kmecpp.osmium.api.database.QueryStats.TemplateStats;
+import com.kmecpp.osmium.api.database.SQLDatabase;
+import com.kmecpp.osmium.api.database.SharedConnectionPool;
+import com.kmecpp.osmium.api.database.SharedConnectionPool.Lease;
 import com.kmecpp.osmium.api.plugin.OsmiumPlugin;
+import com.kmecpp.osmium.api.util.Pair;
 import com.kmecpp.osmium.api.util.StringUtil;
 
 // @CommandProperties(aliases = { "osmium", "os", "om", "o" }, description =
@@ -196,6 +205,85 @@ public class OsmiumCoreCommands extends Command {
 			Osmium.getCommandManager().getCooldownData().remove(user.getUniqueId());
 			e.sendMessage(Chat.GREEN + "User cooldowns cleared successfully!");
 		});
+
+		add("dbstats").setAdmin(true).setUsage("[count/reset]").setDescription("Displays the slowest database statements").setExecutor(e -> {
+			ArrayList<SQLDatabase> databases = new ArrayList<>();
+			for (OsmiumPlugin plugin : Osmium.getPlugins()) {
+				databases.add(plugin.getSQLiteDatabase());
+				databases.add(plugin.getMySQLDatabase());
+			}
+
+			if (e.getString(0, "").equalsIgnoreCase("reset")) {
+				for (SQLDatabase database : databases) {
+					database.getQueryStats().reset();
+					if (database.getQueryCache() != null) {
+						database.getQueryCache().resetStats();
+					}
+				}
+				e.sendMessage(Chat.GREEN + "Database statistics reset successfully!");
+				return;
+			}
+
+			int count = Math.min(e.getPositiveInt(0, 10), 50);
+			ArrayList<Pair<SQLDatabase, TemplateStats>> slowest = new ArrayList<>();
+			for (SQLDatabase database : databases) {
+				for (TemplateStats stats : database.getQueryStats().getSlowest(count)) {
+					slowest.add(new Pair<>(database, stats));
+				}
+			}
+			slowest.sort(Comparator.comparingDouble((Pair<SQLDatabase, TemplateStats> pair) -> pair.getSecond().getAverageMillis()).reversed());
+
+			e.sendTitle("Slowest Database Statements");
+			if (slowest.isEmpty()) {
+				e.send("&eNo statements have been executed yet");
+			}
+			for (Pair<SQLDatabase, TemplateStats> pair : slowest.subList(0, Math.min(count, slowest.size()))) {
+				TemplateStats stats = pair.getSecond();
+				LatencyHistogram latency = stats.getLatency();
+				e.send("&a" + pair.getFirst().getPlugin().getName() + " &7(" + pair.getFirst().getType().getName() + ")&a: &b"
+						+ StringUtil.round(latency.getAverageMillis(), 1) + "ms &aavg, &b"
+						+ StringUtil.round(latency.getPercentileMillis(0.95), 1) + "ms &ap95, &b"
+						+ StringUtil.round(latency.getMaxMillis(), 1) + "ms &amax, &b"
+						+ latency.getCount() + "&ax, wait &b" + StringUtil.round(stats.getAveragePoolWaitMillis(), 1) + "ms&a, rows &b"
+						+ StringUtil.round(stats.getAverageRows(), 1));
+				String template = stats.getTemplate();
+				e.send("&7  " + (template.length() > 120 ? template.substring(0, 117) + "..." : template));
+			}
+
+			for (SQLDatabase database : databases) {
+				QueryCache cache = database.getQueryCache();
+				if (cache != null) {
+					e.send("&a" + database.getPlugin().getName() + " &7(" + database.getType().getName() + ")&a query cache: &b"
+							+ StringUtil.round(cache.getHitRate() * 100, 1) + "% &ahits, &b" + cache.getRows() + "&7/&b" + cache.getMaxRows() + " &arows, &b"
+							+ cache.getInvalidations() + " &ainvalidated, &b" + cache.getEvictions() + " &aevicted, &b" + cache.getExpirations() + " &aexpired");
+				}
+			}
+		});
+
+		add("dbpool").setAdmin(true).setUsage("[size]").setDescription("Displays or resizes the shared database connection pools").setExecutor(e -> {
+			if (e.hasArgs()) {
+				int size = e.getIntBound(0, 1, 500, "pool size");
+				OsmiumCoreConfig.Database.sharedPoolSize = size;
+				SharedConnectionPool.setSize(size);
+				e.sendMessage(Chat.GREEN + "Shared pools resized to " + Chat.YELLOW + size + Chat.GREEN + " connections!");
+				return;
+			}
+
+			e.sendTitle("Shared Connection Pools");
+			if (SharedConnectionPool.getPools().isEmpty()) {
+				e.send("&eNo plugins are using a shared pool");
+			}
+			for (SharedConnectionPool pool : SharedConnectionPool.getPools()) {
+				e.send("&a" + pool.getName() + "&a: &b" + pool.getMaximumPoolSize() + " &aconnections, &b"
+						+ pool.getActiveConnections() + " &aactive, &b" + pool.getIdleConnections() + " &aidle, &b"
+						+ pool.getThreadsAwaitingConnection() + " &awaiting");
+				for (Lease lease : pool.getLeases()) {
+					e.send("&7  " + lease.getPlugin().getName() + ": &b" + lease.getActive() + "&7/&b" + lease.getQuota() + " &7active, peak &b"
+							+ lease.getPeakActive() + "&7, &b" + lease.getAcquisitions() + " &7acquired, wait &b"
+							+ StringUtil.round(lease.getAverageWaitMillis(), 1) + "ms &7avg, &b" + lease.getTimeouts() + " &7timeouts");
+				}
+			}
+		});
 	}
 
 	public static boolean processAliasRequest(CommandEvent e) {
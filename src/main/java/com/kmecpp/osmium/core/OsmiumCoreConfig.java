@@ -82,11 +82,18 @@ public class OsmiumCoreConfig {
 		@Setting(comment = "The password to access the MySQL database")
 		public static String password = "";
 
+		@Setting(comment = "The number of connections in each connection pool shared by plugins that connect to the same MySQL database."
+				+ "\nThis only applies to plugins which enable the shared pool. It can be changed at runtime with /osmium dbpool <size>")
+		public static int sharedPoolSize = 20;
+
 		public static class Stats {
 
 			@Setting
 			public static boolean logStats = false;
 
+			@Setting(comment = "Statements that take longer than this many milliseconds are written to slow-queries.log in the plugin's folder. Set to 0 to disable")
+			public static int slowQueryMillis = 500;
+
 		}
 
 	}
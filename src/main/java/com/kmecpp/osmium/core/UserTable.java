@@ -4,10 +4,12 @@ import java.time.ZoneId;
 import java.util.UUID;
 
 import com.kmecpp.osmium.api.database.api.DBColumn;
+import com.kmecpp.osmium.api.database.api.DBIndex;
 import com.kmecpp.osmium.api.database.api.DBTable;
 import com.kmecpp.osmium.api.database.api.DatabaseType;
 
 @DBTable(name = "users", type = { DatabaseType.SQLITE, DatabaseType.MYSQL }, autoCreate = false)
+@DBIndex(columns = "name")
 //@MySQLTable(name = "users", autoCreate = false)
 public class UserTable {
 
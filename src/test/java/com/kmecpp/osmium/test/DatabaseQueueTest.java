@@ -0,0 +1,209 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.DatabaseQueue;
+import com.kmecpp.osmium.api.database.QueryStats.TemplateStats;
+import com.kmecpp.osmium.api.database.TableData;
+import com.kmecpp.osmium.api.database.api.DBColumn;
+import com.kmecpp.osmium.api.database.api.DBTable;
+import com.kmecpp.osmium.api.database.api.SQLConfig;
+import com.kmecpp.osmium.api.database.api.SQLConfig.OverflowPolicy;
+
+public class DatabaseQueueTest extends DatabaseTest {
+
+	public DatabaseQueueTest() {
+		super(Home.class, CachedHome.class);
+	}
+
+	@Test
+	public void testWritesToOneRowAreCoalesced() throws InterruptedException {
+		DatabaseQueue queue = start(TestDatabase.config());
+		CountDownLatch blocked = new CountDownLatch(1);
+		queue.submit(database.getTable(Home.class).createPrimaryKey(1), () -> await(blocked)); //Holds the lane while the writes are queued
+
+		database.replaceIntoAsync(Home.class, new Home(1, "a"));
+		database.replaceIntoAsync(Home.class, new Home(1, "b"));
+		database.replaceIntoAsync(Home.class, new Home(1, "c"));
+
+		AtomicReference<String> seen = new AtomicReference<>();
+		queue.submit(() -> seen.set(readName(1))); //Must not be overtaken by the later writes
+
+		database.replaceIntoAsync(Home.class, new Home(1, "d"));
+		database.replaceIntoAsync(Home.class, new Home(1, "e"));
+		assertEquals(3, queue.getCoalescedWrites());
+		assertEquals(4, queue.getEnqueuedCount());
+
+		blocked.countDown();
+		awaitQueue(queue);
+		assertEquals("c", seen.get());
+		assertEquals("e", readName(1));
+		assertEquals(1, countRows());
+	}
+
+	@Test
+	public void testKeyedTasksOnlySealTheirRow() throws InterruptedException {
+		DatabaseQueue queue = start(TestDatabase.config());
+		TableData table = database.getTable(Home.class);
+		CountDownLatch blocked = new CountDownLatch(1);
+		queue.submit(table.createPrimaryKey(1), () -> await(blocked));
+
+		database.replaceIntoAsync(Home.class, new Home(1, "a"));
+		queue.submit(table.createPrimaryKey(2), () -> {});
+		database.replaceIntoAsync(Home.class, new Home(1, "b")); //Merged, since the task is for another row
+		assertEquals(1, queue.getCoalescedWrites());
+
+		AtomicReference<String> seen = new AtomicReference<>();
+		queue.submit(table.createPrimaryKey(1), () -> seen.set(readName(1)));
+		database.replaceIntoAsync(Home.class, new Home(1, "c")); //Queued after the task for the same row
+		assertEquals(1, queue.getCoalescedWrites());
+
+		blocked.countDown();
+		awaitQueue(queue);
+		assertEquals("b", seen.get());
+		assertEquals("c", readName(1));
+	}
+
+	@Test
+	public void testUnkeyedTasksWaitForEveryLane() throws InterruptedException {
+		DatabaseQueue queue = start(TestDatabase.config().withQueueLanes(4));
+		for (int i = 1; i <= 50; i++) {
+			database.replaceIntoAsync(Home.class, new Home(i, "old"));
+		}
+		queue.submit(() -> database.update("DELETE FROM homes"));
+		for (int i = 51; i <= 60; i++) {
+			database.replaceIntoAsync(Home.class, new Home(i, "new"));
+		}
+
+		awaitQueue(queue);
+		assertEquals(10, countRows());
+	}
+
+	@Test
+	public void testQueuedWritesAreBatched() throws InterruptedException {
+		DatabaseQueue queue = start(TestDatabase.config().withBatching(50, 50));
+		CountDownLatch blocked = new CountDownLatch(1);
+		queue.submit(database.getTable(Home.class).createPrimaryKey(1), () -> await(blocked));
+		for (int i = 1; i <= 100; i++) {
+			database.replaceIntoAsync(Home.class, new Home(i, "home"));
+		}
+		database.getQueryStats().reset();
+
+		blocked.countDown();
+		awaitQueue(queue);
+		assertEquals(100, countRows());
+		assertEquals(2, database.getQueryStats().getStats("<batch>").getCount());
+		for (TemplateStats stats : database.getQueryStats().getMostExpensive(Integer.MAX_VALUE)) {
+			if (stats.getTemplate().startsWith("REPLACE")) {
+				assertEquals(2, stats.getCount());
+				assertEquals(50, stats.getAverageRows(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testRejectedWriteIsNotCached() throws InterruptedException {
+		DatabaseQueue queue = start(TestDatabase.config().withQueueCapacity(1, OverflowPolicy.REJECT));
+		TableData table = database.getTable(CachedHome.class);
+
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch blocked = new CountDownLatch(1);
+		queue.submit(table.createPrimaryKey(1), () -> {
+			running.countDown();
+			await(blocked);
+		});
+		assertTrue(running.await(10, TimeUnit.SECONDS));
+
+		database.replaceIntoAsync(CachedHome.class, new CachedHome(2, "queued")); //Fills the lane
+		try {
+			database.replaceIntoAsync(CachedHome.class, new CachedHome(3, "rejected"));
+			fail();
+		} catch (RejectedExecutionException e) {
+		}
+		assertNull(table.getCache().get(table.createPrimaryKey(3)));
+
+		blocked.countDown();
+		while (queue.getDepth() > 0) {
+			Thread.sleep(10);
+		}
+		awaitQueue(queue);
+		assertNull(database.get(CachedHome.class, 3));
+		assertEquals("queued", database.get(CachedHome.class, 2).name);
+	}
+
+	private DatabaseQueue start(SQLConfig config) {
+		restart(config);
+		return database.getQueue();
+	}
+
+	private static void awaitQueue(DatabaseQueue queue) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		queue.submit(done::countDown);
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private String readName(int id) {
+		return database.query("SELECT name FROM homes WHERE id = ?", ps -> ps.setInt(1, id), rs -> rs.next() ? rs.getString(1) : null);
+	}
+
+	private long countRows() {
+		return database.query("SELECT COUNT(*) FROM homes", ps -> {}, rs -> rs.next() ? rs.getLong(1) : -1);
+	}
+
+	@DBTable(name = "homes")
+	public static class Home {
+
+		@DBColumn(primary = true)
+		public int id;
+
+		@DBColumn(maxLength = 16)
+		public String name;
+
+		public Home() {
+		}
+
+		public Home(int id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+	}
+
+	@DBTable(name = "cached_homes", cacheSize = 16)
+	public static class CachedHome {
+
+		@DBColumn(primary = true)
+		public int id;
+
+		@DBColumn(maxLength = 16)
+		public String name;
+
+		public CachedHome() {
+		}
+
+		public CachedHome(int id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+	}
+
+}
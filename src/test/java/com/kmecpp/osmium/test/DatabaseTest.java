@@ -0,0 +1,60 @@
+package com.kmecpp.osmium.test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+import com.kmecpp.osmium.api.database.SQLiteDatabase;
+import com.kmecpp.osmium.api.database.api.SQLConfig;
+
+/**
+ * Base class for tests that run against a SQLite database. Each test gets a
+ * new database in a temporary folder with the given tables created, which is
+ * shut down after the test.
+ */
+public abstract class DatabaseTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	protected SQLiteDatabase database;
+
+	private final Class<?>[] tables;
+
+	protected DatabaseTest(Class<?>... tables) {
+		this.tables = tables;
+	}
+
+	@Before
+	public void startDatabase() {
+		restart(TestDatabase.config());
+	}
+
+	@After
+	public void shutdownDatabase() {
+		database.shutdown();
+	}
+
+	/**
+	 * Replaces the database with a new, empty one that uses the given config,
+	 * for tests that need something other than the default config
+	 */
+	protected void restart(SQLConfig config) {
+		if (database != null) {
+			database.shutdown();
+		}
+		try {
+			database = TestDatabase.create(folder.newFolder(), config);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		for (Class<?> table : tables) {
+			database.createTable(table);
+		}
+	}
+
+}
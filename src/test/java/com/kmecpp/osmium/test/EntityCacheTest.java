@@ -0,0 +1,60 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.EntityCache;
+
+public class EntityCacheTest {
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		EntityCache<Integer> cache = new EntityCache<>(2, 0);
+		cache.put(1, "a");
+		cache.put(2, "b");
+		cache.get(1);
+		cache.put(3, "c");
+
+		assertEquals("a", cache.get(1));
+		assertNull(cache.get(2));
+		assertEquals("c", cache.get(3));
+		assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	public void testExpiry() throws InterruptedException {
+		EntityCache<Integer> cache = new EntityCache<>(10, 1);
+		cache.put(1, "a");
+		Thread.sleep(5);
+		assertNull(cache.get(1));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testStaleReadIsNotCached() {
+		EntityCache<Integer> cache = new EntityCache<>(10, 0);
+		long version = cache.getVersion();
+		cache.put(1, "new");
+		cache.putIfUnchanged(1, "old", version);
+		assertEquals("new", cache.get(1));
+
+		cache.invalidate(1);
+		version = cache.getVersion();
+		cache.putIfUnchanged(1, "loaded", version);
+		assertEquals("loaded", cache.get(1));
+	}
+
+	@Test
+	public void testStats() {
+		EntityCache<Integer> cache = new EntityCache<>(10, 0);
+		cache.put(1, "a");
+		cache.get(1);
+		cache.get(2);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0.5, cache.getHitRate(), 0);
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.api.DBColumn;
+import com.kmecpp.osmium.api.database.api.DBTable;
+
+public class IncrementAccumulatorTest extends DatabaseTest {
+
+	public IncrementAccumulatorTest() {
+		super(Counter.class, TrackedCounter.class);
+	}
+
+	@Test
+	public void testSaveKeepsLaterIncrements() {
+		start(60000);
+		database.increment(Counter.class, "kills", 5, 1);
+		Counter counter = database.get(Counter.class, 1);
+		assertEquals(5, counter.kills);
+
+		database.replaceInto(Counter.class, counter); //Writes the 5 pending kills
+		database.increment(Counter.class, "kills", 2, 1);
+		assertEquals(7, database.get(Counter.class, 1).kills);
+
+		database.getIncrements().flush();
+		assertEquals(7, readKills("counters"));
+		assertEquals(7, database.get(Counter.class, 1).kills);
+	}
+
+	@Test
+	public void testConcurrentIncrementsAndSaves() throws InterruptedException {
+		start(1);
+		int increments = 2000;
+		AtomicInteger done = new AtomicInteger();
+		Thread incrementer = new Thread(() -> {
+			for (int i = 0; i < increments; i++) {
+				database.increment(TrackedCounter.class, "kills", 1, 1);
+				done.incrementAndGet();
+			}
+		});
+		incrementer.start();
+
+		int saves = 0;
+		while (incrementer.isAlive()) {
+			int before = done.get();
+			TrackedCounter counter = database.get(TrackedCounter.class, 1);
+			int after = done.get();
+			assertTrue("Read " + counter.kills + " kills after " + before + " increments", counter.kills >= before);
+			assertTrue("Read " + counter.kills + " kills before " + after + " increments", counter.kills <= after + 1); //One increment can be in progress
+
+			counter.name = "save" + saves++; //Only the name is written
+			database.replaceInto(TrackedCounter.class, counter);
+		}
+		incrementer.join();
+
+		database.getIncrements().flush();
+		assertEquals(increments, readKills("tracked_counters"));
+		assertEquals(increments, database.get(TrackedCounter.class, 1).kills);
+	}
+
+	private void start(long flushMillis) {
+		restart(TestDatabase.config().withIncrementAccumulator(flushMillis, Integer.MAX_VALUE));
+		database.replaceInto(Counter.class, new Counter());
+		database.replaceInto(TrackedCounter.class, new TrackedCounter());
+	}
+
+	private long readKills(String table) {
+		return database.query("SELECT kills FROM " + table + " WHERE id = 1", ps -> {}, rs -> rs.next() ? rs.getLong(1) : -1);
+	}
+
+	@DBTable(name = "counters")
+	public static class Counter {
+
+		@DBColumn(primary = true)
+		public int id = 1;
+
+		@DBColumn
+		public int kills;
+
+		@DBColumn(maxLength = 16)
+		public String name = "";
+
+	}
+
+	@DBTable(name = "tracked_counters", dirtyTracking = 16)
+	public static class TrackedCounter {
+
+		@DBColumn(primary = true)
+		public int id = 1;
+
+		@DBColumn
+		public int kills;
+
+		@DBColumn(maxLength = 16)
+		public String name = "";
+
+	}
+
+}
@@ -0,0 +1,98 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.kmecpp.osmium.api.database.IndexData;
+import com.kmecpp.osmium.api.database.api.DatabaseType;
+
+public class IndexDataTest {
+
+	private static final IndexData NAME = new IndexData("players", null, new String[] { "name" }, new int[] { 0 }, true);
+	private static final IndexData WORLD_SCORE = new IndexData("players", null, new String[] { "world", "score" }, new int[] { 0, 0 }, false);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Connection connection;
+
+	@Before
+	public void createTable() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:sqlite:" + new File(folder.getRoot(), "index.db"));
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate("CREATE TABLE players (uuid TEXT PRIMARY KEY, name TEXT, world TEXT, score INTEGER)");
+		}
+	}
+
+	@After
+	public void close() throws SQLException {
+		connection.close();
+	}
+
+	@Test
+	public void testIndexesAreUsed() throws SQLException {
+		assertTrue(explain("SELECT * FROM players WHERE name = 'kmecpp'").contains("SCAN"));
+
+		IndexData.reconcile(connection, DatabaseType.SQLITE, "players", Arrays.asList(NAME, WORLD_SCORE));
+		assertTrue(explain("SELECT * FROM players WHERE name = 'kmecpp'").contains("USING INDEX idx_players_name"));
+
+		String plan = explain("SELECT * FROM players WHERE world = 'spawn' ORDER BY score");
+		assertTrue(plan.contains("USING INDEX idx_players_world_score"));
+		assertFalse(plan.contains("TEMP B-TREE")); //Rows are read in index order instead of being sorted
+	}
+
+	@Test
+	public void testReconcile() throws SQLException {
+		assertEquals(2, IndexData.reconcile(connection, DatabaseType.SQLITE, "players", Arrays.asList(NAME, WORLD_SCORE)).size());
+		assertTrue(IndexData.reconcile(connection, DatabaseType.SQLITE, "players", Arrays.asList(NAME, WORLD_SCORE)).isEmpty());
+
+		IndexData name = new IndexData("players", null, new String[] { "name" }, new int[] { 0 }, false);
+		List<String> executed = IndexData.reconcile(connection, DatabaseType.SQLITE, "players", Arrays.asList(name, WORLD_SCORE));
+		assertEquals(Arrays.asList(NAME.getDrop(DatabaseType.SQLITE), name.getCreate(DatabaseType.SQLITE)), executed);
+		assertEquals("name", IndexData.getExisting(connection, DatabaseType.SQLITE, "players").get("idx_players_name"));
+
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate("CREATE INDEX custom_score ON players (score)");
+		}
+		executed = IndexData.reconcile(connection, DatabaseType.SQLITE, "players", Collections.singletonList(name));
+		assertEquals(Collections.singletonList(WORLD_SCORE.getDrop(DatabaseType.SQLITE)), executed);
+		assertTrue(IndexData.getExisting(connection, DatabaseType.SQLITE, "players").containsKey("custom_score"));
+	}
+
+	@Test
+	public void testMySQLStatements() {
+		IndexData index = new IndexData("players", null, new String[] { "name", "world" }, new int[] { 16, 0 }, false);
+		assertEquals("CREATE INDEX idx_players_name_world ON players (`name`(16), `world`)", index.getCreate(DatabaseType.MYSQL));
+		assertEquals("name(16), world", index.getSignature(DatabaseType.MYSQL));
+		assertEquals("name, world", index.getSignature(DatabaseType.SQLITE));
+		assertTrue(IndexData.getDefaultName("players", new String[] { "a_very_long_column_name", "another_very_long_column_name" }).length() <= 64);
+	}
+
+	private String explain(String query) throws SQLException {
+		StringBuilder plan = new StringBuilder();
+		try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("EXPLAIN QUERY PLAN " + query)) {
+			while (resultSet.next()) {
+				plan.append(resultSet.getString("detail")).append('\n');
+			}
+		}
+		return plan.toString();
+	}
+
+}
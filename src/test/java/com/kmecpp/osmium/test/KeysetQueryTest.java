@@ -0,0 +1,114 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.KeysetQuery;
+import com.kmecpp.osmium.api.database.api.DBColumn;
+import com.kmecpp.osmium.api.database.api.DBTable;
+import com.kmecpp.osmium.api.database.api.OrderBy;
+import com.kmecpp.osmium.api.database.api.Page;
+
+public class KeysetQueryTest extends DatabaseTest {
+
+	public KeysetQueryTest() {
+		super(Account.class);
+	}
+
+	@Test
+	public void testTokenRoundTrip() {
+		Object[] values = { 1500.5D, 42, 7L, "name", UUID.randomUUID(), new Timestamp(1234567890123L), true };
+		String token = KeysetQuery.encode("ORDER BY balance DESC", values);
+		assertArrayEquals(values, KeysetQuery.decode("ORDER BY balance DESC", token));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTokenFromDifferentQuery() {
+		String token = KeysetQuery.encode("ORDER BY balance DESC", new Object[] { 5 });
+		KeysetQuery.decode("ORDER BY balance ASC", token);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMalformedToken() {
+		KeysetQuery.decode("ORDER BY balance DESC", "not a token!");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullSortValue() {
+		KeysetQuery.encode("ORDER BY balance DESC", new Object[] { null });
+	}
+
+	@Test
+	public void testSeekWithDuplicateSortValues() {
+		ArrayList<Account> expected = new ArrayList<>();
+		for (int i = 1; i <= 23; i++) {
+			Account account = new Account(i, i % 4); //Groups of equal balances that span page boundaries
+			database.replaceInto(Account.class, account);
+			expected.add(account);
+		}
+		expected.sort(Comparator.comparingInt((Account account) -> account.balance).thenComparingInt(account -> account.id).reversed());
+
+		ArrayList<Integer> seen = new ArrayList<>();
+		String token = null;
+		Account last = null;
+		boolean splitTie = false;
+		do {
+			Page<Account> page = database.seek(Account.class, OrderBy.desc("balance"), 5, token);
+			List<Account> rows = page.getRows();
+			assertTrue(rows.size() <= 5);
+			if (last != null && !rows.isEmpty()) {
+				splitTie |= last.balance == rows.get(0).balance;
+			}
+			for (Account row : rows) {
+				seen.add(row.id);
+				last = row;
+			}
+			token = page.getContinuationToken();
+		} while (token != null);
+
+		ArrayList<Integer> expectedIds = new ArrayList<>();
+		for (Account account : expected) {
+			expectedIds.add(account.id);
+		}
+		assertEquals(expectedIds, seen); //No row skipped or repeated, and ties ordered by id
+		assertTrue(splitTie);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSeekTokenFromDifferentOrder() {
+		for (int i = 1; i <= 5; i++) {
+			database.replaceInto(Account.class, new Account(i, i % 2));
+		}
+		String token = database.seek(Account.class, OrderBy.desc("balance"), 2, null).getContinuationToken();
+		database.seek(Account.class, OrderBy.asc("balance"), 2, token);
+	}
+
+	@DBTable(name = "accounts")
+	public static class Account {
+
+		@DBColumn(primary = true)
+		public int id;
+
+		@DBColumn
+		public int balance;
+
+		public Account() {
+		}
+
+		public Account(int id, int balance) {
+			this.id = id;
+			this.balance = balance;
+		}
+
+	}
+
+}
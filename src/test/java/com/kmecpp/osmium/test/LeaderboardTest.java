@@ -0,0 +1,179 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.Leaderboard;
+import com.kmecpp.osmium.api.database.Leaderboard.RankedEntry;
+import com.kmecpp.osmium.api.database.TableData;
+import com.kmecpp.osmium.api.database.api.DBColumn;
+import com.kmecpp.osmium.api.database.api.DBTable;
+
+public class LeaderboardTest extends DatabaseTest {
+
+	private TableData table;
+	private Leaderboard leaderboard;
+
+	public LeaderboardTest() {
+		super(Score.class);
+	}
+
+	@Before
+	public void start() {
+		table = database.getTable(Score.class);
+		leaderboard = new Leaderboard(database, table, "points", true); //Not registered, so only the calls below change it
+	}
+
+	@Test
+	public void testInsert() {
+		leaderboard.update(new Score(1, 10));
+		leaderboard.update(new Score(2, 30));
+		leaderboard.update(new Score(3, 20));
+
+		assertEquals(3, leaderboard.size());
+		assertEquals(Arrays.asList(2, 3, 1), keys(leaderboard.getTop(5)));
+		assertEquals(3, leaderboard.getRank(1));
+		assertEquals(-1, leaderboard.getRank(4));
+		assertNull(leaderboard.get(4));
+
+		List<RankedEntry> range = leaderboard.getRange(2, 1);
+		assertEquals(1, range.size());
+		assertEquals(2, range.get(0).getRank());
+		assertEquals(20, range.get(0).getScore(), 0);
+		assertEquals(Arrays.asList(3, 1), keys(leaderboard.getAround(1, 1)));
+	}
+
+	@Test
+	public void testUpdate() {
+		leaderboard.update(new Score(1, 10));
+		leaderboard.update(new Score(2, 30));
+		leaderboard.update(new Score(1, 40));
+
+		assertEquals(2, leaderboard.size());
+		assertEquals(Arrays.asList(1, 2), keys(leaderboard.getTop(5)));
+		assertEquals(40, leaderboard.get(1).getScore(), 0);
+	}
+
+	@Test
+	public void testIncrement() {
+		leaderboard.update(new Score(1, 10));
+		leaderboard.update(new Score(2, 30));
+
+		leaderboard.increment(table.createPrimaryKey(1), "points", 25);
+		assertEquals(1, leaderboard.getRank(1));
+		assertEquals(35, leaderboard.get(1).getScore(), 0);
+
+		leaderboard.increment(table.createPrimaryKey(2), "id", 100); //Not the score column
+		assertEquals(30, leaderboard.get(2).getScore(), 0);
+
+		leaderboard.increment(table.createPrimaryKey(3), "points", 5); //Unranked rows are added by the next reload
+		assertEquals(2, leaderboard.size());
+	}
+
+	@Test
+	public void testTiesRankedByArrival() {
+		leaderboard.update(new Score(1, 10));
+		leaderboard.update(new Score(2, 10));
+		leaderboard.update(new Score(3, 10));
+		assertEquals(Arrays.asList(1, 2, 3), keys(leaderboard.getTop(3)));
+
+		leaderboard.update(new Score(1, 10)); //Unchanged scores keep their place
+		assertEquals(1, leaderboard.getRank(1));
+
+		leaderboard.update(new Score(1, 5));
+		leaderboard.update(new Score(1, 10));
+		assertEquals(Arrays.asList(2, 3, 1), keys(leaderboard.getTop(3)));
+	}
+
+	@Test
+	public void testRemoval() {
+		database.replaceInto(Score.class, new Score(1, 10));
+		database.replaceInto(Score.class, new Score(2, 20));
+		leaderboard.update(new Score(1, 10));
+		leaderboard.update(new Score(2, 20));
+		leaderboard.update(new Score(3, 30)); //Not in the table
+
+		leaderboard.reconcile();
+		assertEquals(2, leaderboard.size());
+		assertEquals(-1, leaderboard.getRank(3));
+		assertEquals(Arrays.asList(2, 1), keys(leaderboard.getTop(5)));
+	}
+
+	@Test
+	public void testReconcileLater() throws InterruptedException {
+		database.replaceInto(Score.class, new Score(1, 10));
+		database.replaceInto(Score.class, new Score(2, 20));
+
+		leaderboard.reconcileLater();
+		for (int i = 0; i < 500 && leaderboard.size() < 2; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(Arrays.asList(2, 1), keys(leaderboard.getTop(5)));
+	}
+
+	@Test
+	public void testMatchesSortedScores() {
+		Random random = new Random(0);
+		HashMap<Integer, Integer> scores = new HashMap<>();
+		for (int i = 0; i < 2000; i++) {
+			int id = random.nextInt(200);
+			int points = random.nextInt(50);
+			if (random.nextBoolean() && scores.containsKey(id)) {
+				points += scores.get(id);
+				leaderboard.increment(table.createPrimaryKey(id), "points", points - scores.get(id));
+			} else {
+				leaderboard.update(new Score(id, points));
+			}
+			scores.put(id, points);
+		}
+
+		ArrayList<Entry<Integer, Integer>> expected = new ArrayList<>(scores.entrySet());
+		expected.sort(Comparator.comparing(Entry<Integer, Integer>::getValue).reversed());
+		List<RankedEntry> top = leaderboard.getTop(scores.size());
+		assertEquals(scores.size(), top.size());
+		for (int i = 0; i < top.size(); i++) {
+			assertEquals(i + 1, top.get(i).getRank());
+			assertEquals((double) expected.get(i).getValue(), top.get(i).getScore(), 0);
+			assertEquals(i + 1, leaderboard.getRank(top.get(i).getKey()));
+		}
+	}
+
+	private static List<Object> keys(List<RankedEntry> entries) {
+		ArrayList<Object> keys = new ArrayList<>();
+		for (RankedEntry entry : entries) {
+			keys.add(entry.getKey());
+		}
+		return keys;
+	}
+
+	@DBTable(name = "scores")
+	public static class Score {
+
+		@DBColumn(primary = true)
+		public int id;
+
+		@DBColumn
+		public int points;
+
+		public Score() {
+		}
+
+		public Score(int id, int points) {
+			this.id = id;
+			this.points = points;
+		}
+
+	}
+
+}
@@ -0,0 +1,94 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.QueryCache;
+
+public class QueryCacheTest {
+
+	@Test
+	public void testKeyedBySqlAndParameters() {
+		QueryCache cache = new QueryCache(100);
+		AtomicInteger loads = new AtomicInteger();
+		List<Integer> first = cache.get("SELECT * FROM  players\nWHERE id=?", new Object[] { 1 }, 60000, () -> Arrays.asList(loads.incrementAndGet()));
+		assertSame(first, cache.get("SELECT * FROM players WHERE id=?", new Object[] { 1 }, 60000, () -> Arrays.asList(loads.incrementAndGet())));
+		cache.get("SELECT * FROM players WHERE id=?", new Object[] { 2 }, 60000, () -> Arrays.asList(loads.incrementAndGet()));
+		assertEquals(2, loads.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testWritesInvalidateReferencedTables() {
+		QueryCache cache = new QueryCache(100);
+		cache.get("SELECT * FROM players JOIN guilds ON players.guild = guilds.id", null, 60000, () -> Arrays.asList(1));
+		cache.get("SELECT * FROM homes", null, 60000, () -> Arrays.asList(1));
+		cache.invalidate("UPDATE GUILDS SET name = ?");
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getInvalidations());
+
+		cache.invalidate("VACUUM");
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testCommaJoins() {
+		assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d")),
+				QueryCache.getTables("SELECT * FROM a, `b` AS x, (SELECT id FROM c WHERE id > 1) y, d WHERE a.id = x.id ORDER BY a.id"));
+		assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), QueryCache.getTables("SELECT * FROM a WHERE id IN (SELECT id FROM b, c) LIMIT 1"));
+
+		QueryCache cache = new QueryCache(100);
+		cache.get("SELECT * FROM players, guilds WHERE players.guild = guilds.id", null, 60000, () -> Arrays.asList(1));
+		cache.invalidate("UPDATE guilds SET name = ?");
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testStaleReadIsNotCached() {
+		QueryCache cache = new QueryCache(100);
+		cache.get("SELECT * FROM players", null, 60000, () -> {
+			cache.invalidate("REPLACE INTO players VALUES (?)"); //Written while the query runs
+			return Arrays.asList(1);
+		});
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testExpiry() throws InterruptedException {
+		QueryCache cache = new QueryCache(100);
+		cache.get("SELECT COUNT(*) FROM players", null, 10, () -> 5L);
+		Thread.sleep(20);
+		assertEquals(6L, (long) cache.get("SELECT COUNT(*) FROM players", null, 10, () -> 6L));
+		assertEquals(1, cache.getExpirations());
+	}
+
+	@Test
+	public void testBoundedByRows() {
+		QueryCache cache = new QueryCache(5);
+		cache.get("SELECT * FROM a", null, 60000, () -> Arrays.asList(1, 2, 3));
+		cache.get("SELECT * FROM b", null, 60000, () -> Arrays.asList(1, 2));
+		cache.get("SELECT * FROM c", null, 60000, () -> Arrays.asList(1, 2));
+		assertEquals(2, cache.size());
+		assertEquals(4, cache.getRows());
+		assertEquals(1, cache.getEvictions());
+
+		cache.get("SELECT * FROM d", null, 60000, () -> Arrays.asList(1, 2, 3, 4, 5, 6)); //Larger than the whole cache
+		assertEquals(2, cache.size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testCachedListsAreUnmodifiable() {
+		QueryCache cache = new QueryCache(100);
+		List<Integer> rows = cache.get("SELECT * FROM players", null, 60000, () -> Arrays.asList(1));
+		rows.set(0, 2);
+	}
+
+}
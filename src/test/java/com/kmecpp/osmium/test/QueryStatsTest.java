@@ -0,0 +1,42 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.LatencyHistogram;
+import com.kmecpp.osmium.api.database.QueryStats;
+
+public class QueryStatsTest {
+
+	@Test
+	public void testNormalizeLiterals() {
+		assertEquals("UPDATE users SET time_zone=? WHERE uuid=?", QueryStats.normalize("UPDATE users SET time_zone='UTC' WHERE uuid='it''s'"));
+		assertEquals("SELECT * FROM t2 WHERE a > ? LIMIT ?, ?", QueryStats.normalize("SELECT * FROM t2 WHERE a > 1.5 LIMIT 10, 20"));
+		assertEquals("SELECT `col1` FROM x WHERE y=?", QueryStats.normalize("SELECT `col1` FROM x WHERE y='a\\'b'"));
+	}
+
+	@Test
+	public void testNormalizeParameterized() {
+		String sql = "SELECT * FROM users WHERE uuid=?";
+		assertSame(sql, QueryStats.normalize(sql));
+	}
+
+	@Test
+	public void testHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(1_000_000); //1ms
+		}
+		histogram.record(100_000_000); //100ms
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(100, histogram.getMaxMillis(), 0.001);
+		assertEquals(1.99, histogram.getAverageMillis(), 0.001);
+		assertTrue(histogram.getPercentileMillis(0.5) >= 1 && histogram.getPercentileMillis(0.5) <= 2.1);
+		assertEquals(100, histogram.getPercentileMillis(1), 0.001);
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.RelationList;
+
+public class RelationListTest {
+
+	@Test
+	public void testBatchLoadsOnce() {
+		AtomicInteger loads = new AtomicInteger();
+		RelationList.Batch<String> batch = new RelationList.Batch<>(() -> {
+			loads.incrementAndGet();
+			Map<Object, List<String>> children = new HashMap<>();
+			children.put(1L, Arrays.asList("home", "spawn"));
+			children.put(2L, Arrays.asList("mine"));
+			return children;
+		});
+		RelationList<String> first = new RelationList<>(batch, 1L);
+		RelationList<String> second = new RelationList<>(batch, 2L);
+		RelationList<String> empty = new RelationList<>(batch, null);
+
+		assertFalse(first.isLoaded());
+		assertEquals(Arrays.asList("home", "spawn"), first);
+		assertEquals(Arrays.asList("mine"), second);
+		assertTrue(empty.isEmpty());
+		assertTrue(second.isLoaded());
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testModifiable() {
+		RelationList.Batch<String> batch = new RelationList.Batch<>(HashMap::new);
+		RelationList<String> list = new RelationList<>(batch, 1L);
+		list.add("home");
+		assertEquals(1, list.size());
+		assertEquals("home", list.remove(0));
+	}
+
+}
@@ -0,0 +1,101 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.kmecpp.osmium.api.database.ReplicaRouter;
+import com.zaxxer.hikari.HikariConfig;
+
+public class ReplicaRouterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSpreadsReadsAcrossReplicas() throws Exception {
+		ReplicaRouter router = createRouter(0, "a", "b");
+		try {
+			HashSet<String> read = new HashSet<>();
+			for (int i = 0; i < 4; i++) {
+				try (Connection connection = router.getConnection()) {
+					read.add(readName(connection));
+				}
+			}
+			assertEquals(2, read.size());
+			assertEquals(4, router.getReplicaReads());
+		} finally {
+			router.close();
+		}
+	}
+
+	@Test
+	public void testRouteIsRestored() throws Exception {
+		ReplicaRouter router = createRouter(0, "a");
+		try {
+			assertFalse(router.run(true, () -> router.run(false, router::isReplicaRead)));
+			assertTrue(router.run(true, router::isReplicaRead));
+			assertNull(router.getRoute());
+		} finally {
+			router.close();
+		}
+	}
+
+	@Test
+	public void testReadYourWrites() throws Exception {
+		ReplicaRouter router = createRouter(50, "a");
+		try {
+			UUID writer = UUID.randomUUID();
+			router.pin("name", writer);
+			assertTrue(router.isPinned(writer));
+			assertFalse(router.isPinned(UUID.randomUUID()));
+			Thread.sleep(60);
+			assertFalse(router.isPinned(writer));
+		} finally {
+			router.close();
+		}
+	}
+
+	private ReplicaRouter createRouter(long readYourWritesMillis, String... names) throws SQLException {
+		ArrayList<HikariConfig> configs = new ArrayList<>();
+		for (String name : names) {
+			String url = "jdbc:sqlite:" + new File(folder.getRoot(), name + ".db");
+			try (Connection connection = DriverManager.getConnection(url); Statement statement = connection.createStatement()) {
+				statement.executeUpdate("CREATE TABLE replica (name TEXT)");
+				statement.executeUpdate("INSERT INTO replica VALUES ('" + name + "')");
+			}
+
+			HikariConfig config = new HikariConfig();
+			config.setJdbcUrl(url);
+			config.setDriverClassName("org.sqlite.JDBC");
+			config.setMinimumIdle(1);
+			config.setMaximumPoolSize(2);
+			config.setConnectionTestQuery("SELECT 1");
+			configs.add(config);
+		}
+		return new ReplicaRouter("Test", configs, readYourWritesMillis);
+	}
+
+	private static String readName(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("SELECT name FROM replica")) {
+			rs.next();
+			return rs.getString(1);
+		}
+	}
+
+}
@@ -0,0 +1,210 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.QueryStats.TemplateStats;
+import com.kmecpp.osmium.api.database.TableData;
+import com.kmecpp.osmium.api.database.api.DBColumn;
+import com.kmecpp.osmium.api.database.api.DBTable;
+
+public class SQLiteDatabaseTest extends DatabaseTest {
+
+	public SQLiteDatabaseTest() {
+		super(Home.class, Account.class, TrackedHome.class, Membership.class);
+	}
+
+	@Test
+	public void testGeneralStatementsCanWrite() {
+		database.query("INSERT INTO homes (id, name, world) VALUES (?, ?, ?)", ps -> {
+			ps.setInt(1, 1);
+			ps.setString(2, "home");
+			ps.setString(3, "world");
+		}, rs -> null);
+		assertEquals("home", database.get(Home.class, 1).name); //Read from the read-only pool
+	}
+
+	@Test
+	public void testIntegerKeysMatchLongColumns() {
+		database.replaceInto(Account.class, new Account(1, 10));
+		database.replaceInto(Account.class, new Account(2, 20));
+
+		LinkedHashMap<Integer, Account> accounts = database.getAll(Account.class, Arrays.asList(1, 2, 3));
+		assertEquals(Arrays.asList(1, 2), Arrays.asList(accounts.keySet().toArray()));
+		assertEquals(20, accounts.get(2).balance);
+
+		database.increment(Account.class, "balance", 5, 1);
+		assertEquals(15, database.get(Account.class, 1).balance);
+
+		assertEquals(1, (int) database.transaction(transaction -> transaction.increment(Account.class, "balance", 5, 2)));
+		assertEquals(25, database.get(Account.class, 2L).balance);
+	}
+
+	@Test
+	public void testUnchangedRowIsNotWritten() {
+		database.replaceInto(TrackedHome.class, new TrackedHome(1, "home", "world"));
+		database.getQueryStats().reset();
+
+		TrackedHome home = database.get(TrackedHome.class, 1);
+		database.replaceInto(TrackedHome.class, home);
+		assertEquals(0, countWrites());
+
+		home.name = "base";
+		database.replaceInto(TrackedHome.class, home);
+		database.replaceInto(TrackedHome.class, home); //Saved state is tracked as well
+		assertEquals(1, countWrites());
+		assertEquals("base", database.get(TrackedHome.class, 1).name);
+	}
+
+	@Test
+	public void testPartialUpsertKeepsUntouchedColumns() {
+		database.replaceInto(TrackedHome.class, new TrackedHome(1, "home", "world"));
+		TrackedHome home = database.get(TrackedHome.class, 1);
+		database.query("UPDATE tracked_homes SET world = 'nether' WHERE id = 1", ps -> {}, rs -> null); //Written elsewhere
+
+		home.name = "base";
+		database.replaceInto(TrackedHome.class, home);
+		TrackedHome saved = database.get(TrackedHome.class, 1);
+		assertEquals("base", saved.name);
+		assertEquals("nether", saved.world);
+
+		database.replaceInto(TrackedHome.class, new TrackedHome(2, "spawn", "world")); //Rows that were never loaded are inserted whole
+		assertEquals("world", database.get(TrackedHome.class, 2).world);
+	}
+
+	@Test
+	public void testRowsWithOnlyPrimaryKeyColumnsAreWritten() {
+		database.replaceInto(Membership.class, new Membership("guild", "kmecpp"));
+		database.replaceInto(Membership.class, new Membership("guild", "notch"));
+		assertEquals(2, countRows("memberships"));
+
+		database.getQueryStats().reset();
+		database.replaceInto(Membership.class, new Membership("guild", "kmecpp")); //Unchanged since it was saved
+		assertEquals(0, countWrites());
+
+		database.getTable(Membership.class).getSnapshots().invalidateAll();
+		database.replaceInto(Membership.class, new Membership("guild", "kmecpp")); //Written again, but the existing row is kept
+		assertEquals(1, countWrites());
+		assertEquals(2, countRows("memberships"));
+	}
+
+	@Test
+	public void testReplaceIntoBatch() {
+		database.replaceInto(TrackedHome.class, new TrackedHome(1, "home", "world"));
+		TrackedHome loaded = database.get(TrackedHome.class, 1);
+		database.getQueryStats().reset();
+
+		LinkedHashMap<TableData, List<?>> batches = new LinkedHashMap<>();
+		batches.put(database.getTable(Account.class), Arrays.asList(new Account(1, 10), new Account(2, 20)));
+		batches.put(database.getTable(TrackedHome.class), Arrays.asList(loaded, new TrackedHome(2, "spawn", "world")));
+		database.replaceIntoBatch(batches);
+
+		assertEquals(2, countWrites()); //One statement per table
+		assertEquals(1, database.getQueryStats().getStats("<batch>").getCount());
+		for (TemplateStats stats : database.getQueryStats().getMostExpensive(Integer.MAX_VALUE)) {
+			if (stats.getTemplate().contains("tracked_homes")) {
+				assertEquals(1, stats.getAverageRows(), 0); //The unchanged row is skipped
+			}
+		}
+		assertEquals(20, database.get(Account.class, 2).balance);
+		assertEquals("spawn", database.get(TrackedHome.class, 2).name);
+	}
+
+	private long countRows(String table) {
+		return database.query("SELECT COUNT(*) FROM " + table, ps -> {}, rs -> rs.next() ? rs.getLong(1) : -1);
+	}
+
+	/**
+	 * Counts the statements that were executed other than queries
+	 */
+	private long countWrites() {
+		long writes = 0;
+		for (TemplateStats stats : database.getQueryStats().getMostExpensive(Integer.MAX_VALUE)) {
+			if (!stats.getTemplate().startsWith("SELECT") && !stats.getTemplate().startsWith("<")) {
+				writes += stats.getCount();
+			}
+		}
+		return writes;
+	}
+
+	@DBTable(name = "homes")
+	public static class Home {
+
+		@DBColumn(primary = true)
+		public int id;
+
+		@DBColumn(maxLength = 16)
+		public String name;
+
+		@DBColumn(maxLength = 16)
+		public String world;
+
+	}
+
+	@DBTable(name = "accounts")
+	public static class Account {
+
+		@DBColumn(primary = true)
+		public long id;
+
+		@DBColumn
+		public int balance;
+
+		public Account() {
+		}
+
+		public Account(long id, int balance) {
+			this.id = id;
+			this.balance = balance;
+		}
+
+	}
+
+	@DBTable(name = "tracked_homes", dirtyTracking = 16)
+	public static class TrackedHome {
+
+		@DBColumn(primary = true)
+		public int id;
+
+		@DBColumn(maxLength = 16)
+		public String name;
+
+		@DBColumn(maxLength = 16)
+		public String world;
+
+		public TrackedHome() {
+		}
+
+		public TrackedHome(int id, String name, String world) {
+			this.id = id;
+			this.name = name;
+			this.world = world;
+		}
+
+	}
+
+	@DBTable(name = "memberships", dirtyTracking = 16)
+	public static class Membership {
+
+		@DBColumn(primary = true, maxLength = 16)
+		public String guild;
+
+		@DBColumn(primary = true, maxLength = 16)
+		public String player;
+
+		public Membership() {
+		}
+
+		public Membership(String guild, String player) {
+			this.guild = guild;
+			this.player = player;
+		}
+
+	}
+
+}
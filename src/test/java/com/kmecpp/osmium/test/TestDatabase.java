@@ -0,0 +1,33 @@
+package com.kmecpp.osmium.test;
+
+import java.io.File;
+
+import com.kmecpp.osmium.api.database.SQLiteDatabase;
+import com.kmecpp.osmium.api.database.api.SQLConfig;
+import com.kmecpp.osmium.api.plugin.OsmiumPlugin;
+import com.kmecpp.osmium.api.plugin.Plugin;
+import com.kmecpp.osmium.api.util.Reflection;
+
+/**
+ * Creates SQLite databases for tests that need a running database. Each
+ * database belongs to its own plugin, which stores it in the given folder.
+ */
+public class TestDatabase {
+
+	public static SQLiteDatabase create(File folder, SQLConfig config) {
+		TestPlugin plugin = new TestPlugin();
+		Reflection.setField(OsmiumPlugin.class, plugin, "dataFolder", folder.toPath()); //Normally set by the platform
+		SQLiteDatabase database = plugin.getSQLiteDatabase();
+		database.configure(() -> config);
+		return database;
+	}
+
+	public static SQLConfig config() {
+		return SQLConfig.of(null, -1, null, null, null);
+	}
+
+	@Plugin(name = "OsmiumTest", version = "1.0")
+	public static class TestPlugin extends OsmiumPlugin {
+	}
+
+}
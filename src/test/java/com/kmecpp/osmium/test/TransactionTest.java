@@ -0,0 +1,95 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.Leaderboard;
+import com.kmecpp.osmium.api.database.api.DBColumn;
+import com.kmecpp.osmium.api.database.api.DBTable;
+
+public class TransactionTest extends DatabaseTest {
+
+	private Leaderboard leaderboard;
+
+	public TransactionTest() {
+		super(Score.class);
+	}
+
+	@Before
+	public void start() {
+		database.replaceInto(Score.class, new Score(1, 10));
+		database.replaceInto(Score.class, new Score(2, 5));
+		leaderboard = database.createLeaderboard(Score.class, "points", true, 0);
+	}
+
+	@Test
+	public void testRetriedAttemptIsNotApplied() {
+		AtomicInteger attempts = new AtomicInteger();
+		database.transaction(transaction -> {
+			if (attempts.incrementAndGet() == 1) {
+				transaction.replaceInto(new Score(1, 500));
+				transaction.increment(Score.class, "points", 1000, 2);
+				throw new SQLTransactionRollbackException("Deadlock");
+			}
+			transaction.replaceInto(new Score(1, 20));
+			return null;
+		});
+
+		assertEquals(2, attempts.get());
+		assertEquals(20, leaderboard.get(1).getScore(), 0);
+		assertEquals(5, leaderboard.get(2).getScore(), 0);
+		assertEquals(20, database.get(Score.class, 1).points);
+		assertEquals(5, database.get(Score.class, 2).points);
+		assertEquals(5, readPoints(2));
+	}
+
+	@Test
+	public void testRolledBackTransactionIsNotApplied() {
+		try {
+			database.transaction(transaction -> {
+				transaction.replaceInto(new Score(1, 500));
+				transaction.increment(Score.class, "points", 1000, 2);
+				throw new IllegalStateException("Failed");
+			});
+			fail();
+		} catch (IllegalStateException e) {
+		}
+
+		assertEquals(10, leaderboard.get(1).getScore(), 0);
+		assertEquals(5, leaderboard.get(2).getScore(), 0);
+		assertEquals(10, database.get(Score.class, 1).points); //Not taken from the cache
+
+		database.replaceInto(Score.class, new Score(1, 500)); //Only skipped if the snapshot recorded the rolled back write
+		assertEquals(500, readPoints(1));
+	}
+
+	private long readPoints(int id) {
+		return database.query("SELECT points FROM scores WHERE id = ?", ps -> ps.setInt(1, id), rs -> rs.next() ? rs.getLong(1) : -1);
+	}
+
+	@DBTable(name = "scores", cacheSize = 16, dirtyTracking = 16)
+	public static class Score {
+
+		@DBColumn(primary = true)
+		public int id;
+
+		@DBColumn
+		public int points;
+
+		public Score() {
+		}
+
+		public Score(int id, int points) {
+			this.id = id;
+			this.points = points;
+		}
+
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.api.Tuple;
+
+public class TupleTest {
+
+	@Test
+	public void testGetByColumnOrFieldName() {
+		Tuple tuple = new Tuple(new String[] { "name", "time_zone" }, new Object[] { "kmecpp", "UTC" });
+		assertEquals("kmecpp", tuple.getString("name"));
+		assertEquals("UTC", tuple.get("time_zone"));
+		assertEquals("UTC", tuple.get("timeZone"));
+	}
+
+	@Test
+	public void testNullNumbersAreZero() {
+		Tuple tuple = new Tuple(new String[] { "kills", "score" }, new Object[] { 5, null });
+		assertEquals(5, tuple.getInt("kills"));
+		assertEquals(0, tuple.getLong("score"));
+		assertEquals(0, tuple.getDouble("score"), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingColumn() {
+		new Tuple(new String[] { "name" }, new Object[] { "kmecpp" }).get("deaths");
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.kmecpp.osmium.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.kmecpp.osmium.api.database.ColumnCodecs;
+
+public class UUIDCodecTest {
+
+	@Test
+	public void testRoundTrip() {
+		for (int i = 0; i < 100; i++) {
+			UUID uuid = UUID.randomUUID();
+			assertEquals(uuid, ColumnCodecs.fromBytes(ColumnCodecs.toBytes(uuid)));
+		}
+	}
+
+	@Test
+	public void testByteOrder() {
+		UUID uuid = UUID.fromString("00112233-4455-6677-8899-aabbccddeeff");
+		StringBuilder hex = new StringBuilder();
+		for (byte b : ColumnCodecs.toBytes(uuid)) {
+			hex.append(String.format("%02x", b));
+		}
+		assertEquals(uuid.toString().replace("-", ""), hex.toString()); //Same as the text form, so hex literals and UNHEX() match
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLength() {
+		ColumnCodecs.fromBytes(new byte[15]);
+	}
+
+}